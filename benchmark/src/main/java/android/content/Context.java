@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import java.io.File;
+import java.util.HashMap;
+
+/**
+ * JVM stand-in for the Android class of the same name, storing the shared preferences as XML
+ * files in a local directory.
+ */
+public class Context {
+
+    public static final int MODE_PRIVATE = 0;
+
+    private final File mFilesDir;
+
+    private final String mPackageName;
+
+    private final HashMap<String, FileSharedPreferences> mPreferences =
+            new HashMap<String, FileSharedPreferences>();
+
+    /**
+     * Creates a new context.
+     *
+     * @param filesDir    The directory where the files are stored.
+     * @param packageName The package name.
+     */
+    public Context(final File filesDir, final String packageName) {
+
+        mFilesDir = filesDir;
+        mPackageName = packageName;
+    }
+
+    public File getFilesDir() {
+
+        return mFilesDir;
+    }
+
+    public String getPackageName() {
+
+        return mPackageName;
+    }
+
+    public SharedPreferences getSharedPreferences(final String name, final int mode) {
+
+        synchronized (mPreferences) {
+
+            FileSharedPreferences preferences = mPreferences.get(name);
+
+            if (preferences == null) {
+
+                final File directory = new File(mFilesDir, "shared_prefs");
+
+                //noinspection ResultOfMethodCallIgnored
+                directory.mkdirs();
+
+                preferences = new FileSharedPreferences(new File(directory, name + ".xml"));
+
+                mPreferences.put(name, preferences);
+            }
+
+            return preferences;
+        }
+    }
+}
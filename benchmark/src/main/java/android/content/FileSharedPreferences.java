@@ -0,0 +1,362 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shared preferences backed by a local XML file, written in the same format used by Android.
+ * <p/>
+ * Like the Android implementation, {@link Editor#commit()} writes the file synchronously, while
+ * {@link Editor#apply()} schedules a background write, skipping the intermediate states when more
+ * modifications are applied meanwhile. The file is never read back, so each instance starts empty.
+ */
+class FileSharedPreferences implements SharedPreferences {
+
+    private static final ExecutorService WRITE_EXECUTOR =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+
+                    final Thread thread = new Thread(runnable, "SharedPreferences-write");
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+
+    private final HashMap<String, Object> mData = new HashMap<String, Object>();
+
+    private final File mFile;
+
+    private final ArrayList<OnSharedPreferenceChangeListener> mListeners =
+            new ArrayList<OnSharedPreferenceChangeListener>();
+
+    private final Runnable mWriteRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+
+            write();
+        }
+    };
+
+    private boolean mWritePending;
+
+    FileSharedPreferences(final File file) {
+
+        mFile = file;
+    }
+
+    private static String escape(final String text) {
+
+        final StringBuilder builder = new StringBuilder(text.length());
+
+        for (int i = 0; i < text.length(); ++i) {
+
+            final char c = text.charAt(i);
+
+            switch (c) {
+
+                case '&':
+
+                    builder.append("&amp;");
+
+                    break;
+
+                case '<':
+
+                    builder.append("&lt;");
+
+                    break;
+
+                case '>':
+
+                    builder.append("&gt;");
+
+                    break;
+
+                case '"':
+
+                    builder.append("&quot;");
+
+                    break;
+
+                default:
+
+                    builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public synchronized boolean contains(final String key) {
+
+        return mData.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+
+        return new FileEditor();
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+
+        return new HashMap<String, Object>(mData);
+    }
+
+    @Override
+    public synchronized String getString(final String key, final String defValue) {
+
+        final String value = (String) mData.get(key);
+
+        return (value != null) ? value : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(final String key, final Set<String> defValues) {
+
+        final Set<String> values = (Set<String>) mData.get(key);
+
+        return (values != null) ? values : defValues;
+    }
+
+    @Override
+    public synchronized void registerOnSharedPreferenceChangeListener(
+            final OnSharedPreferenceChangeListener listener) {
+
+        mListeners.add(listener);
+    }
+
+    @Override
+    public synchronized void unregisterOnSharedPreferenceChangeListener(
+            final OnSharedPreferenceChangeListener listener) {
+
+        mListeners.remove(listener);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write() {
+
+        final HashMap<String, Object> data;
+
+        synchronized (this) {
+
+            mWritePending = false;
+
+            data = new HashMap<String, Object>(mData);
+        }
+
+        if (!mFile.getParentFile().isDirectory()) {
+
+            // The directory was deleted after the benchmark completed
+
+            return;
+        }
+
+        try {
+
+            final Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(mFile), "UTF-8"));
+
+            try {
+
+                writer.write("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+
+                for (final Entry<String, Object> entry : data.entrySet()) {
+
+                    final Object value = entry.getValue();
+                    final String name = escape(entry.getKey());
+
+                    if (value instanceof Set) {
+
+                        writer.write("    <set name=\"" + name + "\">\n");
+
+                        for (final String string : (Set<String>) value) {
+
+                            writer.write("        <string>" + escape(string) + "</string>\n");
+                        }
+
+                        writer.write("    </set>\n");
+
+                    } else {
+
+                        writer.write("    <string name=\"" + name + "\">" + escape(
+                                value.toString()) + "</string>\n");
+                    }
+                }
+
+                writer.write("</map>\n");
+
+            } finally {
+
+                writer.close();
+            }
+
+        } catch (final IOException e) {
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class FileEditor implements Editor {
+
+        private final HashMap<String, Object> mChanges = new HashMap<String, Object>();
+
+        private boolean mClear;
+
+        @Override
+        public void apply() {
+
+            final List<String> changed;
+            final boolean schedule;
+
+            synchronized (FileSharedPreferences.this) {
+
+                changed = applyChanges();
+
+                schedule = !mWritePending;
+
+                mWritePending = true;
+            }
+
+            notifyListeners(changed);
+
+            if (schedule) {
+
+                WRITE_EXECUTOR.execute(mWriteRunnable);
+            }
+        }
+
+        @Override
+        public Editor clear() {
+
+            mClear = true;
+
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+
+            notifyListeners(applyChanges());
+
+            write();
+
+            return true;
+        }
+
+        @Override
+        public Editor putString(final String key, final String value) {
+
+            mChanges.put(key, (value != null) ? value : this);
+
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(final String key, final Set<String> values) {
+
+            mChanges.put(key, (values != null) ? Collections.unmodifiableSet(
+                    new HashSet<String>(values)) : this);
+
+            return this;
+        }
+
+        @Override
+        public Editor remove(final String key) {
+
+            mChanges.put(key, this);
+
+            return this;
+        }
+
+        private List<String> applyChanges() {
+
+            final ArrayList<String> changed = new ArrayList<String>();
+
+            synchronized (FileSharedPreferences.this) {
+
+                if (mClear) {
+
+                    mData.clear();
+                }
+
+                for (final Entry<String, Object> change : mChanges.entrySet()) {
+
+                    final String key = change.getKey();
+                    final Object value = change.getValue();
+
+                    if (value == this) {
+
+                        if (mData.remove(key) != null) {
+
+                            changed.add(key);
+                        }
+
+                    } else {
+
+                        mData.put(key, value);
+
+                        changed.add(key);
+                    }
+                }
+            }
+
+            return changed;
+        }
+
+        private void notifyListeners(final List<String> keys) {
+
+            final ArrayList<OnSharedPreferenceChangeListener> listeners;
+
+            synchronized (FileSharedPreferences.this) {
+
+                listeners = new ArrayList<OnSharedPreferenceChangeListener>(mListeners);
+            }
+
+            for (final String key : keys) {
+
+                for (final OnSharedPreferenceChangeListener listener : listeners) {
+
+                    listener.onSharedPreferenceChanged(FileSharedPreferences.this, key);
+                }
+            }
+        }
+    }
+}
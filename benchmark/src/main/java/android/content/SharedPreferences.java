@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in for the subset of the Android interface of the same name used by the persisters.
+ */
+public interface SharedPreferences {
+
+    public interface Editor {
+
+        public void apply();
+
+        public Editor clear();
+
+        public boolean commit();
+
+        public Editor putString(String key, String value);
+
+        public Editor putStringSet(String key, Set<String> values);
+
+        public Editor remove(String key);
+    }
+
+    public interface OnSharedPreferenceChangeListener {
+
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key);
+    }
+
+    public boolean contains(String key);
+
+    public Editor edit();
+
+    public Map<String, ?> getAll();
+
+    public String getString(String key, String defValue);
+
+    public Set<String> getStringSet(String key, Set<String> defValues);
+
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener);
+
+    public void unregisterOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener);
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sequence of events produced by users typing in the widget, replayed by a
+ * {@link TraceReplayer}.
+ * <p/>
+ * A recorded trace is a text file with one event per line:
+ * <pre>
+ * # comment
+ * key email          (following events refer to the "email" save key)
+ * text ma            (the text is now "ma", so the suggestions are loaded)
+ * save mario@gmail.com
+ * </pre>
+ * Backspaces are simply recorded as a shorter text.
+ */
+public class KeystrokeTrace {
+
+    private static final String DEFAULT_KEY = "key0";
+
+    private static final String KEY_COMMAND = "key";
+
+    private static final String SAVE_COMMAND = "save";
+
+    private static final String TEXT_COMMAND = "text";
+
+    private final ArrayList<Event> mEvents = new ArrayList<Event>();
+
+    /**
+     * Generates a synthetic trace of typing sessions.
+     * <p/>
+     * In each session the user types an entry of the history, or a new one, one character at a
+     * time. Typos are corrected by backspacing, and half of the sessions on existing entries stop
+     * as soon as the entry is among the suggestions, as if it was picked. The typed entry is then
+     * saved.
+     *
+     * @param history    The entries already saved.
+     * @param saveKey    The save key.
+     * @param sessions   The number of typing sessions.
+     * @param newPercent The percentage of sessions typing an entry not in the history.
+     * @param seed       The seed of the random generator.
+     * @return The trace.
+     */
+    public static KeystrokeTrace generate(final String[] history, final String saveKey,
+            final int sessions, final int newPercent, final long seed) {
+
+        final Random random = new Random(seed);
+        final String[] fresh = Workload.entries(sessions, seed);
+
+        final KeystrokeTrace trace = new KeystrokeTrace();
+
+        for (int i = 0; i < sessions; ++i) {
+
+            final boolean isNew = (random.nextInt(100) < newPercent) || (history.length == 0);
+            final String entry =
+                    isNew ? "new." + fresh[i] : history[random.nextInt(history.length)];
+
+            final int length = (!isNew && random.nextBoolean())
+                    ? 1 + random.nextInt(entry.length()) : entry.length();
+
+            for (int j = 1; j <= length; ++j) {
+
+                if (random.nextInt(20) == 0) {
+
+                    // Typo immediately corrected
+
+                    final char typo = (char) ('a' + random.nextInt(26));
+
+                    trace.add(new Event(saveKey, entry.substring(0, j - 1) + typo, false));
+                }
+
+                trace.add(new Event(saveKey, entry.substring(0, j), false));
+            }
+
+            trace.add(new Event(saveKey, entry, true));
+        }
+
+        return trace;
+    }
+
+    /**
+     * Parses a recorded trace.
+     *
+     * @param reader The reader of the trace text.
+     * @return The trace.
+     * @throws IOException if an error occurred while reading.
+     * @throws IllegalArgumentException if a line is malformed.
+     */
+    public static KeystrokeTrace parse(final Reader reader) throws IOException {
+
+        final BufferedReader lines = new BufferedReader(reader);
+
+        final KeystrokeTrace trace = new KeystrokeTrace();
+
+        String saveKey = DEFAULT_KEY;
+        String line;
+        int number = 0;
+
+        while ((line = lines.readLine()) != null) {
+
+            ++number;
+
+            if ((line.trim().length() == 0) || line.startsWith("#")) {
+
+                continue;
+            }
+
+            final int space = line.indexOf(' ');
+
+            final String command = (space < 0) ? line : line.substring(0, space);
+            final String argument = (space < 0) ? "" : line.substring(space + 1);
+
+            if (KEY_COMMAND.equals(command)) {
+
+                saveKey = argument;
+
+            } else if (TEXT_COMMAND.equals(command)) {
+
+                trace.add(new Event(saveKey, argument, false));
+
+            } else if (SAVE_COMMAND.equals(command)) {
+
+                trace.add(new Event(saveKey, argument, true));
+
+            } else {
+
+                throw new IllegalArgumentException("invalid event at line " + number + ": " + line);
+            }
+        }
+
+        return trace;
+    }
+
+    /**
+     * Adds the specified event to the end of this trace.
+     *
+     * @param event The event.
+     */
+    public void add(final Event event) {
+
+        mEvents.add(event);
+    }
+
+    /**
+     * Returns the events of this trace.
+     *
+     * @return The unmodifiable list of events.
+     */
+    public List<Event> getEvents() {
+
+        return Collections.unmodifiableList(mEvents);
+    }
+
+    /**
+     * Returns the number of keystrokes, that is, the number of events which are not saves.
+     *
+     * @return The keystroke count.
+     */
+    public int getKeystrokeCount() {
+
+        int count = 0;
+
+        for (final Event event : mEvents) {
+
+            if (!event.isSave()) {
+
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Single event of a trace.
+     */
+    public static class Event {
+
+        private final boolean mIsSave;
+
+        private final String mSaveKey;
+
+        private final String mText;
+
+        /**
+         * Creates a new event.
+         *
+         * @param saveKey The save key.
+         * @param text    The current text or the saved one.
+         * @param isSave  Whether the text is submitted and saved.
+         */
+        public Event(final String saveKey, final String text, final boolean isSave) {
+
+            mSaveKey = saveKey;
+            mText = text;
+            mIsSave = isSave;
+        }
+
+        public String getSaveKey() {
+
+            return mSaveKey;
+        }
+
+        public String getText() {
+
+            return mText;
+        }
+
+        public boolean isSave() {
+
+            return mIsSave;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-keystroke latency and allocation statistics collected by a {@link TraceReplayer}.
+ */
+public class LatencyReport {
+
+    /**
+     * The time available to render a frame at 60fps.
+     */
+    public static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private final long mAllocatedBytes;
+
+    private final long[] mLatencies;
+
+    private final int mSaveCount;
+
+    /**
+     * Creates a new report.
+     *
+     * @param latencies      The latency of each keystroke in nanoseconds.
+     * @param allocatedBytes The total number of bytes allocated by the keystrokes or -1 if unknown.
+     * @param saveCount      The number of replayed saves.
+     */
+    public LatencyReport(final long[] latencies, final long allocatedBytes, final int saveCount) {
+
+        mLatencies = latencies.clone();
+        mAllocatedBytes = allocatedBytes;
+        mSaveCount = saveCount;
+
+        Arrays.sort(mLatencies);
+    }
+
+    private static String millis(final long nanos) {
+
+        return String.format("%.3fms", nanos / 1000000.0);
+    }
+
+    /**
+     * Returns the average number of bytes allocated by a keystroke.
+     *
+     * @return The allocated bytes or -1 if not supported by the JVM.
+     */
+    public long getAllocationsPerKeystroke() {
+
+        if ((mAllocatedBytes < 0) || (mLatencies.length == 0)) {
+
+            return -1;
+        }
+
+        return mAllocatedBytes / mLatencies.length;
+    }
+
+    public int getKeystrokeCount() {
+
+        return mLatencies.length;
+    }
+
+    /**
+     * Returns the maximum keystroke latency.
+     *
+     * @return The latency in nanoseconds.
+     */
+    public long getMax() {
+
+        return (mLatencies.length > 0) ? mLatencies[mLatencies.length - 1] : 0;
+    }
+
+    /**
+     * Returns the number of keystrokes exceeding the specified time budget.
+     *
+     * @param budgetNanos The budget in nanoseconds.
+     * @return The keystroke count.
+     */
+    public int getOverBudgetCount(final long budgetNanos) {
+
+        int count = 0;
+
+        for (int i = mLatencies.length - 1; (i >= 0) && (mLatencies[i] > budgetNanos); --i) {
+
+            ++count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the keystroke latency at the specified percentile, computed with the nearest rank
+     * method.
+     *
+     * @param percentile The percentile between 0 and 100.
+     * @return The latency in nanoseconds.
+     */
+    public long getPercentile(final double percentile) {
+
+        final long[] latencies = mLatencies;
+
+        if (latencies.length == 0) {
+
+            return 0;
+        }
+
+        final int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+
+        return latencies[Math.min(Math.max(rank, 1), latencies.length) - 1];
+    }
+
+    public int getSaveCount() {
+
+        return mSaveCount;
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("%d keystrokes, %d saves: p50 %s, p95 %s, p99 %s, max %s, "
+                                     + "%d over the frame budget, %d bytes allocated per keystroke",
+                             mLatencies.length, mSaveCount, millis(getPercentile(50)),
+                             millis(getPercentile(95)), millis(getPercentile(99)),
+                             millis(getMax()), getOverBudgetCount(FRAME_BUDGET_NANOS),
+                             getAllocationsPerKeystroke());
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.subito.frost.store.BasePersister;
+import it.subito.frost.store.BasePersister.Batch;
+import it.subito.frost.store.ExtendedPersister;
+
+/**
+ * Benchmarks of the operations performed by the widget on every {@link BasePersister}
+ * implementation.
+ * <p/>
+ * The loads correspond to the per-keystroke path of the widget, while the writes to the text
+ * replacement and to the removal of a suggestion. Run them with the {@code jmh} Gradle task, which
+ * enables the GC profiler in order to report the allocation rate too.
+ * <p/>
+ * The state fields are package-private to avoid synthetic accessors in the measured code.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersisterBenchmark {
+
+    private static final int MAX_SUGGESTIONS = 10;
+
+    private static final int SEQUENCE_LENGTH = 1024;
+
+    @Benchmark
+    public List<CharSequence> load(final PersisterState state, final ConstraintState constraints) {
+
+        final int index = constraints.next();
+
+        return state.mPersister.load(state.key(index), constraints.mConstraints[index]);
+    }
+
+    @Benchmark
+    public List<CharSequence> loadSuggestions(final PersisterState state,
+            final ConstraintState constraints) {
+
+        final int index = constraints.next();
+
+        return state.mPersister.load(state.key(index), constraints.mConstraints[index],
+                                     MAX_SUGGESTIONS);
+    }
+
+    @Benchmark
+    public Object mixed(final PersisterState state, final ConstraintState constraints,
+            final WriteState writes, final MixState mix) {
+
+        if (mix.next()) {
+
+            saveRemove(state, writes);
+
+            return null;
+        }
+
+        return loadSuggestions(state, constraints);
+    }
+
+    @Benchmark
+    public void saveExisting(final PersisterState state, final WriteState writes) {
+
+        final int index = writes.next() % state.mEntries.length;
+
+        state.mPersister.save(state.key(index), state.mEntries[index]);
+    }
+
+    @Benchmark
+    public void saveRemove(final PersisterState state, final WriteState writes) {
+
+        final int index = writes.next();
+
+        final String key = state.key(index);
+        final String entry = writes.mEntries[index];
+
+        final BasePersister persister = state.mPersister;
+        persister.save(key, entry);
+        persister.remove(key, entry);
+    }
+
+    /**
+     * State holding the sequence of constraints to load.
+     */
+    @State(Scope.Thread)
+    public static class ConstraintState {
+
+        @Param({"1", "3", "6"})
+        public int constraintLength;
+
+        String[] mConstraints;
+
+        int mIndex;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            // Use prefixes of entries with the same distribution of the history
+
+            final String[] entries = Workload.entries(SEQUENCE_LENGTH, 31);
+
+            mConstraints = new String[entries.length];
+
+            for (int i = 0; i < entries.length; ++i) {
+
+                final String entry = entries[i];
+
+                mConstraints[i] = entry.substring(0, Math.min(constraintLength, entry.length()));
+            }
+        }
+
+        int next() {
+
+            final int index = mIndex;
+
+            mIndex = (index + 1) % SEQUENCE_LENGTH;
+
+            return index;
+        }
+    }
+
+    /**
+     * State holding the sequence of reads and writes of a mixed workload.
+     */
+    @State(Scope.Thread)
+    public static class MixState {
+
+        @Param({"0", "10", "50"})
+        public int writePercent;
+
+        int mIndex;
+
+        boolean[] mWrites;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            final Random random = new Random(17);
+
+            mWrites = new boolean[SEQUENCE_LENGTH];
+
+            for (int i = 0; i < SEQUENCE_LENGTH; ++i) {
+
+                mWrites[i] = random.nextInt(100) < writePercent;
+            }
+        }
+
+        boolean next() {
+
+            final int index = mIndex;
+
+            mIndex = (index + 1) % SEQUENCE_LENGTH;
+
+            return mWrites[index];
+        }
+    }
+
+    /**
+     * State holding the persister filled with the history entries, spread across the keys.
+     */
+    @State(Scope.Benchmark)
+    public static class PersisterState {
+
+        @Param({"100", "10000", "100000"})
+        public int historySize;
+
+        @Param({"1", "10"})
+        public int keyCount;
+
+        @Param({"IN_MEMORY", "TRIE", "JOURNAL", "SHARED_PREFERENCES",
+                "SHARED_PREFERENCES_ENCODED"})
+        public PersisterType type;
+
+        File mDirectory;
+
+        String[] mEntries;
+
+        String[] mKeys;
+
+        ExtendedPersister mPersister;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+
+            mDirectory = Workload.createDirectory();
+            mEntries = Workload.entries(historySize, 7);
+            mKeys = new String[keyCount];
+
+            for (int i = 0; i < keyCount; ++i) {
+
+                mKeys[i] = "key" + i;
+            }
+
+            mPersister = type.create(mDirectory);
+
+            final Batch batch = mPersister.edit();
+
+            for (int i = 0; i < mEntries.length; ++i) {
+
+                batch.save(key(i), mEntries[i]);
+            }
+
+            batch.commit();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+
+            mPersister.clear();
+
+            Workload.delete(mDirectory);
+        }
+
+        String key(final int index) {
+
+            return mKeys[index % mKeys.length];
+        }
+    }
+
+    /**
+     * State holding the sequence of entries not included in the history.
+     */
+    @State(Scope.Thread)
+    public static class WriteState {
+
+        String[] mEntries;
+
+        int mIndex;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            final String[] entries = Workload.entries(SEQUENCE_LENGTH, 53);
+
+            mEntries = new String[entries.length];
+
+            for (int i = 0; i < entries.length; ++i) {
+
+                mEntries[i] = "new." + entries[i];
+            }
+        }
+
+        int next() {
+
+            final int index = mIndex;
+
+            mIndex = (index + 1) % SEQUENCE_LENGTH;
+
+            return index;
+        }
+    }
+}
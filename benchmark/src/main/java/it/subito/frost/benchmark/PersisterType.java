@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import android.content.Context;
+
+import java.io.File;
+
+import it.subito.frost.store.BasePersister;
+import it.subito.frost.store.DirectoryPersisterContext;
+import it.subito.frost.store.ExtendedPersister;
+import it.subito.frost.store.InMemoryPersister;
+import it.subito.frost.store.JournalPersister;
+import it.subito.frost.store.SharedPreferencesPersister;
+import it.subito.frost.store.TriePersister;
+
+/**
+ * Enumeration of the benchmarked {@link BasePersister} implementations.
+ */
+public enum PersisterType {
+
+    IN_MEMORY {
+        @Override
+        ExtendedPersister create(final File directory) {
+
+            final InMemoryPersister persister = new InMemoryPersister();
+            persister.setContext(new DirectoryPersisterContext(directory));
+
+            return persister;
+        }
+    },
+
+    JOURNAL {
+        @Override
+        ExtendedPersister create(final File directory) {
+
+            final JournalPersister persister = new JournalPersister();
+            persister.setContext(new DirectoryPersisterContext(directory));
+
+            return persister;
+        }
+    },
+
+    SHARED_PREFERENCES {
+        @Override
+        ExtendedPersister create(final File directory) {
+
+            final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+            persister.setContext(new Context(directory, PACKAGE_NAME));
+
+            return persister;
+        }
+    },
+
+    SHARED_PREFERENCES_ENCODED {
+        @Override
+        ExtendedPersister create(final File directory) {
+
+            final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+            persister.setStorageFormat(SharedPreferencesPersister.FORMAT_ENCODED);
+            persister.setContext(new Context(directory, PACKAGE_NAME));
+
+            return persister;
+        }
+    },
+
+    TRIE {
+        @Override
+        ExtendedPersister create(final File directory) {
+
+            final TriePersister persister = new TriePersister();
+            persister.setContext(new DirectoryPersisterContext(directory));
+
+            return persister;
+        }
+    };
+
+    private static final String PACKAGE_NAME = "it.subito.frost.benchmark";
+
+    /**
+     * Creates a new persister storing its files, if any, in the specified directory.
+     *
+     * @param directory The directory.
+     * @return The persister instance.
+     */
+    abstract ExtendedPersister create(File directory);
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashSet;
+
+import it.subito.frost.benchmark.KeystrokeTrace.Event;
+import it.subito.frost.store.BasePersister.Batch;
+import it.subito.frost.store.ExtendedPersister;
+
+/**
+ * Command line entry point replaying a keystroke trace against a persister.
+ * <p/>
+ * Usage: {@code Replay <persister type> <history size> [trace file]}, where the persister type is
+ * one of the {@link PersisterType} names. When no trace file is specified, a synthetic one is
+ * generated. The trace is replayed a few times before measuring, so that the JIT compiler can
+ * warm up, and always on a freshly filled persister.
+ */
+public class Replay {
+
+    private static final int MAX_SUGGESTIONS = 10;
+
+    private static final int SESSIONS = 1000;
+
+    private static final String SAVE_KEY = "key0";
+
+    private static final int WARMUP_RUNS = 3;
+
+    public static void main(final String[] args) throws IOException {
+
+        if (args.length < 2) {
+
+            System.err.println("usage: Replay <persister type> <history size> [trace file]");
+            System.exit(1);
+        }
+
+        final PersisterType type = PersisterType.valueOf(args[0]);
+        final String[] history = Workload.entries(Integer.parseInt(args[1]), 7);
+
+        final KeystrokeTrace trace;
+
+        if (args.length > 2) {
+
+            final Reader reader = new InputStreamReader(new FileInputStream(args[2]), "UTF-8");
+
+            try {
+
+                trace = KeystrokeTrace.parse(reader);
+
+            } finally {
+
+                reader.close();
+            }
+
+        } else {
+
+            trace = KeystrokeTrace.generate(history, SAVE_KEY, SESSIONS, 20, 11);
+        }
+
+        LatencyReport report = null;
+
+        for (int i = 0; i <= WARMUP_RUNS; ++i) {
+
+            final File directory = Workload.createDirectory();
+
+            try {
+
+                final ExtendedPersister persister = type.create(directory);
+
+                fill(persister, trace, history);
+
+                report = new TraceReplayer(persister, MAX_SUGGESTIONS).replay(trace);
+
+                persister.clear();
+
+            } finally {
+
+                Workload.delete(directory);
+            }
+        }
+
+        System.out.println(type + ", " + history.length + " entries: " + report);
+    }
+
+    private static void fill(final ExtendedPersister persister, final KeystrokeTrace trace,
+            final String[] history) {
+
+        // Fill the history of every key used in the trace
+
+        final HashSet<String> saveKeys = new HashSet<String>();
+
+        for (final Event event : trace.getEvents()) {
+
+            saveKeys.add(event.getSaveKey());
+        }
+
+        persister.clear();
+
+        final Batch batch = persister.edit();
+
+        for (final String saveKey : saveKeys) {
+
+            for (final String entry : history) {
+
+                batch.save(saveKey, entry);
+            }
+        }
+
+        batch.commit();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import it.subito.frost.benchmark.KeystrokeTrace.Event;
+import it.subito.frost.store.BasePersister;
+import it.subito.frost.store.Persisters;
+
+/**
+ * Replays the typing sessions of a {@link KeystrokeTrace} against a {@link BasePersister},
+ * measuring the latency of each keystroke.
+ * <p/>
+ * Every keystroke goes through the same steps of the widget filter: the suggestions are loaded
+ * as in {@code FrostTextView.onLoad()}, and then each row is read as the adapter does through the
+ * list cursor, that is, converting the entry to a string and hashing it to get the row ID.
+ */
+public class TraceReplayer {
+
+    private final int mMaxSuggestions;
+
+    private final BasePersister mPersister;
+
+    private volatile int mSink;
+
+    /**
+     * Creates a new replayer.
+     *
+     * @param persister      The persister.
+     * @param maxSuggestions The maximum number of suggestions to load (0 or less means no limit).
+     */
+    public TraceReplayer(final BasePersister persister, final int maxSuggestions) {
+
+        mPersister = persister;
+        mMaxSuggestions = maxSuggestions;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread.
+     *
+     * @return The allocated bytes or -1 if not supported by the JVM.
+     */
+    private static long allocatedBytes() {
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+
+            final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+
+                return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Replays the specified trace.
+     *
+     * @param trace The trace.
+     * @return The report of the keystroke latencies.
+     */
+    public LatencyReport replay(final KeystrokeTrace trace) {
+
+        final List<Event> events = trace.getEvents();
+
+        final long[] latencies = new long[trace.getKeystrokeCount()];
+
+        long allocated = 0;
+        int keystrokes = 0;
+        int saves = 0;
+
+        for (final Event event : events) {
+
+            if (event.isSave()) {
+
+                mPersister.save(event.getSaveKey(), event.getText());
+
+                ++saves;
+
+                continue;
+            }
+
+            final long bytes = allocatedBytes();
+            final long start = System.nanoTime();
+
+            mSink += query(event.getSaveKey(), event.getText());
+
+            latencies[keystrokes++] = System.nanoTime() - start;
+
+            if ((bytes < 0) || (allocated < 0)) {
+
+                allocated = -1;
+
+            } else {
+
+                allocated += allocatedBytes() - bytes;
+            }
+        }
+
+        return new LatencyReport(latencies, allocated, saves);
+    }
+
+    private int query(final String saveKey, final String text) {
+
+        final List<CharSequence> items =
+                Persisters.load(mPersister, saveKey, text, mMaxSuggestions);
+
+        int hash = items.size();
+
+        for (final CharSequence item : items) {
+
+            hash += item.toString().hashCode();
+        }
+
+        return hash;
+    }
+}
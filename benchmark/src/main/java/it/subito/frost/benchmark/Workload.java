@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Utility class generating the synthetic histories used by the benchmarks.
+ */
+final class Workload {
+
+    private static final String[] DOMAINS =
+            {"gmail.com", "hotmail.it", "libero.it", "subito.it", "yahoo.com", "alice.it"};
+
+    private static final String[] FIRST_NAMES =
+            {"mario", "maria", "giuseppe", "giulia", "luca", "laura", "marco", "martina",
+             "francesco", "francesca", "alessandro", "alessia", "andrea", "anna"};
+
+    private static final String[] LAST_NAMES =
+            {"rossi", "russo", "ferrari", "esposito", "bianchi", "romano", "colombo", "ricci",
+             "marino", "greco", "bruno", "gallo", "conti", "de luca"};
+
+    private Workload() {
+
+    }
+
+    /**
+     * Creates a new empty temporary directory.
+     *
+     * @return The directory.
+     * @throws IOException if the directory cannot be created.
+     */
+    static File createDirectory() throws IOException {
+
+        final File directory = File.createTempFile("frost", "benchmark");
+
+        if (!directory.delete() || !directory.mkdir()) {
+
+            throw new IOException("cannot create " + directory);
+        }
+
+        return directory;
+    }
+
+    /**
+     * Deletes the specified file, recursively deleting the directory content.
+     *
+     * @param file The file or directory.
+     */
+    static void delete(final File file) {
+
+        final File[] children = file.listFiles();
+
+        if (children != null) {
+
+            for (final File child : children) {
+
+                delete(child);
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Generates the specified number of distinct e-mail like entries.
+     *
+     * @param count The number of entries.
+     * @param seed  The seed of the random generator.
+     * @return The entries in generation order.
+     */
+    static String[] entries(final int count, final long seed) {
+
+        final Random random = new Random(seed);
+
+        final LinkedHashSet<String> entries = new LinkedHashSet<String>(count);
+
+        while (entries.size() < count) {
+
+            entries.add(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + "."
+                                + LAST_NAMES[random.nextInt(LAST_NAMES.length)]
+                                + random.nextInt(count) + "@"
+                                + DOMAINS[random.nextInt(DOMAINS.length)]);
+        }
+
+        return entries.toArray(new String[count]);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.benchmark;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import it.subito.frost.benchmark.KeystrokeTrace.Event;
+import it.subito.frost.store.BasePersister;
+import it.subito.frost.store.InMemoryPersister;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TraceReplayerTest extends TestCase {
+
+    public void testGenerate() {
+
+        final String[] history = {"aaa", "bbb"};
+
+        final KeystrokeTrace trace = KeystrokeTrace.generate(history, "test", 10, 50, 1);
+
+        final List<Event> events = trace.getEvents();
+
+        assertThat(events.get(events.size() - 1).isSave()).isTrue();
+        assertThat(trace.getKeystrokeCount()).isGreaterThanOrEqualTo(10);
+
+        for (final Event event : events) {
+
+            assertThat(event.getSaveKey()).isEqualTo("test");
+        }
+    }
+
+    public void testParse() throws IOException {
+
+        final KeystrokeTrace trace = KeystrokeTrace.parse(
+                new StringReader("# comment\n\ntext a\nkey test\ntext ab\ntext \nsave a b\n"));
+
+        final List<Event> events = trace.getEvents();
+
+        assertThat(events).hasSize(4);
+        assertThat(events.get(0).getSaveKey()).isEqualTo("key0");
+        assertThat(events.get(1).getText()).isEqualTo("ab");
+        assertThat(events.get(2).getText()).isEmpty();
+        assertThat(events.get(3).getText()).isEqualTo("a b");
+        assertThat(events.get(3).isSave()).isTrue();
+        assertThat(trace.getKeystrokeCount()).isEqualTo(3);
+
+        try {
+
+            KeystrokeTrace.parse(new StringReader("type a\n"));
+
+            fail();
+
+        } catch (final IllegalArgumentException ignored) {
+
+        }
+    }
+
+    public void testPercentiles() {
+
+        final long[] latencies = new long[100];
+
+        for (int i = 0; i < latencies.length; ++i) {
+
+            latencies[i] = (100 - i) * LatencyReport.FRAME_BUDGET_NANOS / 50;
+        }
+
+        final LatencyReport report = new LatencyReport(latencies, 1000, 0);
+
+        assertThat(report.getPercentile(50)).isEqualTo(LatencyReport.FRAME_BUDGET_NANOS);
+        assertThat(report.getPercentile(99)).isEqualTo(99 * LatencyReport.FRAME_BUDGET_NANOS / 50);
+        assertThat(report.getMax()).isEqualTo(2 * LatencyReport.FRAME_BUDGET_NANOS);
+        assertThat(report.getOverBudgetCount(LatencyReport.FRAME_BUDGET_NANOS)).isEqualTo(50);
+        assertThat(report.getAllocationsPerKeystroke()).isEqualTo(10);
+    }
+
+    public void testReplay() {
+
+        final BasePersister persister = new InMemoryPersister();
+
+        final KeystrokeTrace trace = new KeystrokeTrace();
+        trace.add(new Event("test", "a", false));
+        trace.add(new Event("test", "aaa", true));
+        trace.add(new Event("test", "a", false));
+
+        final LatencyReport report = new TraceReplayer(persister, 10).replay(trace);
+
+        assertThat(report.getKeystrokeCount()).isEqualTo(2);
+        assertThat(report.getSaveCount()).isEqualTo(1);
+        assertThat(persister.load("test", "a")).containsExactly("aaa");
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base implementation of a {@link BasePersister} managing the data observer notifications.
+ * <p/>
+ * By default batches of modifications are applied one by one, but the observer is notified only
+ * once at the end of each batch. A {@link KeyedDataObserver} is instead notified once for each
+ * modified key, with all the changes to that key merged together.
+ * <p/>
+ * Batches are confined to the thread running them, so the modifications made meanwhile by other
+ * threads are notified as usual.
+ */
+public abstract class AbstractPersister implements ExtendedPersister {
+
+    private final ThreadLocal<BatchState> mBatchState = new ThreadLocal<BatchState>() {
+
+        @Override
+        protected BatchState initialValue() {
+
+            return new BatchState();
+        }
+    };
+
+    private volatile DataObserver mDataObserver;
+
+    private volatile int mMaxResults;
+
+    private volatile PersisterMetrics mMetrics;
+
+    private volatile Ranking mRanking;
+
+    @Override
+    public Batch edit() {
+
+        return new SimpleBatch(this) {
+
+            @Override
+            public void commit() {
+
+                beginBatch();
+
+                try {
+
+                    super.commit();
+
+                } finally {
+
+                    endBatch();
+                }
+            }
+        };
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint) {
+
+        return load(saveKey, constraint, 0);
+    }
+
+    /**
+     * Loads the entries like {@link #load(String, CharSequence, int)}, but stopping as soon as
+     * possible if the specified token is canceled.
+     * <br/>
+     * By default the token is checked only before loading, while the implementations scanning many
+     * entries check it periodically.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The starting sequence or null.
+     * @param limit      The maximum number of entries to load (0 or less means no limit).
+     * @param token      The cancellation token.
+     * @return The list of entries.
+     * @throws java.util.concurrent.CancellationException If the token has been canceled.
+     */
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit, final CancellationToken token) {
+
+        token.throwIfCanceled();
+
+        return load(saveKey, constraint, limit);
+    }
+
+    @Override
+    public void remove(final String saveKey, final CharSequence... data) {
+
+        if ((data != null) && (data.length > 0)) {
+
+            remove(saveKey, Arrays.asList(data));
+        }
+    }
+
+    /**
+     * Sets the metrics notified of the events internal to this persister, like the result cache
+     * lookups.
+     * <br/>
+     * Note that the operations themselves are measured by wrapping the persister in an
+     * {@link InstrumentedPersister}, which also calls this method.
+     *
+     * @param metrics The metrics or null.
+     */
+    public void setMetrics(final PersisterMetrics metrics) {
+
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void setObserver(final DataObserver observer) {
+
+        mDataObserver = observer;
+    }
+
+    @Override
+    public void setRanking(final Ranking ranking, final int maxResults) {
+
+        mRanking = ranking;
+        mMaxResults = maxResults;
+    }
+
+    /**
+     * Starts a batch of modifications, during which the data observer notifications are deferred.
+     */
+    protected void beginBatch() {
+
+        ++mBatchState.get().depth;
+    }
+
+    /**
+     * Ends a batch of modifications, notifying the data observer if the data changed meanwhile.
+     */
+    protected void endBatch() {
+
+        final BatchState state = mBatchState.get();
+
+        if ((--state.depth == 0) && !state.changes.isEmpty()) {
+
+            final LinkedHashMap<String, DataChange> changes =
+                    new LinkedHashMap<String, DataChange>(state.changes);
+
+            state.changes.clear();
+
+            dispatch(changes);
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries to load when a ranking is set, also taking into
+     * account the specified limit.
+     *
+     * @param limit The limit requested by the caller (0 or less means no limit).
+     * @return The maximum number of results (0 or less means no limit).
+     */
+    protected int getMaxResults(final int limit) {
+
+        final int maxResults = mMaxResults;
+
+        if (maxResults <= 0) {
+
+            return limit;
+        }
+
+        return (limit > 0) ? Math.min(limit, maxResults) : maxResults;
+    }
+
+    /**
+     * Returns the ranking used to sort the loaded entries.
+     *
+     * @return The ranking or null.
+     */
+    protected Ranking getRanking() {
+
+        return mRanking;
+    }
+
+    /**
+     * Notifies the metrics, if any, of a lookup in the result cache.
+     *
+     * @param saveKey The save key.
+     * @param hit     Whether the result was found in the cache.
+     */
+    protected void notifyCacheLookup(final String saveKey, final boolean hit) {
+
+        final PersisterMetrics metrics = mMetrics;
+
+        if (metrics != null) {
+
+            metrics.onCacheLookup(saveKey, hit);
+        }
+    }
+
+    /**
+     * Notifies the data observer that the data saved with any key may have changed.
+     */
+    protected void notifyDataChanged() {
+
+        notifyDataChanged(null, DataChange.UNKNOWN);
+    }
+
+    /**
+     * Notifies the data observer that the data saved with the specified key changed.
+     *
+     * @param saveKey The save key or null if the data of any key may have changed.
+     * @param change  The change.
+     */
+    protected void notifyDataChanged(final String saveKey, final DataChange change) {
+
+        final BatchState state = mBatchState.get();
+        final LinkedHashMap<String, DataChange> changes = state.changes;
+
+        if (state.depth > 0) {
+
+            // Once every key may have changed there is nothing more to record
+
+            if (!changes.containsKey(null)) {
+
+                if (saveKey == null) {
+
+                    changes.clear();
+                    changes.put(null, DataChange.UNKNOWN);
+
+                } else {
+
+                    final DataChange previous = changes.get(saveKey);
+
+                    changes.put(saveKey, (previous != null) ? previous.merge(change) : change);
+                }
+            }
+
+            return;
+        }
+
+        dispatch(Collections.singletonMap(saveKey, change));
+    }
+
+    private void dispatch(final Map<String, DataChange> changes) {
+
+        final DataObserver observer = mDataObserver;
+
+        if (observer instanceof KeyedDataObserver) {
+
+            final KeyedDataObserver keyedObserver = (KeyedDataObserver) observer;
+
+            for (final Map.Entry<String, DataChange> entry : changes.entrySet()) {
+
+                keyedObserver.onDataChanged(entry.getKey(), entry.getValue());
+            }
+
+        } else if (observer != null) {
+
+            observer.onDataChanged();
+        }
+    }
+
+    /**
+     * State of the batch run by a single thread.
+     */
+    private static class BatchState {
+
+        public final LinkedHashMap<String, DataChange> changes =
+                new LinkedHashMap<String, DataChange>();
+
+        public int depth;
+    }
+}
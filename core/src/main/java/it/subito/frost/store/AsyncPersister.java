@@ -0,0 +1,496 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import it.subito.frost.store.BasePersister.Batch;
+
+/**
+ * Class running the operations of a {@link BasePersister} through an executor, so that the calling
+ * thread never waits for the storage.
+ * <p/>
+ * The operations are submitted in the same order they are requested, so a single threaded
+ * executor guarantees that each load observes all the modifications requested before it. Any
+ * exception thrown by the wrapped persister is reported by the returned future and, when the
+ * caller does not wait for it, can also be received through
+ * {@link #setErrorCallback(Callback)}.
+ * <p/>
+ * A persister can also be set up in background through {@link #setUpAsync(BasePersister, Executor,
+ * Runnable)}, in which case the operations wait for the set up to complete.
+ */
+public class AsyncPersister {
+
+    private static final WeakHashMap<BasePersister, Future<Void>> sSetUps =
+            new WeakHashMap<BasePersister, Future<Void>>();
+
+    private final Executor mCallbackExecutor;
+
+    private final Executor mExecutor;
+
+    private final BasePersister mPersister;
+
+    private volatile Callback<Throwable> mErrorCallback;
+
+    /**
+     * Creates a new instance wrapping the specified persister.
+     *
+     * @param persister        The persister.
+     * @param executor         The executor running the persister operations.
+     * @param callbackExecutor The executor delivering the results to the callbacks, or null to
+     *                         deliver them in the same thread running the operations.
+     */
+    public AsyncPersister(final BasePersister persister, final Executor executor,
+            final Executor callbackExecutor) {
+
+        if (persister == null) {
+
+            throw new IllegalArgumentException("the persister cannot be null");
+        }
+
+        if (executor == null) {
+
+            throw new IllegalArgumentException("the executor cannot be null");
+        }
+
+        mPersister = persister;
+        mExecutor = executor;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Waits for the set up of the specified persister, if still in progress, so that it can then
+     * be used directly.
+     *
+     * @param persister The persister.
+     * @throws IllegalStateException If the set up failed or the thread was interrupted.
+     */
+    public static void awaitSetUp(final BasePersister persister) {
+
+        final Future<Void> setUp;
+
+        synchronized (sSetUps) {
+
+            setUp = sSetUps.get(persister);
+        }
+
+        if (setUp == null) {
+
+            return;
+        }
+
+        try {
+
+            setUp.get();
+
+        } catch (final InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("interrupted while setting up the persister", e);
+
+        } catch (final ExecutionException e) {
+
+            throw new IllegalStateException("the persister set up failed", e.getCause());
+        }
+    }
+
+    /**
+     * Sets up the specified persister, for example by setting its context, through the specified
+     * executor.
+     * <br/>
+     * The operations of all the instances wrapping the same persister are not run before the set
+     * up completes, even when submitted to a different executor. If the set up fails, the
+     * operations fail too.
+     *
+     * @param persister The persister.
+     * @param executor  The executor running the set up.
+     * @param setUp     The set up task.
+     * @return The future completing when the persister has been set up.
+     */
+    public static Future<Void> setUpAsync(final BasePersister persister, final Executor executor,
+            final Runnable setUp) {
+
+        final FutureTask<Void> task = new FutureTask<Void>(setUp, null) {
+
+            @Override
+            protected void done() {
+
+                if (isCancelled()) {
+
+                    return;
+                }
+
+                try {
+
+                    get();
+
+                } catch (final Exception e) {
+
+                    // Keep the failure, so that the following operations report it
+
+                    return;
+                }
+
+                synchronized (sSetUps) {
+
+                    if (sSetUps.get(persister) == this) {
+
+                        sSetUps.remove(persister);
+                    }
+                }
+            }
+        };
+
+        synchronized (sSetUps) {
+
+            sSetUps.put(persister, task);
+        }
+
+        executor.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Applies all the modifications in the specified batch.
+     *
+     * @param batch The batch created by the wrapped persister.
+     * @return The future completing when the batch has been committed.
+     */
+    public Future<Void> commitAsync(final Batch batch) {
+
+        return submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                awaitSetUp(mPersister);
+
+                batch.commit();
+            }
+        });
+    }
+
+    /**
+     * Returns the wrapped persister.
+     *
+     * @return The persister instance.
+     */
+    public BasePersister getPersister() {
+
+        return mPersister;
+    }
+
+    /**
+     * Loads the entries associated with the specified key and starting with the specified
+     * constraint.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The starting sequence or null.
+     * @param limit      The maximum number of entries to load (0 or less means no limit).
+     * @param callback   The callback receiving the loaded entries or null.
+     * @return The future holding the loaded entries.
+     */
+    public Future<List<CharSequence>> loadAsync(final String saveKey,
+            final CharSequence constraint, final int limit,
+            final Callback<List<CharSequence>> callback) {
+
+        return loadAsync(saveKey, constraint, limit, CancellationToken.NONE, callback);
+    }
+
+    /**
+     * Loads the entries associated with the specified key and starting with the specified
+     * constraint, unless the passed token is canceled before the load completes. In such case,
+     * the returned future fails with a {@link java.util.concurrent.CancellationException} and the
+     * callback is not called.
+     * <br/>
+     * Note that the load is skipped altogether if the token is canceled while still queued, so
+     * that a burst of requests results in loading only the latest one.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The starting sequence or null.
+     * @param limit      The maximum number of entries to load (0 or less means no limit).
+     * @param token      The cancellation token.
+     * @param callback   The callback receiving the loaded entries or null.
+     * @return The future holding the loaded entries.
+     */
+    public Future<List<CharSequence>> loadAsync(final String saveKey,
+            final CharSequence constraint, final int limit, final CancellationToken token,
+            final Callback<List<CharSequence>> callback) {
+
+        // The constraint may be a mutable text, so copy it now
+
+        final String start = (constraint != null) ? constraint.toString() : null;
+
+        final FutureTask<List<CharSequence>> task =
+                new FutureTask<List<CharSequence>>(new Callable<List<CharSequence>>() {
+
+                    @Override
+                    public List<CharSequence> call() {
+
+                        awaitSetUp(mPersister);
+
+                        final BasePersister persister = mPersister;
+                        final List<CharSequence> entries;
+
+                        if (persister instanceof AbstractPersister) {
+
+                            entries = ((AbstractPersister) persister).load(saveKey, start, limit,
+                                                                           token);
+
+                        } else {
+
+                            token.throwIfCanceled();
+
+                            entries = Persisters.load(persister, saveKey, start, limit);
+                        }
+
+                        token.throwIfCanceled();
+
+                        if (callback != null) {
+
+                            deliver(callback, entries);
+                        }
+
+                        return entries;
+                    }
+                }) {
+
+                    @Override
+                    protected void done() {
+
+                        // Nobody waits for the entries delivered to a callback
+
+                        if (callback != null) {
+
+                            report(this);
+                        }
+                    }
+                };
+
+        mExecutor.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Removes all the entries associated with the specified key.
+     *
+     * @param saveKey The save key.
+     * @return The future completing when the entries have been removed.
+     */
+    public Future<Void> removeAsync(final String saveKey) {
+
+        return submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                awaitSetUp(mPersister);
+
+                mPersister.remove(saveKey);
+            }
+        });
+    }
+
+    /**
+     * Removes all the passed entries from the ones associated with the specified key.
+     *
+     * @param saveKey The save key.
+     * @param data    The entries to remove.
+     * @return The future completing when the entries have been removed.
+     */
+    public Future<Void> removeAsync(final String saveKey, final CharSequence... data) {
+
+        final List<CharSequence> entries = copy(data);
+
+        return submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                awaitSetUp(mPersister);
+
+                mPersister.remove(saveKey, entries);
+            }
+        });
+    }
+
+    /**
+     * Runs the specified task through the executor, after the operations requested before it and
+     * once the wrapped persister has been set up, so that the task can access the persister
+     * directly.
+     *
+     * @param task The task.
+     * @return The future completing when the task has run.
+     */
+    public Future<Void> runAsync(final Runnable task) {
+
+        return submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                awaitSetUp(mPersister);
+
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * Sets the callback receiving the exceptions thrown by the operations whose result is not
+     * waited for: the modifications, the tasks and the loads delivering the entries to a callback.
+     * <br/>
+     * The exceptions are delivered through the callback executor. Canceled loads are not reported.
+     *
+     * @param callback The callback or null.
+     */
+    public void setErrorCallback(final Callback<Throwable> callback) {
+
+        mErrorCallback = callback;
+    }
+
+    /**
+     * Saves the passed entry by adding it to the ones already associated with the specified key.
+     *
+     * @param saveKey The save key.
+     * @param data    The entry to add.
+     * @return The future completing when the entry has been saved.
+     */
+    public Future<Void> saveAsync(final String saveKey, final CharSequence data) {
+
+        final String entry = (data != null) ? data.toString() : null;
+
+        return submit(new Runnable() {
+
+            @Override
+            public void run() {
+
+                awaitSetUp(mPersister);
+
+                mPersister.save(saveKey, entry);
+            }
+        });
+    }
+
+    private static List<CharSequence> copy(final CharSequence... data) {
+
+        final CharSequence[] strings = new CharSequence[(data != null) ? data.length : 0];
+
+        for (int i = 0; i < strings.length; ++i) {
+
+            strings[i] = (data[i] != null) ? data[i].toString() : null;
+        }
+
+        return Arrays.asList(strings);
+    }
+
+    private <T> void deliver(final Callback<T> callback, final T result) {
+
+        final Executor callbackExecutor = mCallbackExecutor;
+
+        if (callbackExecutor == null) {
+
+            callback.onResult(result);
+
+            return;
+        }
+
+        callbackExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                callback.onResult(result);
+            }
+        });
+    }
+
+    /**
+     * Delivers the exception thrown by the specified completed task, if any, to the error
+     * callback.
+     */
+    private void report(final Future<?> task) {
+
+        final Callback<Throwable> callback = mErrorCallback;
+
+        if ((callback == null) || task.isCancelled()) {
+
+            return;
+        }
+
+        try {
+
+            task.get();
+
+        } catch (final InterruptedException e) {
+
+            // Cannot happen, since the task is done
+
+            Thread.currentThread().interrupt();
+
+        } catch (final ExecutionException e) {
+
+            final Throwable cause = e.getCause();
+
+            if (!(cause instanceof CancellationException)) {
+
+                deliver(callback, cause);
+            }
+        }
+    }
+
+    private Future<Void> submit(final Runnable runnable) {
+
+        final FutureTask<Void> task = new FutureTask<Void>(runnable, null) {
+
+            @Override
+            protected void done() {
+
+                report(this);
+            }
+        };
+
+        mExecutor.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Interface defining a callback receiving the result of an asynchronous operation.
+     *
+     * @param <T> The result type.
+     */
+    public interface Callback<T> {
+
+        /**
+         * Called with the result of the operation.
+         *
+         * @param result The result.
+         */
+        public void onResult(T result);
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interface defining an object managing saved data associated with a specific autocomplete view.
+ * <p/>
+ * Note that the implementing class should define a default constructor since it might be instatiate
+ * via reflection.
+ * <p/>
+ * This is the platform independent part of the Android {@code Persister} interface, which adds the
+ * method setting the Android context. The optional capabilities, like batches, bounded histories
+ * and ranking, are defined by {@link ExtendedPersister}. Persisters not implementing it are still
+ * supported, with the fallbacks provided by {@link Persisters}.
+ */
+public interface BasePersister {
+
+    /**
+     * Clears all the data managed by this persister instance.
+     */
+    public void clear();
+
+    /**
+     * Gets the total count of entries in the list associated with the specified key.
+     *
+     * @param savedKey The save key.
+     * @return The entry count.
+     */
+    public int getCount(String savedKey);
+
+    /**
+     * Loads the list of entries associated with the specified key and starting with the specified
+     * sequence of characters.
+     * <p/>
+     * The order of the entries is up to the implementing class. The persisters of this library
+     * return them in natural order, unless a ranking is set, and not in the order they were saved.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The starting sequence.
+     * @return The list of entries (MUST never be null).
+     */
+    public List<CharSequence> load(String saveKey, CharSequence constraint);
+
+    /**
+     * Removes all the entries associated with the specified key.
+     *
+     * @param saveKey The save key.
+     */
+    public void remove(String saveKey);
+
+    /**
+     * Removes all the passed entries from the ones associated with the specified key.
+     *
+     * @param saveKey The save key.
+     * @param data    The entries to remove.
+     */
+    public void remove(String saveKey, CharSequence... data);
+
+    /**
+     * Removes all the passed entries from the ones associated with the specified key.
+     *
+     * @param saveKey The save key.
+     * @param data    The entries to remove.
+     */
+    public void remove(String saveKey, Collection<CharSequence> data);
+
+    /**
+     * Saves the passed entry by adding it to the ones already associated with the specified key.
+     * Saving an entry which is already present records a new use of it.
+     *
+     * @param saveKey The save key.
+     * @param data    The entry to add.
+     */
+    public void save(String saveKey, CharSequence data);
+
+    /**
+     * Sets the data observer to be notified each time the saved data change.
+     *
+     * @param observer The observer instance or null.
+     */
+    public void setObserver(DataObserver observer);
+
+    /**
+     * Interface defining a batch of modifications to the saved data, spanning any number of keys.
+     * <p/>
+     * No modification is applied before {@link #commit()} is called. The modifications are then
+     * applied in the same order they have been requested, and the data observer is notified only
+     * once for the whole batch, or once for each modified key in case of a
+     * {@link KeyedDataObserver}.
+     */
+    public interface Batch {
+
+        /**
+         * Clears all the data managed by the persister.
+         *
+         * @return This batch instance.
+         */
+        public Batch clear();
+
+        /**
+         * Applies all the modifications in this batch.
+         */
+        public void commit();
+
+        /**
+         * Removes all the entries associated with the specified key.
+         *
+         * @param saveKey The save key.
+         * @return This batch instance.
+         */
+        public Batch remove(String saveKey);
+
+        /**
+         * Removes all the passed entries from the ones associated with the specified key.
+         *
+         * @param saveKey The save key.
+         * @param data    The entries to remove.
+         * @return This batch instance.
+         */
+        public Batch remove(String saveKey, CharSequence... data);
+
+        /**
+         * Removes all the passed entries from the ones associated with the specified key.
+         *
+         * @param saveKey The save key.
+         * @param data    The entries to remove.
+         * @return This batch instance.
+         */
+        public Batch remove(String saveKey, Collection<CharSequence> data);
+
+        /**
+         * Saves the passed entry by adding it to the ones already associated with the specified
+         * key.
+         *
+         * @param saveKey The save key.
+         * @param data    The entry to add.
+         * @return This batch instance.
+         */
+        public Batch save(String saveKey, CharSequence data);
+    }
+
+    /**
+     * Interface defining an observer of data changes.
+     */
+    public interface DataObserver {
+
+        /**
+         * Called when the saved data change.
+         */
+        public void onDataChanged();
+    }
+
+    /**
+     * Interface defining an observer of data changes, which is also told the modified key and
+     * entries.
+     * <p/>
+     * Persisters supporting it call {@link #onDataChanged(String, DataChange)} in place of
+     * {@link #onDataChanged()}, while the other ones just ignore the additional information.
+     */
+    public interface KeyedDataObserver extends DataObserver {
+
+        /**
+         * Called when the data saved with the specified key change.
+         *
+         * @param saveKey The save key or null if the data of any key may have changed.
+         * @param change  The change.
+         */
+        public void onDataChanged(String saveKey, DataChange change);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Class signaling that the result of an operation is no longer needed, so that any long scan can
+ * stop as soon as possible.
+ */
+public abstract class CancellationToken {
+
+    /**
+     * Token which is never canceled.
+     */
+    public static final CancellationToken NONE = new CancellationToken() {
+
+        @Override
+        public boolean isCanceled() {
+
+            return false;
+        }
+    };
+
+    /**
+     * Checks if the operation has been canceled.
+     *
+     * @return Whether the result is no longer needed.
+     */
+    public abstract boolean isCanceled();
+
+    /**
+     * Throws an exception if the operation has been canceled.
+     *
+     * @throws CancellationException If the result is no longer needed.
+     */
+    public final void throwIfCanceled() {
+
+        if (isCanceled()) {
+
+            throw new CancellationException();
+        }
+    }
+}
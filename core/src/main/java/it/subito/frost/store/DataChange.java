@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable class describing a modification of the entries associated with a single save key.
+ * <p/>
+ * A change may be unknown, meaning that any of the entries may have been added or removed, like
+ * when the data are modified by another process.
+ * <p/>
+ * When a ranking is set, the entries whose use has just been recorded are reported too, since
+ * their new statistics may change the order of the loaded entries.
+ */
+public final class DataChange {
+
+    /**
+     * Change whose details are unknown.
+     */
+    public static final DataChange UNKNOWN = new DataChange();
+
+    private final List<String> mAdded;
+
+    private final List<String> mRemoved;
+
+    private final boolean mUnknown;
+
+    private final List<String> mUsed;
+
+    /**
+     * Creates a new change.
+     *
+     * @param added   The added entries or null.
+     * @param removed The removed entries or null.
+     */
+    public DataChange(final Collection<String> added, final Collection<String> removed) {
+
+        this(added, removed, null);
+    }
+
+    /**
+     * Creates a new change, also recording new uses of existing entries.
+     *
+     * @param added   The added entries or null.
+     * @param removed The removed entries or null.
+     * @param used    The used entries or null.
+     */
+    public DataChange(final Collection<String> added, final Collection<String> removed,
+            final Collection<String> used) {
+
+        mAdded = unmodifiableCopy(added);
+        mRemoved = unmodifiableCopy(removed);
+        mUsed = unmodifiableCopy(used);
+        mUnknown = false;
+    }
+
+    private DataChange() {
+
+        mAdded = Collections.emptyList();
+        mRemoved = Collections.emptyList();
+        mUsed = Collections.emptyList();
+        mUnknown = true;
+    }
+
+    private static List<String> unmodifiableCopy(final Collection<String> entries) {
+
+        if ((entries == null) || entries.isEmpty()) {
+
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(new ArrayList<String>(entries));
+    }
+
+    private static boolean startsWith(final List<String> entries, final String prefix) {
+
+        for (final String entry : entries) {
+
+            if (entry.startsWith(prefix)) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if this change may modify the entries loaded with the specified constraint, or their
+     * order.
+     *
+     * @param constraint The starting sequence or null.
+     * @return Whether the loaded entries may be different.
+     */
+    public boolean affects(final CharSequence constraint) {
+
+        if (mUnknown) {
+
+            return true;
+        }
+
+        final String prefix = (constraint != null) ? constraint.toString() : "";
+
+        return startsWith(mAdded, prefix) || startsWith(mRemoved, prefix)
+                || startsWith(mUsed, prefix);
+    }
+
+    /**
+     * Returns the added entries.
+     *
+     * @return The unmodifiable list of entries.
+     */
+    public List<String> getAdded() {
+
+        return mAdded;
+    }
+
+    /**
+     * Returns the removed entries.
+     *
+     * @return The unmodifiable list of entries.
+     */
+    public List<String> getRemoved() {
+
+        return mRemoved;
+    }
+
+    /**
+     * Returns the existing entries whose use has been recorded.
+     *
+     * @return The unmodifiable list of entries.
+     */
+    public List<String> getUsed() {
+
+        return mUsed;
+    }
+
+    /**
+     * Checks if the details of this change are unknown.
+     *
+     * @return Whether any entry may have been added or removed.
+     */
+    public boolean isUnknown() {
+
+        return mUnknown;
+    }
+
+    /**
+     * Returns a change including both this and the specified one. An entry added by one and
+     * removed by the other appears in both lists.
+     *
+     * @param other The following change.
+     * @return The merged change.
+     */
+    DataChange merge(final DataChange other) {
+
+        if (mUnknown || other.mUnknown) {
+
+            return UNKNOWN;
+        }
+
+        final ArrayList<String> added = new ArrayList<String>(mAdded);
+        added.addAll(other.mAdded);
+
+        final ArrayList<String> removed = new ArrayList<String>(mRemoved);
+        removed.addAll(other.mRemoved);
+
+        final ArrayList<String> used = new ArrayList<String>(mUsed);
+        used.addAll(other.mUsed);
+
+        return new DataChange(added, removed, used);
+    }
+
+    @Override
+    public String toString() {
+
+        if (mUnknown) {
+
+            return "DataChange{unknown}";
+        }
+
+        return "DataChange{added=" + mAdded + ", removed=" + mRemoved + ", used=" + mUsed + '}';
+    }
+}
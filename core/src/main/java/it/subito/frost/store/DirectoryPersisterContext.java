@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.io.File;
+
+/**
+ * Persister context storing the files in a specific directory, mainly intended for running the
+ * persisters outside of an Android device.
+ */
+public class DirectoryPersisterContext implements PersisterContext {
+
+    private final File mFilesDir;
+
+    /**
+     * Creates a new context storing the files in the specified directory.
+     *
+     * @param filesDir The directory (created when missing).
+     */
+    public DirectoryPersisterContext(final File filesDir) {
+
+        if (filesDir == null) {
+
+            throw new IllegalArgumentException("the directory cannot be null");
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        filesDir.mkdirs();
+
+        mFilesDir = filesDir;
+    }
+
+    @Override
+    public File getFilesDir() {
+
+        return mFilesDir;
+    }
+}
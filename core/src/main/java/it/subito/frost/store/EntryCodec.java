@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Collection;
+
+/**
+ * Interface defining a strategy to serialize a set of entries into a single string.
+ */
+public interface EntryCodec {
+
+    /**
+     * Decodes the specified text, adding the entries to the passed collection.
+     *
+     * @param text The encoded text.
+     * @param out  The collection to fill.
+     * @return Whether the text was in the format supported by this codec.
+     * @throws IllegalArgumentException if the text is malformed.
+     */
+    public boolean decode(String text, Collection<String> out);
+
+    /**
+     * Encodes the specified entries into a string.
+     *
+     * @param entries The entries to encode.
+     * @return The encoded text.
+     */
+    public String encode(Collection<String> entries);
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+/**
+ * Class holding the usage statistics of a single saved entry.
+ */
+public class EntryStats {
+
+    public long added;
+
+    public long lastUsed;
+
+    public int useCount;
+
+    /**
+     * Creates the statistics of an entry saved at the specified time.
+     *
+     * @param now The current time in milliseconds.
+     */
+    public EntryStats(final long now) {
+
+        this(now, now, 1);
+    }
+
+    /**
+     * Creates the statistics of an entry with the specified values.
+     *
+     * @param added    The time the entry was first saved, in milliseconds.
+     * @param lastUsed The time the entry was last used, in milliseconds.
+     * @param useCount The number of times the entry was used.
+     */
+    public EntryStats(final long added, final long lastUsed, final int useCount) {
+
+        this.added = added;
+        this.lastUsed = lastUsed;
+        this.useCount = useCount;
+    }
+
+    /**
+     * Records a new use of the entry.
+     *
+     * @param now The current time in milliseconds.
+     */
+    public void use(final long now) {
+
+        lastUsed = Math.max(lastUsed, now);
+
+        ++useCount;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Map;
+
+/**
+ * Interface defining the policy used to choose which entries to discard when the history
+ * associated with a key exceeds its capacity.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Creates a new tracker of the entries associated with a single key.
+     *
+     * @param entries The entries already associated with the key, and their statistics.
+     * @return The tracker instance.
+     */
+    public Tracker newTracker(Map<String, EntryStats> entries);
+
+    /**
+     * Interface defining an object keeping the entries associated with a key in eviction order.
+     * <p/>
+     * All the methods are expected to run in constant amortized time.
+     */
+    public interface Tracker {
+
+        /**
+         * Evicts the next entry.
+         *
+         * @return The evicted entry or null if the tracker is empty.
+         */
+        public String evict();
+
+        /**
+         * Called when a new entry is saved.
+         *
+         * @param entry The entry.
+         * @param stats The entry statistics.
+         */
+        public void onAdded(String entry, EntryStats stats);
+
+        /**
+         * Called when an entry is removed.
+         *
+         * @param entry The entry.
+         */
+        public void onRemoved(String entry);
+
+        /**
+         * Called when an already saved entry is used again, after its statistics have been
+         * updated.
+         *
+         * @param entry The entry.
+         * @param stats The entry statistics.
+         */
+        public void onUsed(String entry, EntryStats stats);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import it.subito.frost.store.EvictionPolicy.Tracker;
+
+/**
+ * Class enforcing the capacity of the histories associated with each key, by keeping one
+ * {@link Tracker} per key.
+ * <p/>
+ * Different keys can be safely tracked from different threads, while the trackers themselves are
+ * not thread safe.
+ */
+class Evictor {
+
+    private final int mCapacity;
+
+    private final EvictionPolicy mPolicy;
+
+    private final ConcurrentHashMap<String, Tracker> mTrackers =
+            new ConcurrentHashMap<String, Tracker>();
+
+    /**
+     * Creates a new evictor.
+     *
+     * @param capacity The maximum number of entries associated with each key.
+     * @param policy   The eviction policy.
+     */
+    public Evictor(final int capacity, final EvictionPolicy policy) {
+
+        mCapacity = capacity;
+        mPolicy = policy;
+    }
+
+    /**
+     * Forgets all the tracked entries.
+     */
+    public void clear() {
+
+        mTrackers.clear();
+    }
+
+    /**
+     * Forgets all the entries associated with the specified key.
+     *
+     * @param saveKey The save key.
+     */
+    public void clear(final String saveKey) {
+
+        mTrackers.remove(saveKey);
+    }
+
+    /**
+     * Returns the maximum number of entries associated with each key.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+
+        return mCapacity;
+    }
+
+    /**
+     * Returns the tracker of the entries associated with the specified key, creating an empty one
+     * if needed.
+     *
+     * @param saveKey The save key.
+     * @return The tracker instance.
+     */
+    public Tracker getTracker(final String saveKey) {
+
+        Tracker tracker = mTrackers.get(saveKey);
+
+        if (tracker == null) {
+
+            tracker = mPolicy.newTracker(Collections.<String, EntryStats>emptyMap());
+            mTrackers.put(saveKey, tracker);
+        }
+
+        return tracker;
+    }
+
+    /**
+     * Checks if the entries associated with the specified key are tracked.
+     *
+     * @param saveKey The save key.
+     * @return Whether a tracker exists.
+     */
+    public boolean isTracked(final String saveKey) {
+
+        return mTrackers.containsKey(saveKey);
+    }
+
+    /**
+     * Starts tracking the specified entries associated with the specified key.
+     *
+     * @param saveKey The save key.
+     * @param entries The entries and their statistics.
+     * @return The new tracker instance.
+     */
+    public Tracker track(final String saveKey, final Map<String, EntryStats> entries) {
+
+        final Tracker tracker = mPolicy.newTracker(entries);
+
+        mTrackers.put(saveKey, tracker);
+
+        return tracker;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.List;
+
+/**
+ * Interface defining a {@link BasePersister} supporting the optional capabilities: batches of
+ * modifications, limited loads, bounded histories, ranking and a platform independent context.
+ * <p/>
+ * It is kept separate from {@link BasePersister} so that existing implementations still compile
+ * and run. The helper methods in {@link Persisters} provide a fallback for each capability.
+ */
+public interface ExtendedPersister extends BasePersister {
+
+    /**
+     * Creates a new batch of modifications to be applied all together to the saved data.
+     * <p/>
+     * Implementing classes not providing a more efficient strategy can simply return a new
+     * {@link SimpleBatch} instance.
+     *
+     * @return The batch instance.
+     */
+    public Batch edit();
+
+    /**
+     * Loads at most the specified number of entries associated with the specified key and
+     * starting with the specified sequence of characters.
+     * <p/>
+     * Implementing classes should stop scanning the saved entries as soon as the limit is reached,
+     * whenever the loading order allows it.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The starting sequence.
+     * @param limit      The maximum number of entries to load (0 or less means no limit).
+     * @return The list of entries (MUST never be null).
+     */
+    public List<CharSequence> load(String saveKey, CharSequence constraint, int limit);
+
+    /**
+     * Limits the number of entries associated with each key. When a new entry is saved exceeding
+     * the limit, the entries chosen by the specified policy are discarded.
+     * <p/>
+     * Note that implementing classes may collect the usage statistics needed by the policy only
+     * while a limit or a ranking is set.
+     *
+     * @param maxEntries The maximum number of entries per key (0 or less means no limit).
+     * @param policy     The eviction policy (ignored when there is no limit).
+     */
+    public void setCapacity(int maxEntries, EvictionPolicy policy);
+
+    /**
+     * Sets the context of this persister instance.
+     *
+     * @param context The persister context.
+     */
+    public void setContext(PersisterContext context);
+
+    /**
+     * Sets the ranking used to sort the loaded entries. When a ranking is set, only the
+     * entries with the highest scores are returned, from the highest ranked to the lowest.
+     *
+     * @param ranking    The ranking or null to load the entries in natural order.
+     * @param maxResults The maximum number of entries to load (0 or less means no limit).
+     */
+    public void setRanking(Ranking ranking, int maxResults);
+}
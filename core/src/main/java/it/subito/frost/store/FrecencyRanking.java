@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+/**
+ * Ranking combining frequency and recency of use.
+ * <p/>
+ * The score of an entry is its use count, halved every time a configurable period elapses since
+ * its last use. So an entry used often in the past is eventually outranked by one used less
+ * often but more recently.
+ */
+public class FrecencyRanking implements Ranking {
+
+    /**
+     * The default half-life of an entry score: one week.
+     */
+    public static final long DEFAULT_HALF_LIFE = 7L * 24 * 60 * 60 * 1000;
+
+    private final double mHalfLife;
+
+    /**
+     * Creates a new ranking with the default half-life.
+     */
+    public FrecencyRanking() {
+
+        this(DEFAULT_HALF_LIFE);
+    }
+
+    /**
+     * Creates a new ranking with the specified half-life.
+     *
+     * @param halfLife The time in milliseconds after which an entry score is halved.
+     */
+    public FrecencyRanking(final long halfLife) {
+
+        if (halfLife <= 0) {
+
+            throw new IllegalArgumentException("the half-life must be positive");
+        }
+
+        mHalfLife = halfLife;
+    }
+
+    @Override
+    public double score(final EntryStats stats, final long now) {
+
+        final long age = Math.max(0, now - stats.lastUsed);
+
+        return stats.useCount * Math.pow(0.5, age / mHalfLife);
+    }
+}
@@ -0,0 +1,451 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Codec storing the entries in natural order, each one as the length of the prefix it shares
+ * with the previous entry, followed by the length and the characters of the remaining suffix.
+ * <p/>
+ * Every {@code restartInterval} entries the shared prefix is reset, so that the entry is stored
+ * in full. The header lists the offsets of these restart points, allowing a prefix search to
+ * binary search them and then decode only the entries in the matching range. Since the list of
+ * restart points is delimited, a text can be decoded by a codec with any restart interval.
+ * <p/>
+ * The encoded text starts with {@link #MARKER}, which never appears at the beginning of a
+ * {@link UrlEntryCodec} text. Since characters are never escaped and lengths tell exactly where
+ * each entry ends, decoding does not need any splitting or per-character processing. Similar
+ * entries, like e-mail addresses or street names, also produce a much shorter text.
+ * <br/>
+ * Texts written with no restart points (starting with {@link #LEGACY_MARKER}) can still be
+ * decoded.
+ */
+public class FrontCodedEntryCodec implements SortedEntryCodec {
+
+    public static final int DEFAULT_RESTART_INTERVAL = 16;
+
+    public static final String LEGACY_MARKER = "#F";
+
+    public static final String MARKER = "#P";
+
+    private static final char LENGTH_SEPARATOR = ',';
+
+    private static final char SUFFIX_SEPARATOR = ':';
+
+    private final int mRestartInterval;
+
+    /**
+     * Creates a new codec with the default restart interval.
+     */
+    public FrontCodedEntryCodec() {
+
+        this(DEFAULT_RESTART_INTERVAL);
+    }
+
+    /**
+     * Creates a new codec with the specified restart interval.
+     *
+     * @param restartInterval The number of entries between two restart points.
+     */
+    public FrontCodedEntryCodec(final int restartInterval) {
+
+        if (restartInterval <= 0) {
+
+            throw new IllegalArgumentException("the restart interval must be positive");
+        }
+
+        mRestartInterval = restartInterval;
+    }
+
+    private static char charAt(final String text, final int index) {
+
+        if (index >= text.length()) {
+
+            throw new IllegalArgumentException("truncated text at " + index);
+        }
+
+        return text.charAt(index);
+    }
+
+    private static int commonLength(final String lhs, final String rhs) {
+
+        final int length = Math.min(lhs.length(), rhs.length());
+
+        for (int i = 0; i < length; ++i) {
+
+            if (lhs.charAt(i) != rhs.charAt(i)) {
+
+                return i;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Compares the entry stored in full at the specified position with the specified prefix,
+     * without allocating any string.
+     *
+     * @return A negative number if the entry is less than the prefix, and 0 if it starts with it.
+     */
+    private static int compareToPrefix(final String text, final int position,
+            final String prefix) {
+
+        int index = position;
+
+        while (charAt(text, index++) != LENGTH_SEPARATOR) {
+
+            // Skip the shared length, which is always 0 at restart points
+        }
+
+        int length = 0;
+        char c;
+
+        while ((c = charAt(text, index++)) != SUFFIX_SEPARATOR) {
+
+            length = length * 10 + digit(c);
+        }
+
+        final int count = Math.min(length, prefix.length());
+
+        for (int i = 0; i < count; ++i) {
+
+            final int diff = charAt(text, index + i) - prefix.charAt(i);
+
+            if (diff != 0) {
+
+                return diff;
+            }
+        }
+
+        return (length < prefix.length()) ? -1 : 0;
+    }
+
+    private static int digit(final char c) {
+
+        if ((c < '0') || (c > '9')) {
+
+            throw new IllegalArgumentException("invalid length digit: " + c);
+        }
+
+        return c - '0';
+    }
+
+    /**
+     * Finds the position of the last restart point whose entry is less than the specified prefix.
+     * <br/>
+     * The restart points are read from the header, so texts encoded with any interval are
+     * supported.
+     *
+     * @return The position from which to start decoding.
+     */
+    private static int findStart(final String text, final String prefix) {
+
+        int index = MARKER.length();
+        char c;
+
+        int count = 0;
+
+        while ((c = charAt(text, index++)) != SUFFIX_SEPARATOR) {
+
+            count = count * 10 + digit(c);
+        }
+
+        // The restart points are listed up to the separator, so that their number never depends on
+        // the interval of the decoding instance, which may differ from the encoding one
+
+        final int listStart = index;
+
+        int restartCount = 0;
+
+        if (charAt(text, index) != SUFFIX_SEPARATOR) {
+
+            restartCount = 1;
+
+            while ((c = charAt(text, index++)) != SUFFIX_SEPARATOR) {
+
+                if (c == LENGTH_SEPARATOR) {
+
+                    ++restartCount;
+                }
+            }
+
+        } else {
+
+            ++index;
+        }
+
+        if ((restartCount > count) || ((restartCount == 0) != (count == 0))) {
+
+            throw new IllegalArgumentException(
+                    "invalid restart point count: " + restartCount + " for " + count + " entries");
+        }
+
+        final int base = index;
+        final int[] restarts = new int[restartCount];
+
+        int position = listStart;
+
+        for (int i = 0; i < restartCount; ++i) {
+
+            int offset = 0;
+
+            while (((c = charAt(text, position++)) != LENGTH_SEPARATOR)
+                    && (c != SUFFIX_SEPARATOR)) {
+
+                offset = offset * 10 + digit(c);
+            }
+
+            // Each restart point must follow the previous one and fall inside the entries
+
+            if ((offset < 0) || (offset >= text.length() - base)
+                    || ((i > 0) && (offset <= restarts[i - 1]))) {
+
+                throw new IllegalArgumentException("invalid restart point offset: " + offset);
+            }
+
+            restarts[i] = offset;
+        }
+
+        if (prefix.length() == 0) {
+
+            return base;
+        }
+
+        int low = 0;
+        int high = restartCount - 1;
+        int found = 0;
+
+        while (low <= high) {
+
+            final int middle = (low + high) >>> 1;
+
+            if (compareToPrefix(text, base + restarts[middle], prefix) < 0) {
+
+                found = middle;
+                low = middle + 1;
+
+            } else {
+
+                high = middle - 1;
+            }
+        }
+
+        return (restartCount > 0) ? base + restarts[found] : base;
+    }
+
+    @Override
+    public boolean decode(final String text, final Collection<String> out) {
+
+        return decode(text, "", out, 0);
+    }
+
+    @Override
+    public boolean decode(final String text, final String prefix, final Collection<String> out,
+            final int limit) {
+
+        final int start;
+
+        if (text.startsWith(MARKER)) {
+
+            start = findStart(text, prefix);
+
+        } else if (text.startsWith(LEGACY_MARKER)) {
+
+            start = LEGACY_MARKER.length();
+
+        } else {
+
+            return false;
+        }
+
+        final Reader reader = new Reader(text, start);
+        final int maxCount = (limit > 0) ? limit : Integer.MAX_VALUE;
+
+        int count = 0;
+
+        while ((count < maxCount) && reader.next()) {
+
+            final int compare = reader.compareTo(prefix);
+
+            if (compare < 0) {
+
+                continue;
+            }
+
+            if (compare > 0) {
+
+                break;
+            }
+
+            out.add(reader.toString());
+
+            ++count;
+        }
+
+        return true;
+    }
+
+    @Override
+    public String encode(final Collection<String> entries) {
+
+        final ArrayList<String> sorted = new ArrayList<String>(entries);
+
+        Collections.sort(sorted);
+
+        final StringBuilder records = new StringBuilder();
+        final StringBuilder header = new StringBuilder(MARKER);
+
+        header.append(sorted.size()).append(SUFFIX_SEPARATOR);
+
+        final int restartInterval = mRestartInterval;
+
+        String previous = "";
+
+        for (int i = 0; i < sorted.size(); ++i) {
+
+            final String entry = sorted.get(i);
+
+            final int common;
+
+            if ((i % restartInterval) == 0) {
+
+                if (i > 0) {
+
+                    header.append(LENGTH_SEPARATOR);
+                }
+
+                header.append(records.length());
+
+                common = 0;
+
+            } else {
+
+                common = commonLength(previous, entry);
+            }
+
+            records.append(common)
+                   .append(LENGTH_SEPARATOR)
+                   .append(entry.length() - common)
+                   .append(SUFFIX_SEPARATOR)
+                   .append(entry, common, entry.length());
+
+            previous = entry;
+        }
+
+        return header.append(SUFFIX_SEPARATOR).append(records).toString();
+    }
+
+    /**
+     * Class decoding the entries one by one, reusing the same buffer.
+     */
+    private static class Reader {
+
+        private final String mText;
+
+        private char[] mBuffer = new char[64];
+
+        private int mLength;
+
+        private int mPosition;
+
+        public Reader(final String text, final int position) {
+
+            mText = text;
+            mPosition = position;
+        }
+
+        public int compareTo(final String prefix) {
+
+            final char[] buffer = mBuffer;
+            final int count = Math.min(mLength, prefix.length());
+
+            for (int i = 0; i < count; ++i) {
+
+                final int diff = buffer[i] - prefix.charAt(i);
+
+                if (diff != 0) {
+
+                    return diff;
+                }
+            }
+
+            return (mLength < prefix.length()) ? -1 : 0;
+        }
+
+        public boolean next() {
+
+            final String text = mText;
+            final int length = text.length();
+
+            int position = mPosition;
+
+            if (position >= length) {
+
+                return false;
+            }
+
+            int common = 0;
+            char c;
+
+            while ((c = charAt(text, position++)) != LENGTH_SEPARATOR) {
+
+                common = common * 10 + digit(c);
+            }
+
+            int suffix = 0;
+
+            while ((c = charAt(text, position++)) != SUFFIX_SEPARATOR) {
+
+                suffix = suffix * 10 + digit(c);
+            }
+
+            final int end = position + suffix;
+
+            if ((end < position) || (end > length) || (common < 0) || (common > mLength)) {
+
+                throw new IllegalArgumentException("truncated entry at " + position);
+            }
+
+            final int entryLength = common + suffix;
+
+            if (entryLength > mBuffer.length) {
+
+                final char[] buffer = new char[Math.max(entryLength, mBuffer.length * 2)];
+
+                System.arraycopy(mBuffer, 0, buffer, 0, common);
+
+                mBuffer = buffer;
+            }
+
+            text.getChars(position, end, mBuffer, common);
+
+            mLength = entryLength;
+            mPosition = end;
+
+            return true;
+        }
+
+        @Override
+        public String toString() {
+
+            return new String(mBuffer, 0, mLength);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class counting the generations of a sequence of requests, like the constraints typed in a view,
+ * where only the result of the latest request is needed.
+ * <p/>
+ * Each token is canceled as soon as a newer generation starts.
+ */
+public class GenerationCounter {
+
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    /**
+     * Returns a token bound to the current generation.
+     *
+     * @return The token instance.
+     */
+    public CancellationToken current() {
+
+        return new GenerationToken(mGeneration.get());
+    }
+
+    /**
+     * Starts a new generation, canceling all the tokens of the previous ones.
+     *
+     * @return The token bound to the new generation.
+     */
+    public CancellationToken next() {
+
+        return new GenerationToken(mGeneration.incrementAndGet());
+    }
+
+    private class GenerationToken extends CancellationToken {
+
+        private final long mTokenGeneration;
+
+        public GenerationToken(final long generation) {
+
+            mTokenGeneration = generation;
+        }
+
+        @Override
+        public boolean isCanceled() {
+
+            return (mGeneration.get() != mTokenGeneration);
+        }
+    }
+}
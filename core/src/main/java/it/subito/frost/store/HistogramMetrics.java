@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+/**
+ * Implementation of {@link PersisterMetrics} aggregating the measures in memory.
+ * <p/>
+ * For each operation the count, the total and maximum duration, the total result size and a
+ * histogram of the durations are kept. The histogram buckets have exponentially growing widths:
+ * the first one holds the durations under 1 microsecond, and the i-th one the durations between
+ * 2^(i-1) and 2^i microseconds.
+ */
+public class HistogramMetrics implements PersisterMetrics {
+
+    public static final int BUCKET_COUNT = 32;
+
+    private final long[] mCounts = new long[OPERATION_COUNT];
+
+    private final long[][] mHistograms = new long[OPERATION_COUNT][BUCKET_COUNT];
+
+    private final long[] mMaxDurations = new long[OPERATION_COUNT];
+
+    private final long[] mSizes = new long[OPERATION_COUNT];
+
+    private final long[] mTotalDurations = new long[OPERATION_COUNT];
+
+    private long mCacheHitCount;
+
+    private long mCacheMissCount;
+
+    /**
+     * Returns the index of the histogram bucket holding the specified duration.
+     *
+     * @param durationNanos The duration in nanoseconds.
+     * @return The bucket index.
+     */
+    public static int getBucket(final long durationNanos) {
+
+        final long micros = durationNanos / 1000;
+
+        if (micros <= 0) {
+
+            return 0;
+        }
+
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the exclusive upper bound of the durations held by the specified histogram bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The duration in nanoseconds.
+     */
+    public static long getBucketUpperBound(final int bucket) {
+
+        if (bucket >= BUCKET_COUNT - 1) {
+
+            return Long.MAX_VALUE;
+        }
+
+        return (1L << bucket) * 1000;
+    }
+
+    public synchronized long getCacheHitCount() {
+
+        return mCacheHitCount;
+    }
+
+    public synchronized long getCacheMissCount() {
+
+        return mCacheMissCount;
+    }
+
+    /**
+     * Returns the number of times the specified operation was performed.
+     *
+     * @param operation The operation.
+     * @return The operation count.
+     */
+    public synchronized long getCount(final int operation) {
+
+        return mCounts[operation];
+    }
+
+    /**
+     * Returns a copy of the duration histogram of the specified operation.
+     *
+     * @param operation The operation.
+     * @return The count of the durations falling in each bucket.
+     * @see #getBucketUpperBound(int)
+     */
+    public synchronized long[] getHistogram(final int operation) {
+
+        return mHistograms[operation].clone();
+    }
+
+    /**
+     * Returns the maximum duration of the specified operation.
+     *
+     * @param operation The operation.
+     * @return The duration in nanoseconds.
+     */
+    public synchronized long getMaxDuration(final int operation) {
+
+        return mMaxDurations[operation];
+    }
+
+    /**
+     * Returns an upper bound of the specified percentile of the operation durations, computed
+     * from the histogram.
+     *
+     * @param operation  The operation.
+     * @param percentile The percentile between 0 and 100.
+     * @return The duration in nanoseconds (0 if the operation was never performed).
+     */
+    public synchronized long getPercentile(final int operation, final double percentile) {
+
+        final long count = mCounts[operation];
+
+        if (count == 0) {
+
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+
+        final long[] histogram = mHistograms[operation];
+
+        long cumulative = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+
+            cumulative += histogram[i];
+
+            if (cumulative >= rank) {
+
+                return Math.min(getBucketUpperBound(i), mMaxDurations[operation]);
+            }
+        }
+
+        return mMaxDurations[operation];
+    }
+
+    /**
+     * Returns the total duration of the specified operation.
+     *
+     * @param operation The operation.
+     * @return The duration in nanoseconds.
+     */
+    public synchronized long getTotalDuration(final int operation) {
+
+        return mTotalDurations[operation];
+    }
+
+    /**
+     * Returns the total size of the results of the specified operation, excluding the unknown
+     * ones.
+     *
+     * @param operation The operation.
+     * @return The total size.
+     */
+    public synchronized long getTotalSize(final int operation) {
+
+        return mSizes[operation];
+    }
+
+    @Override
+    public synchronized void onCacheLookup(final String saveKey, final boolean hit) {
+
+        if (hit) {
+
+            ++mCacheHitCount;
+
+        } else {
+
+            ++mCacheMissCount;
+        }
+    }
+
+    @Override
+    public synchronized void onOperation(final int operation, final String saveKey,
+            final long durationNanos, final int size) {
+
+        ++mCounts[operation];
+        ++mHistograms[operation][getBucket(durationNanos)];
+
+        mTotalDurations[operation] += durationNanos;
+        mMaxDurations[operation] = Math.max(mMaxDurations[operation], durationNanos);
+
+        if (size > 0) {
+
+            mSizes[operation] += size;
+        }
+    }
+
+    /**
+     * Resets all the collected measures, for example after exporting them.
+     */
+    public synchronized void reset() {
+
+        for (int i = 0; i < OPERATION_COUNT; ++i) {
+
+            mCounts[i] = 0;
+            mMaxDurations[i] = 0;
+            mSizes[i] = 0;
+            mTotalDurations[i] = 0;
+
+            final long[] histogram = mHistograms[i];
+
+            for (int j = 0; j < BUCKET_COUNT; ++j) {
+
+                histogram[j] = 0;
+            }
+        }
+
+        mCacheHitCount = 0;
+        mCacheMissCount = 0;
+    }
+}
@@ -0,0 +1,675 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import it.subito.frost.store.EvictionPolicy.Tracker;
+
+/**
+ * Class implementing a {@link BasePersister} keeping all the data in memory.
+ * <p/>
+ * The entries associated with each key are kept sorted, so that the ones starting with a specific
+ * sequence of characters form a contiguous range which can be retrieved without scanning the
+ * whole history. Loaded entries are returned in natural order, unless a ranking is set.
+ * <p/>
+ * This persister can be safely accessed from multiple threads. Modifications are serialized by
+ * a lock per key (actually one out of a fixed set of locks), while loading reads an immutable
+ * snapshot of the entries, published through a volatile field and rebuilt only after entries
+ * have been added or removed. A new use of an existing entry just replaces its statistics in the
+ * current snapshot. So loading never blocks, unless the entries changed since the last snapshot
+ * was taken.
+ */
+public class InMemoryPersister extends AbstractPersister {
+
+    private static final int LOCK_STRIPES = 16;
+
+    private final Object[] mLocks = new Object[LOCK_STRIPES];
+
+    private final ConcurrentHashMap<String, History> mStore =
+            new ConcurrentHashMap<String, History>();
+
+    private volatile Evictor mEvictor;
+
+    /**
+     * Creates a new persister.
+     */
+    public InMemoryPersister() {
+
+        final Object[] locks = mLocks;
+
+        for (int i = 0; i < locks.length; ++i) {
+
+            locks[i] = new Object();
+        }
+    }
+
+    private static EntryStats copy(final EntryStats stats) {
+
+        return new EntryStats(stats.added, stats.lastUsed, stats.useCount);
+    }
+
+    @Override
+    public void clear() {
+
+        clearEntries();
+
+        notifyDataChanged();
+    }
+
+    /**
+     * Removes all the entries associated with all the keys.
+     * <br/>
+     * The data observer is not notified.
+     */
+    void clearEntries() {
+
+        runLocked(0, new Runnable() {
+
+            @Override
+            public void run() {
+
+                mStore.clear();
+
+                final Evictor evictor = mEvictor;
+
+                if (evictor != null) {
+
+                    evictor.clear();
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getCount(final String saveKey) {
+
+        final History history = mStore.get(saveKey);
+
+        if (history != null) {
+
+            return getSnapshot(saveKey, history).entries.length;
+        }
+
+        return 0;
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit) {
+
+        return load(saveKey, constraint, limit, CancellationToken.NONE);
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit, final CancellationToken token) {
+
+        token.throwIfCanceled();
+
+        final History history = mStore.get(saveKey);
+
+        if (history == null) {
+
+            return Collections.emptyList();
+        }
+
+        final Snapshot snapshot = getSnapshot(saveKey, history);
+        final List<String> entries = Arrays.asList(snapshot.entries);
+
+        final int from;
+        final int to;
+
+        if (!TextHelper.isEmpty(constraint)) {
+
+            // Compare the constraint in place, so that no copy of it is made
+
+            from = TextHelper.prefixStart(entries, constraint);
+            to = TextHelper.prefixEnd(entries, constraint, from);
+
+        } else {
+
+            from = 0;
+            to = entries.size();
+        }
+
+        final Ranking ranking = getRanking();
+
+        if (ranking != null) {
+
+            final AtomicReferenceArray<EntryStats> stats = snapshot.stats;
+
+            final TopSelector selector =
+                    new TopSelector(ranking, getMaxResults(limit), System.currentTimeMillis(),
+                                    token);
+
+            for (int i = from; i < to; ++i) {
+
+                selector.offer(entries.get(i), stats.get(i));
+            }
+
+            return selector.toList();
+        }
+
+        final int count = ((limit > 0) && (limit < to - from)) ? limit : to - from;
+
+        // The snapshot is immutable, so a read-only view of it is returned
+
+        return Collections.<CharSequence>unmodifiableList(entries.subList(from, from + count));
+    }
+
+    @Override
+    public void remove(final String saveKey) {
+
+        final List<String> removed = removeKey(saveKey);
+
+        if (!removed.isEmpty()) {
+
+            notifyDataChanged(saveKey, new DataChange(null, removed));
+        }
+    }
+
+    @Override
+    public void remove(final String saveKey, final Collection<CharSequence> data) {
+
+        final List<String> removed = removeEntries(saveKey, data);
+
+        if (!removed.isEmpty()) {
+
+            notifyDataChanged(saveKey, new DataChange(null, removed));
+        }
+    }
+
+    /**
+     * Removes all the entries associated with the specified key.
+     * <br/>
+     * The data observer is not notified.
+     *
+     * @param saveKey The save key.
+     * @return The list of removed entries.
+     */
+    List<String> removeKey(final String saveKey) {
+
+        synchronized (lockFor(saveKey)) {
+
+            final History history = mStore.remove(saveKey);
+
+            final Evictor evictor = mEvictor;
+
+            if (evictor != null) {
+
+                evictor.clear(saveKey);
+            }
+
+            if (history == null) {
+
+                return Collections.emptyList();
+            }
+
+            return new ArrayList<String>(history.list.keySet());
+        }
+    }
+
+    /**
+     * Removes all the passed entries from the ones associated with the specified key.
+     * <br/>
+     * The data observer is not notified.
+     *
+     * @param saveKey The save key.
+     * @param data    The entries to remove.
+     * @return The list of removed entries.
+     */
+    List<String> removeEntries(final String saveKey, final Collection<CharSequence> data) {
+
+        final ArrayList<String> removed = new ArrayList<String>();
+
+        synchronized (lockFor(saveKey)) {
+
+            final History history = mStore.get(saveKey);
+
+            if (history == null) {
+
+                return removed;
+            }
+
+            final TreeMap<String, EntryStats> list = history.list;
+
+            final Evictor evictor = mEvictor;
+            final Tracker tracker = (evictor != null) ? evictor.getTracker(saveKey) : null;
+
+            for (final CharSequence datum : data) {
+
+                if (TextHelper.isEmpty(datum)) {
+
+                    continue;
+                }
+
+                final String string = datum.toString();
+
+                if (list.remove(string) != null) {
+
+                    removed.add(string);
+
+                    history.snapshot = null;
+
+                    if (tracker != null) {
+
+                        tracker.onRemoved(string);
+                    }
+                }
+            }
+
+            if (list.isEmpty()) {
+
+                removeKey(saveKey);
+            }
+        }
+
+        return removed;
+    }
+
+    @Override
+    public void save(final String saveKey, final CharSequence data) {
+
+        if (TextHelper.isEmpty(data)) {
+
+            return;
+        }
+
+        final DataChange change = save(saveKey, data.toString(), System.currentTimeMillis());
+
+        if (change != null) {
+
+            notifyDataChanged(saveKey, change);
+        }
+    }
+
+    @Override
+    public void setCapacity(final int maxEntries, final EvictionPolicy policy) {
+
+        if (maxEntries <= 0) {
+
+            mEvictor = null;
+
+            return;
+        }
+
+        final boolean[] changed = new boolean[1];
+
+        runLocked(0, new Runnable() {
+
+            @Override
+            public void run() {
+
+                final Evictor evictor = new Evictor(maxEntries, policy);
+
+                for (final Map.Entry<String, History> entry : mStore.entrySet()) {
+
+                    final History history = entry.getValue();
+                    final TreeMap<String, EntryStats> list = history.list;
+
+                    if (evict(list, evictor.track(entry.getKey(), list), maxEntries, null)) {
+
+                        history.snapshot = null;
+
+                        changed[0] = true;
+                    }
+                }
+
+                mEvictor = evictor;
+            }
+        });
+
+        if (changed[0]) {
+
+            notifyDataChanged();
+        }
+    }
+
+    @Override
+    public void setContext(final PersisterContext context) {
+
+        // Nothing to do
+    }
+
+    /**
+     * Returns a copy of all the entries and of their statistics, grouped by key.
+     *
+     * @return The map of the entries.
+     */
+    Map<String, Map<String, EntryStats>> export() {
+
+        final HashMap<String, Map<String, EntryStats>> map =
+                new HashMap<String, Map<String, EntryStats>>();
+
+        for (final Map.Entry<String, History> entry : mStore.entrySet()) {
+
+            final Snapshot snapshot = getSnapshot(entry.getKey(), entry.getValue());
+
+            final String[] entries = snapshot.entries;
+            final AtomicReferenceArray<EntryStats> stats = snapshot.stats;
+
+            final TreeMap<String, EntryStats> list = new TreeMap<String, EntryStats>();
+
+            for (int i = 0; i < entries.length; ++i) {
+
+                list.put(entries[i], stats.get(i));
+            }
+
+            map.put(entry.getKey(), list);
+        }
+
+        return map;
+    }
+
+    /**
+     * Returns the total number of entries associated with all the keys.
+     *
+     * @return The entry count.
+     */
+    int getTotalCount() {
+
+        int count = 0;
+
+        for (final Map.Entry<String, History> entry : mStore.entrySet()) {
+
+            synchronized (lockFor(entry.getKey())) {
+
+                count += entry.getValue().list.size();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds the specified entry with the specified statistics, replacing the existing ones.
+     * <br/>
+     * The data observer is not notified.
+     *
+     * @param saveKey The save key.
+     * @param entry   The entry.
+     * @param stats   The entry statistics.
+     */
+    void restore(final String saveKey, final String entry, final EntryStats stats) {
+
+        synchronized (lockFor(saveKey)) {
+
+            final History history = getHistory(saveKey);
+            final EntryStats copy = new EntryStats(stats.added, stats.lastUsed, stats.useCount);
+
+            final Evictor evictor = mEvictor;
+            final Tracker tracker = (evictor != null) ? evictor.getTracker(saveKey) : null;
+
+            if (history.list.put(entry, copy) != null) {
+
+                history.update(entry, copy);
+
+                if (tracker != null) {
+
+                    tracker.onUsed(entry, copy);
+                }
+
+                return;
+            }
+
+            history.snapshot = null;
+
+            if (tracker != null) {
+
+                tracker.onAdded(entry, copy);
+
+                evict(history.list, tracker, evictor.getCapacity(), null);
+            }
+        }
+    }
+
+    /**
+     * Saves the specified entry, or records a new use of it if already present.
+     * <br/>
+     * The data observer is not notified.
+     *
+     * @param saveKey The save key.
+     * @param entry   The entry.
+     * @param now     The current time in milliseconds.
+     * @return The change or null if the entry was already present and no ranking is set.
+     */
+    DataChange save(final String saveKey, final String entry, final long now) {
+
+        synchronized (lockFor(saveKey)) {
+
+            final History history = getHistory(saveKey);
+            final TreeMap<String, EntryStats> list = history.list;
+
+            final Evictor evictor = mEvictor;
+            final Tracker tracker = (evictor != null) ? evictor.getTracker(saveKey) : null;
+
+            EntryStats stats = list.get(entry);
+
+            if (stats != null) {
+
+                stats.use(now);
+
+                // Only the statistics of the used entry change, so the snapshot is kept
+
+                history.update(entry, stats);
+
+                if (tracker != null) {
+
+                    tracker.onUsed(entry, stats);
+                }
+
+                // The new use can only change the order of the ranked entries
+
+                if (getRanking() == null) {
+
+                    return null;
+                }
+
+                return new DataChange(null, null, Collections.singletonList(entry));
+            }
+
+            stats = new EntryStats(now);
+            list.put(entry, stats);
+
+            history.snapshot = null;
+
+            if (tracker == null) {
+
+                return new DataChange(Collections.singletonList(entry), null);
+            }
+
+            tracker.onAdded(entry, stats);
+
+            final ArrayList<String> evicted = new ArrayList<String>();
+
+            evict(list, tracker, evictor.getCapacity(), evicted);
+
+            return new DataChange(Collections.singletonList(entry), evicted);
+        }
+    }
+
+    private boolean evict(final TreeMap<String, EntryStats> list, final Tracker tracker,
+            final int capacity, final List<String> evicted) {
+
+        boolean result = false;
+
+        while (list.size() > capacity) {
+
+            final String entry = tracker.evict();
+
+            if (entry == null) {
+
+                break;
+            }
+
+            list.remove(entry);
+
+            if (evicted != null) {
+
+                evicted.add(entry);
+            }
+
+            result = true;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the history associated with the specified key, creating it if needed.
+     * MUST be called while holding the key lock.
+     */
+    private History getHistory(final String saveKey) {
+
+        final Map<String, History> store = mStore;
+
+        History history = store.get(saveKey);
+
+        if (history == null) {
+
+            history = new History();
+            store.put(saveKey, history);
+        }
+
+        return history;
+    }
+
+    /**
+     * Returns the latest snapshot of the specified history, taking a new one if the entries have
+     * been modified meanwhile.
+     */
+    private Snapshot getSnapshot(final String saveKey, final History history) {
+
+        final Snapshot snapshot = history.snapshot;
+
+        if (snapshot != null) {
+
+            return snapshot;
+        }
+
+        synchronized (lockFor(saveKey)) {
+
+            Snapshot current = history.snapshot;
+
+            if (current == null) {
+
+                current = new Snapshot(history.list);
+                history.snapshot = current;
+            }
+
+            return current;
+        }
+    }
+
+    private Object lockFor(final String saveKey) {
+
+        return mLocks[(saveKey.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /**
+     * Runs the specified task while holding all the locks starting from the specified one.
+     * Locks are always acquired in the same order to avoid deadlocks.
+     */
+    private void runLocked(final int index, final Runnable runnable) {
+
+        if (index == LOCK_STRIPES) {
+
+            runnable.run();
+
+            return;
+        }
+
+        synchronized (mLocks[index]) {
+
+            runLocked(index + 1, runnable);
+        }
+    }
+
+    /**
+     * Class holding the entries associated with a single key.
+     */
+    private static class History {
+
+        public final TreeMap<String, EntryStats> list = new TreeMap<String, EntryStats>();
+
+        public volatile Snapshot snapshot;
+
+        /**
+         * Replaces the statistics of the specified entry in the current snapshot, if any.
+         * MUST be called while holding the key lock.
+         */
+        public void update(final String entry, final EntryStats stats) {
+
+            final Snapshot current = snapshot;
+
+            if (current == null) {
+
+                return;
+            }
+
+            final int index = Arrays.binarySearch(current.entries, entry);
+
+            if (index >= 0) {
+
+                current.stats.set(index, copy(stats));
+            }
+        }
+    }
+
+    /**
+     * Immutable copy of the entries associated with a single key and of their statistics.
+     * <br/>
+     * The statistics of a single entry can be atomically replaced by a new copy.
+     */
+    private static class Snapshot {
+
+        public final String[] entries;
+
+        public final AtomicReferenceArray<EntryStats> stats;
+
+        public Snapshot(final TreeMap<String, EntryStats> list) {
+
+            final int size = list.size();
+
+            final String[] entries = new String[size];
+            final AtomicReferenceArray<EntryStats> stats =
+                    new AtomicReferenceArray<EntryStats>(size);
+
+            int i = 0;
+
+            for (final Map.Entry<String, EntryStats> entry : list.entrySet()) {
+
+                entries[i] = entry.getKey();
+                stats.set(i, copy(entry.getValue()));
+
+                ++i;
+            }
+
+            this.entries = entries;
+            this.stats = stats;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Implementation of a {@link BasePersister} wrapping another one and reporting the count, duration
+ * and result size of its operations to a {@link PersisterMetrics} instance.
+ * <p/>
+ * If the wrapped persister extends {@link AbstractPersister}, the metrics are notified of its
+ * result cache lookups too.
+ */
+public class InstrumentedPersister implements ExtendedPersister {
+
+    private final PersisterMetrics mMetrics;
+
+    private final BasePersister mPersister;
+
+    /**
+     * Creates a new instance wrapping the specified persister.
+     *
+     * @param persister The persister to instrument.
+     * @param metrics   The metrics collecting the measures.
+     */
+    public InstrumentedPersister(final BasePersister persister, final PersisterMetrics metrics) {
+
+        if (persister == null) {
+
+            throw new IllegalArgumentException("the persister cannot be null");
+        }
+
+        if (metrics == null) {
+
+            throw new IllegalArgumentException("the metrics cannot be null");
+        }
+
+        mPersister = persister;
+        mMetrics = metrics;
+
+        if (persister instanceof AbstractPersister) {
+
+            ((AbstractPersister) persister).setMetrics(metrics);
+        }
+    }
+
+    @Override
+    public void clear() {
+
+        final long start = System.nanoTime();
+
+        mPersister.clear();
+
+        report(PersisterMetrics.OPERATION_CLEAR, null, start, -1);
+    }
+
+    @Override
+    public Batch edit() {
+
+        return new InstrumentedBatch(Persisters.edit(mPersister));
+    }
+
+    @Override
+    public int getCount(final String savedKey) {
+
+        return mPersister.getCount(savedKey);
+    }
+
+    /**
+     * Returns the metrics collecting the measures.
+     *
+     * @return The metrics instance.
+     */
+    public PersisterMetrics getMetrics() {
+
+        return mMetrics;
+    }
+
+    /**
+     * Returns the wrapped persister.
+     *
+     * @return The persister instance.
+     */
+    public BasePersister getPersister() {
+
+        return mPersister;
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint) {
+
+        final long start = System.nanoTime();
+
+        final List<CharSequence> entries = mPersister.load(saveKey, constraint);
+
+        report(PersisterMetrics.OPERATION_LOAD, saveKey, start, entries.size());
+
+        return entries;
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit) {
+
+        final long start = System.nanoTime();
+
+        final List<CharSequence> entries = Persisters.load(mPersister, saveKey, constraint, limit);
+
+        report(PersisterMetrics.OPERATION_LOAD, saveKey, start, entries.size());
+
+        return entries;
+    }
+
+    @Override
+    public void remove(final String saveKey) {
+
+        final long start = System.nanoTime();
+
+        mPersister.remove(saveKey);
+
+        report(PersisterMetrics.OPERATION_REMOVE, saveKey, start, -1);
+    }
+
+    @Override
+    public void remove(final String saveKey, final CharSequence... data) {
+
+        final long start = System.nanoTime();
+
+        mPersister.remove(saveKey, data);
+
+        report(PersisterMetrics.OPERATION_REMOVE, saveKey, start,
+               (data != null) ? data.length : 0);
+    }
+
+    @Override
+    public void remove(final String saveKey, final Collection<CharSequence> data) {
+
+        final long start = System.nanoTime();
+
+        mPersister.remove(saveKey, data);
+
+        report(PersisterMetrics.OPERATION_REMOVE, saveKey, start,
+               (data != null) ? data.size() : 0);
+    }
+
+    @Override
+    public void save(final String saveKey, final CharSequence data) {
+
+        final long start = System.nanoTime();
+
+        mPersister.save(saveKey, data);
+
+        report(PersisterMetrics.OPERATION_SAVE, saveKey, start, 1);
+    }
+
+    @Override
+    public void setCapacity(final int maxEntries, final EvictionPolicy policy) {
+
+        Persisters.setCapacity(mPersister, maxEntries, policy);
+    }
+
+    @Override
+    public void setContext(final PersisterContext context) {
+
+        Persisters.setContext(mPersister, context);
+    }
+
+    @Override
+    public void setObserver(final DataObserver observer) {
+
+        mPersister.setObserver(observer);
+    }
+
+    @Override
+    public void setRanking(final Ranking ranking, final int maxResults) {
+
+        Persisters.setRanking(mPersister, ranking, maxResults);
+    }
+
+    private void report(final int operation, final String saveKey, final long start,
+            final int size) {
+
+        mMetrics.onOperation(operation, saveKey, System.nanoTime() - start, size);
+    }
+
+    /**
+     * Batch counting the modifications and measuring the duration of the commit.
+     */
+    private class InstrumentedBatch implements Batch {
+
+        private final Batch mBatch;
+
+        private int mCount;
+
+        private InstrumentedBatch(final Batch batch) {
+
+            mBatch = batch;
+        }
+
+        @Override
+        public Batch clear() {
+
+            mBatch.clear();
+
+            ++mCount;
+
+            return this;
+        }
+
+        @Override
+        public void commit() {
+
+            final long start = System.nanoTime();
+
+            mBatch.commit();
+
+            report(PersisterMetrics.OPERATION_COMMIT, null, start, mCount);
+
+            mCount = 0;
+        }
+
+        @Override
+        public Batch remove(final String saveKey) {
+
+            mBatch.remove(saveKey);
+
+            ++mCount;
+
+            return this;
+        }
+
+        @Override
+        public Batch remove(final String saveKey, final CharSequence... data) {
+
+            mBatch.remove(saveKey, data);
+
+            ++mCount;
+
+            return this;
+        }
+
+        @Override
+        public Batch remove(final String saveKey, final Collection<CharSequence> data) {
+
+            mBatch.remove(saveKey, data);
+
+            ++mCount;
+
+            return this;
+        }
+
+        @Override
+        public Batch save(final String saveKey, final CharSequence data) {
+
+            mBatch.save(saveKey, data);
+
+            ++mCount;
+
+            return this;
+        }
+    }
+}
@@ -0,0 +1,743 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Class implementing a {@link BasePersister} which appends each modification to a journal file.
+ * <p/>
+ * The journal is a sequence of length-prefixed and checksummed binary records, written through a
+ * memory mapped buffer, so that saving an entry costs a single append, independently from the
+ * history size. All the entries are also kept in memory to be loaded.
+ * <br/>
+ * When the ratio of obsolete records exceeds the configured threshold, the journal is compacted
+ * in a background thread, by rewriting only the current entries and their usage statistics.
+ * <p/>
+ * The journal is replayed when the context is set. Records which were not completely written,
+ * for example because the process was killed, are detected through their checksum and discarded.
+ * Until the context is set, the entries are only kept in memory.
+ */
+public class JournalPersister extends AbstractPersister {
+
+    /**
+     * The default ratio of obsolete records triggering a compaction.
+     */
+    public static final float DEFAULT_COMPACTION_THRESHOLD = 0.5f;
+
+    public static final String FILE_NAME = ".frostJournal";
+
+    private static final String CHARSET_NAME = "UTF-8";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int MIN_COMPACTION_RECORDS = 256;
+
+    private static final int MIN_MAPPED_SIZE = 64 * 1024;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final byte TYPE_CLEAR = 1;
+
+    private static final byte TYPE_REMOVE = 2;
+
+    private static final byte TYPE_REMOVE_ALL = 3;
+
+    private static final byte TYPE_SAVE = 4;
+
+    private static final byte TYPE_STATS = 5;
+
+    private static ExecutorService sCompactionExecutor;
+
+    private final Object mLock = new Object();
+
+    private final InMemoryPersister mMemory = new InMemoryPersister();
+
+    private MappedByteBuffer mBuffer;
+
+    private int mCapacity;
+
+    private FileChannel mChannel;
+
+    private boolean mCompacting;
+
+    private ArrayList<byte[]> mCompactionTail;
+
+    private boolean mCompactionScheduled;
+
+    private float mCompactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private File mFile;
+
+    private EvictionPolicy mPolicy;
+
+    private int mPosition;
+
+    private int mRecordCount;
+
+    private final Runnable mCompactionRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+
+            synchronized (mLock) {
+
+                mCompactionScheduled = false;
+            }
+
+            compact();
+        }
+    };
+
+    /**
+     * Creates a new persister storing the journal in the application files directory.
+     */
+    public JournalPersister() {
+
+        this(null);
+    }
+
+    /**
+     * Creates a new persister storing the journal in the specified file.
+     *
+     * @param file The journal file or null to use the default one.
+     */
+    public JournalPersister(final File file) {
+
+        mFile = file;
+
+        mMemory.setObserver(new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                notifyDataChanged();
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                notifyDataChanged(saveKey, change);
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getCompactionExecutor() {
+
+        if (sCompactionExecutor == null) {
+
+            sCompactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+
+                    final Thread thread = new Thread(runnable, "Frost-compaction");
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+        }
+
+        return sCompactionExecutor;
+    }
+
+    private static byte[] encode(final String string) {
+
+        if (string == null) {
+
+            return new byte[0];
+        }
+
+        try {
+
+            return string.getBytes(CHARSET_NAME);
+
+        } catch (final UnsupportedEncodingException e) {
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readString(final ByteBuffer buffer) throws UnsupportedEncodingException {
+
+        final byte[] bytes = new byte[buffer.getInt()];
+
+        buffer.get(bytes);
+
+        return new String(bytes, CHARSET_NAME);
+    }
+
+    private static byte[] record(final byte type, final String saveKey, final String entry,
+            final EntryStats stats) {
+
+        final byte[] key = encode(saveKey);
+        final byte[] data = encode(entry);
+
+        int length = 1 + 4 + key.length + 4 + data.length;
+
+        if (type == TYPE_SAVE) {
+
+            length += 8;
+
+        } else if (type == TYPE_STATS) {
+
+            length += 8 + 8 + 4;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length);
+
+        buffer.putInt(length);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putInt(key.length).put(key);
+        buffer.putInt(data.length).put(data);
+
+        if (type == TYPE_SAVE) {
+
+            buffer.putLong(stats.lastUsed);
+
+        } else if (type == TYPE_STATS) {
+
+            buffer.putLong(stats.added).putLong(stats.lastUsed).putInt(stats.useCount);
+        }
+
+        final byte[] bytes = buffer.array();
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, length);
+
+        buffer.putInt(4, (int) crc.getValue());
+
+        return bytes;
+    }
+
+    @Override
+    public void clear() {
+
+        synchronized (mLock) {
+
+            append(record(TYPE_CLEAR, null, null, null));
+
+            mMemory.clearEntries();
+        }
+
+        notifyDataChanged();
+    }
+
+    /**
+     * Compacts the journal by rewriting only the current entries and their statistics.
+     * <br/>
+     * The modifications applied meanwhile are appended to the compacted journal, so this method
+     * can be safely called from any thread.
+     */
+    public void compact() {
+
+        final Map<String, Map<String, EntryStats>> entries;
+        final File file;
+
+        synchronized (mLock) {
+
+            if ((mChannel == null) || mCompacting) {
+
+                return;
+            }
+
+            mCompacting = true;
+            mCompactionTail = new ArrayList<byte[]>();
+
+            entries = mMemory.export();
+            file = mFile;
+        }
+
+        final File temp = new File(file.getPath() + TEMP_SUFFIX);
+
+        boolean compacted = false;
+
+        try {
+
+            final RandomAccessFile output = new RandomAccessFile(temp, "rw");
+
+            try {
+
+                output.setLength(0);
+
+                int records = 0;
+
+                for (final Map.Entry<String, Map<String, EntryStats>> key : entries.entrySet()) {
+
+                    for (final Map.Entry<String, EntryStats> entry : key.getValue().entrySet()) {
+
+                        output.write(record(TYPE_STATS, key.getKey(), entry.getKey(),
+                                            entry.getValue()));
+
+                        ++records;
+                    }
+                }
+
+                synchronized (mLock) {
+
+                    for (final byte[] record : mCompactionTail) {
+
+                        output.write(record);
+
+                        ++records;
+                    }
+
+                    final long length = output.length();
+
+                    output.getChannel().force(false);
+                    output.close();
+
+                    if (!temp.renameTo(file)) {
+
+                        throw new IOException("cannot replace " + file);
+                    }
+
+                    mChannel.close();
+
+                    open(file);
+
+                    mPosition = (int) length;
+                    mRecordCount = records;
+                }
+
+                compacted = true;
+
+            } finally {
+
+                output.close();
+            }
+
+        } catch (final IOException e) {
+
+            // The current journal is still valid
+
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+
+        } finally {
+
+            synchronized (mLock) {
+
+                mCompacting = false;
+                mCompactionTail = null;
+
+                if (compacted) {
+
+                    // The records appended meanwhile might be enough to compact again
+
+                    checkCompaction();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getCount(final String saveKey) {
+
+        return mMemory.getCount(saveKey);
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit) {
+
+        return mMemory.load(saveKey, constraint, limit);
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit, final CancellationToken token) {
+
+        return mMemory.load(saveKey, constraint, limit, token);
+    }
+
+    @Override
+    public void remove(final String saveKey) {
+
+        final List<String> removed;
+
+        synchronized (mLock) {
+
+            if (mMemory.getCount(saveKey) == 0) {
+
+                return;
+            }
+
+            append(record(TYPE_REMOVE_ALL, saveKey, null, null));
+
+            removed = mMemory.removeKey(saveKey);
+        }
+
+        notifyDataChanged(saveKey, new DataChange(null, removed));
+    }
+
+    @Override
+    public void remove(final String saveKey, final Collection<CharSequence> data) {
+
+        final List<String> removed;
+
+        synchronized (mLock) {
+
+            final InMemoryPersister memory = mMemory;
+
+            if (memory.getCount(saveKey) == 0) {
+
+                return;
+            }
+
+            for (final CharSequence datum : data) {
+
+                if (!TextHelper.isEmpty(datum)) {
+
+                    append(record(TYPE_REMOVE, saveKey, datum.toString(), null));
+                }
+            }
+
+            removed = memory.removeEntries(saveKey, data);
+        }
+
+        if (!removed.isEmpty()) {
+
+            notifyDataChanged(saveKey, new DataChange(null, removed));
+        }
+    }
+
+    @Override
+    public void save(final String saveKey, final CharSequence data) {
+
+        if (TextHelper.isEmpty(data)) {
+
+            return;
+        }
+
+        final String string = data.toString();
+        final long now = System.currentTimeMillis();
+
+        final DataChange change;
+
+        synchronized (mLock) {
+
+            append(record(TYPE_SAVE, saveKey, string, new EntryStats(now)));
+
+            change = mMemory.save(saveKey, string, now);
+        }
+
+        if (change != null) {
+
+            notifyDataChanged(saveKey, change);
+        }
+    }
+
+    @Override
+    public void setCapacity(final int maxEntries, final EvictionPolicy policy) {
+
+        synchronized (mLock) {
+
+            mCapacity = maxEntries;
+            mPolicy = policy;
+        }
+
+        mMemory.setCapacity(maxEntries, policy);
+    }
+
+    /**
+     * Sets the ratio of obsolete records in the journal triggering a compaction.
+     *
+     * @param threshold The ratio between 0 and 1.
+     */
+    public void setCompactionThreshold(final float threshold) {
+
+        synchronized (mLock) {
+
+            mCompactionThreshold = threshold;
+        }
+    }
+
+    @Override
+    public void setContext(final PersisterContext context) {
+
+        synchronized (mLock) {
+
+            if (mChannel != null) {
+
+                return;
+            }
+
+            if (mFile == null) {
+
+                mFile = new File(context.getFilesDir(), FILE_NAME);
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            new File(mFile.getPath() + TEMP_SUFFIX).delete();
+
+            try {
+
+                open(mFile);
+
+                replay();
+
+            } catch (final IOException e) {
+
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Override
+    public void setRanking(final Ranking ranking, final int maxResults) {
+
+        super.setRanking(ranking, maxResults);
+
+        mMemory.setRanking(ranking, maxResults);
+    }
+
+    /**
+     * Appends the specified record to the journal. MUST be called while holding the lock.
+     */
+    private void append(final byte[] record) {
+
+        if (mChannel == null) {
+
+            return;
+        }
+
+        try {
+
+            // Always leave room for the zero length marking the end of the journal
+
+            final int end = mPosition + record.length;
+
+            if (end + 4 > mBuffer.capacity()) {
+
+                map(Math.max(mBuffer.capacity() * 2, end + 4));
+            }
+
+            mBuffer.position(mPosition);
+            mBuffer.put(record);
+
+            mPosition = end;
+
+        } catch (final IOException e) {
+
+            throw new IllegalStateException(e);
+        }
+
+        ++mRecordCount;
+
+        if (mCompacting) {
+
+            mCompactionTail.add(record);
+
+        } else {
+
+            checkCompaction();
+        }
+    }
+
+    /**
+     * Schedules a background compaction if the ratio of dead records exceeds the threshold.<br/>
+     * Must be called while holding the lock.
+     */
+    private void checkCompaction() {
+
+        if (!mCompactionScheduled && (mRecordCount >= MIN_COMPACTION_RECORDS)) {
+
+            final int live = mMemory.getTotalCount();
+
+            if ((mRecordCount - live) > (mRecordCount * mCompactionThreshold)) {
+
+                mCompactionScheduled = true;
+
+                getCompactionExecutor().execute(mCompactionRunnable);
+            }
+        }
+    }
+
+    private void apply(final ByteBuffer payload) throws UnsupportedEncodingException {
+
+        final InMemoryPersister memory = mMemory;
+
+        final byte type = payload.get();
+        final String saveKey = readString(payload);
+        final String entry = readString(payload);
+
+        switch (type) {
+
+            case TYPE_CLEAR:
+
+                memory.clearEntries();
+
+                break;
+
+            case TYPE_REMOVE:
+
+                memory.removeEntries(saveKey, Collections.<CharSequence>singletonList(entry));
+
+                break;
+
+            case TYPE_REMOVE_ALL:
+
+                memory.removeKey(saveKey);
+
+                break;
+
+            case TYPE_SAVE:
+
+                memory.save(saveKey, entry, payload.getLong());
+
+                break;
+
+            case TYPE_STATS:
+
+                memory.restore(saveKey, entry, new EntryStats(payload.getLong(),
+                                                              payload.getLong(),
+                                                              payload.getInt()));
+
+                break;
+
+            default:
+
+                throw new IllegalArgumentException("unknown record type: " + type);
+        }
+    }
+
+    private void map(final int size) throws IOException {
+
+        mBuffer = mChannel.map(MapMode.READ_WRITE, 0, size);
+    }
+
+    private void open(final File file) throws IOException {
+
+        mChannel = new RandomAccessFile(file, "rw").getChannel();
+
+        map((int) Math.max(mChannel.size() + 4, MIN_MAPPED_SIZE));
+    }
+
+    /**
+     * Replays the whole journal, stopping at the first incomplete or corrupted record.
+     */
+    private void replay() {
+
+        final InMemoryPersister memory = mMemory;
+        final MappedByteBuffer buffer = mBuffer;
+        final int limit = buffer.capacity();
+
+        // Trackers are rebuilt from the statistics at the end
+
+        memory.setCapacity(0, null);
+
+        final CRC32 crc = new CRC32();
+
+        int position = 0;
+        int records = 0;
+        boolean corrupted = false;
+
+        while (position + HEADER_SIZE <= limit) {
+
+            final int length = buffer.getInt(position);
+
+            if (length == 0) {
+
+                break;
+            }
+
+            if ((length < 0) || (length > limit - position - HEADER_SIZE)) {
+
+                corrupted = true;
+
+                break;
+            }
+
+            final byte[] payload = new byte[length];
+
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(payload);
+
+            crc.reset();
+            crc.update(payload);
+
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+
+                corrupted = true;
+
+                break;
+            }
+
+            try {
+
+                apply(ByteBuffer.wrap(payload));
+
+            } catch (final BufferUnderflowException e) {
+
+                corrupted = true;
+
+            } catch (final IllegalArgumentException e) {
+
+                corrupted = true;
+
+            } catch (final UnsupportedEncodingException e) {
+
+                corrupted = true;
+            }
+
+            if (corrupted) {
+
+                break;
+            }
+
+            position += HEADER_SIZE + length;
+            ++records;
+        }
+
+        if (corrupted) {
+
+            // Discard the partially written records, so that they are not mistaken for valid ones
+
+            for (int i = position; i < limit; ++i) {
+
+                buffer.put(i, (byte) 0);
+            }
+        }
+
+        mPosition = position;
+        mRecordCount = records;
+
+        if (mCapacity > 0) {
+
+            memory.setCapacity(mCapacity, mPolicy);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Eviction policy discarding the least frequently used entries first. Among the entries used the
+ * same number of times, the one which reached such count first is discarded first.
+ */
+public class LfuEvictionPolicy implements EvictionPolicy {
+
+    private static final Comparator<Entry<String, EntryStats>> USE_COMPARATOR =
+            new Comparator<Entry<String, EntryStats>>() {
+
+                @Override
+                public int compare(final Entry<String, EntryStats> lhs,
+                        final Entry<String, EntryStats> rhs) {
+
+                    final EntryStats lhsStats = lhs.getValue();
+                    final EntryStats rhsStats = rhs.getValue();
+
+                    if (lhsStats.useCount != rhsStats.useCount) {
+
+                        return (lhsStats.useCount < rhsStats.useCount) ? -1 : 1;
+                    }
+
+                    return (lhsStats.lastUsed < rhsStats.lastUsed) ? -1
+                            : ((lhsStats.lastUsed == rhsStats.lastUsed) ? 0 : 1);
+                }
+            };
+
+    @Override
+    public Tracker newTracker(final Map<String, EntryStats> entries) {
+
+        final ArrayList<Entry<String, EntryStats>> sorted =
+                new ArrayList<Entry<String, EntryStats>>(entries.entrySet());
+
+        Collections.sort(sorted, USE_COMPARATOR);
+
+        final LfuTracker tracker = new LfuTracker();
+
+        for (final Entry<String, EntryStats> entry : sorted) {
+
+            tracker.onAdded(entry.getKey(), entry.getValue());
+        }
+
+        return tracker;
+    }
+
+    /**
+     * Tracker keeping a sorted linked list of buckets, each one containing the entries with the
+     * same use count.
+     */
+    private static class LfuTracker implements Tracker {
+
+        private final HashMap<String, Bucket> mBuckets = new HashMap<String, Bucket>();
+
+        private Bucket mHead;
+
+        private Bucket mTail;
+
+        @Override
+        public String evict() {
+
+            final Bucket head = mHead;
+
+            if (head == null) {
+
+                return null;
+            }
+
+            final Iterator<String> iterator = head.entries.iterator();
+
+            final String entry = iterator.next();
+
+            iterator.remove();
+
+            mBuckets.remove(entry);
+
+            if (head.entries.isEmpty()) {
+
+                unlink(head);
+            }
+
+            return entry;
+        }
+
+        @Override
+        public void onAdded(final String entry, final EntryStats stats) {
+
+            onRemoved(entry);
+
+            place(entry, stats.useCount, null);
+        }
+
+        @Override
+        public void onRemoved(final String entry) {
+
+            final Bucket bucket = mBuckets.remove(entry);
+
+            if ((bucket != null) && bucket.entries.remove(entry) && bucket.entries.isEmpty()) {
+
+                unlink(bucket);
+            }
+        }
+
+        @Override
+        public void onUsed(final String entry, final EntryStats stats) {
+
+            final Bucket bucket = mBuckets.get(entry);
+
+            if (bucket == null) {
+
+                place(entry, stats.useCount, null);
+
+                return;
+            }
+
+            bucket.entries.remove(entry);
+
+            // The use count can only grow, so start looking for the new bucket from the old one
+
+            place(entry, stats.useCount, (bucket.count <= stats.useCount) ? bucket : null);
+
+            if (bucket.entries.isEmpty()) {
+
+                unlink(bucket);
+            }
+        }
+
+        /**
+         * Adds the specified entry to the bucket with the specified count.
+         *
+         * @param entry The entry.
+         * @param count The use count.
+         * @param hint  A bucket with a count not greater than the specified one, or null.
+         */
+        private void place(final String entry, final int count, final Bucket hint) {
+
+            Bucket previous;
+
+            if (hint != null) {
+
+                previous = hint;
+
+            } else if ((mTail != null) && (mTail.count <= count)) {
+
+                previous = mTail;
+
+            } else {
+
+                previous = null;
+            }
+
+            Bucket next = (previous != null) ? previous.next : mHead;
+
+            while ((next != null) && (next.count <= count)) {
+
+                previous = next;
+                next = next.next;
+            }
+
+            final Bucket bucket;
+
+            if ((previous != null) && (previous.count == count)) {
+
+                bucket = previous;
+
+            } else {
+
+                bucket = new Bucket(count);
+                bucket.previous = previous;
+                bucket.next = next;
+
+                if (previous != null) {
+
+                    previous.next = bucket;
+
+                } else {
+
+                    mHead = bucket;
+                }
+
+                if (next != null) {
+
+                    next.previous = bucket;
+
+                } else {
+
+                    mTail = bucket;
+                }
+            }
+
+            bucket.entries.add(entry);
+
+            mBuckets.put(entry, bucket);
+        }
+
+        private void unlink(final Bucket bucket) {
+
+            if (bucket.previous != null) {
+
+                bucket.previous.next = bucket.next;
+
+            } else {
+
+                mHead = bucket.next;
+            }
+
+            if (bucket.next != null) {
+
+                bucket.next.previous = bucket.previous;
+
+            } else {
+
+                mTail = bucket.previous;
+            }
+        }
+    }
+
+    private static class Bucket {
+
+        public final int count;
+
+        public final LinkedHashSet<String> entries = new LinkedHashSet<String>();
+
+        public Bucket next;
+
+        public Bucket previous;
+
+        public Bucket(final int count) {
+
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import it.subito.frost.store.EvictionPolicy.Tracker;
+
+/**
+ * Tracker keeping the entries in a linked list, evicting them starting from the head.
+ */
+class LinkedTracker implements Tracker {
+
+    private final LinkedHashSet<String> mEntries = new LinkedHashSet<String>();
+
+    private final boolean mMoveOnUse;
+
+    /**
+     * Creates a new tracker initially containing the specified entries, sorted with the specified
+     * comparator.
+     *
+     * @param entries    The entries and their statistics.
+     * @param comparator The comparator defining the initial eviction order.
+     * @param moveOnUse  Whether an entry must be moved to the tail each time it is used.
+     */
+    public LinkedTracker(final Map<String, EntryStats> entries,
+            final Comparator<EntryStats> comparator, final boolean moveOnUse) {
+
+        mMoveOnUse = moveOnUse;
+
+        final ArrayList<Entry<String, EntryStats>> sorted =
+                new ArrayList<Entry<String, EntryStats>>(entries.entrySet());
+
+        Collections.sort(sorted, new Comparator<Entry<String, EntryStats>>() {
+
+            @Override
+            public int compare(final Entry<String, EntryStats> lhs,
+                    final Entry<String, EntryStats> rhs) {
+
+                return comparator.compare(lhs.getValue(), rhs.getValue());
+            }
+        });
+
+        for (final Entry<String, EntryStats> entry : sorted) {
+
+            mEntries.add(entry.getKey());
+        }
+    }
+
+    @Override
+    public String evict() {
+
+        final Iterator<String> iterator = mEntries.iterator();
+
+        if (!iterator.hasNext()) {
+
+            return null;
+        }
+
+        final String entry = iterator.next();
+
+        iterator.remove();
+
+        return entry;
+    }
+
+    @Override
+    public void onAdded(final String entry, final EntryStats stats) {
+
+        mEntries.add(entry);
+    }
+
+    @Override
+    public void onRemoved(final String entry) {
+
+        mEntries.remove(entry);
+    }
+
+    @Override
+    public void onUsed(final String entry, final EntryStats stats) {
+
+        if (mMoveOnUse && mEntries.remove(entry)) {
+
+            mEntries.add(entry);
+        }
+    }
+}
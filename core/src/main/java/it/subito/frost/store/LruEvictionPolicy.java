@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Eviction policy discarding the least recently used entries first.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private static final Comparator<EntryStats> LAST_USED_COMPARATOR =
+            new Comparator<EntryStats>() {
+
+                @Override
+                public int compare(final EntryStats lhs, final EntryStats rhs) {
+
+                    return (lhs.lastUsed < rhs.lastUsed) ? -1
+                            : ((lhs.lastUsed == rhs.lastUsed) ? 0 : 1);
+                }
+            };
+
+    @Override
+    public Tracker newTracker(final Map<String, EntryStats> entries) {
+
+        return new LinkedTracker(entries, LAST_USED_COMPARATOR, true);
+    }
+}
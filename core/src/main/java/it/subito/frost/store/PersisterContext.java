@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.io.File;
+
+/**
+ * Interface defining the platform resources available to a persister, so that the storage engine
+ * does not depend on any specific runtime.
+ */
+public interface PersisterContext {
+
+    /**
+     * Returns the directory where the persister files can be stored.
+     *
+     * @return The directory.
+     */
+    public File getFilesDir();
+}
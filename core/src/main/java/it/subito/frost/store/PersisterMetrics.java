@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+/**
+ * Interface defining a listener collecting the metrics of the operations performed by a
+ * {@link BasePersister}, for example in order to export them to a telemetry service.
+ * <p/>
+ * Note that the methods might be called from any thread the persister is accessed from, so they
+ * must be fast and thread safe.
+ *
+ * @see InstrumentedPersister
+ */
+public interface PersisterMetrics {
+
+    public static final int OPERATION_CLEAR = 0;
+
+    public static final int OPERATION_COMMIT = 1;
+
+    public static final int OPERATION_LOAD = 2;
+
+    public static final int OPERATION_REMOVE = 3;
+
+    public static final int OPERATION_SAVE = 4;
+
+    public static final int OPERATION_COUNT = 5;
+
+    /**
+     * Called when a lookup in the result cache of the persister is performed.
+     *
+     * @param saveKey The save key.
+     * @param hit     Whether the result was found in the cache.
+     */
+    public void onCacheLookup(String saveKey, boolean hit);
+
+    /**
+     * Called when an operation completes.
+     *
+     * @param operation     The operation (one of the {@code OPERATION_*} constants).
+     * @param saveKey       The save key or null if the operation is not related to a single key.
+     * @param durationNanos The operation duration in nanoseconds.
+     * @param size          The number of loaded entries, of saved or removed ones, or of the
+     *                      operations committed in a batch (-1 if unknown).
+     */
+    public void onOperation(int operation, String saveKey, long durationNanos, int size);
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import it.subito.frost.store.BasePersister.DataObserver;
+import it.subito.frost.store.BasePersister.KeyedDataObserver;
+
+/**
+ * Process-wide registry of persister instances, so that the views with the same configuration
+ * share the same loaded data.
+ * <p/>
+ * The registry also dispatches the data changes of each persister to any number of observers,
+ * each one bound to a single save key. Both the persisters and the observers are weakly held, so
+ * a persister lives as long as someone uses it and observers need not be explicitly removed.
+ */
+public final class PersisterRegistry {
+
+    private static final WeakHashMap<BasePersister, Observers> sObservers =
+            new WeakHashMap<BasePersister, Observers>();
+
+    private static final HashMap<String, WeakReference<BasePersister>> sPersisters =
+            new HashMap<String, WeakReference<BasePersister>>();
+
+    private PersisterRegistry() {
+
+    }
+
+    /**
+     * Adds an observer of the changes of the data saved with the specified key.
+     * <br/>
+     * Note that the registry replaces any observer previously set in the persister.
+     *
+     * @param persister The persister.
+     * @param saveKey   The save key or null to observe all the keys.
+     * @param observer  The observer instance.
+     */
+    public static void addObserver(final BasePersister persister, final String saveKey,
+            final DataObserver observer) {
+
+        final Observers observers;
+
+        synchronized (sObservers) {
+
+            final Observers existing = sObservers.get(persister);
+
+            if (existing != null) {
+
+                observers = existing;
+
+            } else {
+
+                observers = new Observers();
+                sObservers.put(persister, observers);
+
+                persister.setObserver(observers);
+            }
+        }
+
+        observers.add(saveKey, observer);
+    }
+
+    /**
+     * Returns the persister registered with the specified configuration, creating it through the
+     * passed factory if needed.
+     *
+     * @param configuration The string uniquely identifying the persister class and settings.
+     * @param factory       The factory creating and configuring a new persister instance.
+     * @return The persister instance.
+     */
+    public static BasePersister obtain(final String configuration, final Factory factory) {
+
+        synchronized (sPersisters) {
+
+            final WeakReference<BasePersister> reference = sPersisters.get(configuration);
+            final BasePersister existing = (reference != null) ? reference.get() : null;
+
+            if (existing != null) {
+
+                return existing;
+            }
+
+            final BasePersister persister = factory.create();
+
+            sPersisters.put(configuration, new WeakReference<BasePersister>(persister));
+
+            return persister;
+        }
+    }
+
+    /**
+     * Removes an observer previously added with the same persister and save key.
+     *
+     * @param persister The persister.
+     * @param saveKey   The save key or null.
+     * @param observer  The observer instance.
+     */
+    public static void removeObserver(final BasePersister persister, final String saveKey,
+            final DataObserver observer) {
+
+        final Observers observers;
+
+        synchronized (sObservers) {
+
+            observers = sObservers.get(persister);
+        }
+
+        if (observers != null) {
+
+            observers.remove(saveKey, observer);
+        }
+    }
+
+    /**
+     * Interface defining a factory of persister instances.
+     */
+    public interface Factory {
+
+        /**
+         * Creates and configures a new persister instance.
+         *
+         * @return The persister instance.
+         */
+        public BasePersister create();
+    }
+
+    /**
+     * Data observer dispatching the notifications to the observers bound to the modified key.
+     */
+    private static class Observers implements KeyedDataObserver {
+
+        private final HashMap<String, ArrayList<WeakReference<DataObserver>>> mObservers =
+                new HashMap<String, ArrayList<WeakReference<DataObserver>>>();
+
+        private static void collect(final ArrayList<WeakReference<DataObserver>> references,
+                final ArrayList<DataObserver> observers) {
+
+            final Iterator<WeakReference<DataObserver>> iterator = references.iterator();
+
+            while (iterator.hasNext()) {
+
+                final DataObserver observer = iterator.next().get();
+
+                if (observer == null) {
+
+                    iterator.remove();
+
+                } else {
+
+                    observers.add(observer);
+                }
+            }
+        }
+
+        public synchronized void add(final String saveKey, final DataObserver observer) {
+
+            ArrayList<WeakReference<DataObserver>> references = mObservers.get(saveKey);
+
+            if (references == null) {
+
+                references = new ArrayList<WeakReference<DataObserver>>();
+                mObservers.put(saveKey, references);
+
+            } else {
+
+                // Take the chance to purge the collected observers
+
+                collect(references, new ArrayList<DataObserver>());
+            }
+
+            references.add(new WeakReference<DataObserver>(observer));
+        }
+
+        @Override
+        public void onDataChanged() {
+
+            for (final DataObserver observer : getObservers(null, true)) {
+
+                observer.onDataChanged();
+            }
+        }
+
+        @Override
+        public void onDataChanged(final String saveKey, final DataChange change) {
+
+            for (final DataObserver observer : getObservers(saveKey, saveKey == null)) {
+
+                if (observer instanceof KeyedDataObserver) {
+
+                    ((KeyedDataObserver) observer).onDataChanged(saveKey, change);
+
+                } else {
+
+                    observer.onDataChanged();
+                }
+            }
+        }
+
+        public synchronized void remove(final String saveKey, final DataObserver observer) {
+
+            final ArrayList<WeakReference<DataObserver>> references = mObservers.get(saveKey);
+
+            if (references == null) {
+
+                return;
+            }
+
+            final Iterator<WeakReference<DataObserver>> iterator = references.iterator();
+
+            while (iterator.hasNext()) {
+
+                final DataObserver referent = iterator.next().get();
+
+                if ((referent == null) || (referent == observer)) {
+
+                    iterator.remove();
+                }
+            }
+
+            if (references.isEmpty()) {
+
+                mObservers.remove(saveKey);
+            }
+        }
+
+        /**
+         * Returns the observers to notify, so that they can be called without holding the lock.
+         */
+        private synchronized ArrayList<DataObserver> getObservers(final String saveKey,
+                final boolean allKeys) {
+
+            final ArrayList<DataObserver> observers = new ArrayList<DataObserver>();
+
+            if (allKeys) {
+
+                for (final Map.Entry<String, ArrayList<WeakReference<DataObserver>>> entry :
+                        mObservers.entrySet()) {
+
+                    collect(entry.getValue(), observers);
+                }
+
+                return observers;
+            }
+
+            final ArrayList<WeakReference<DataObserver>> references = mObservers.get(saveKey);
+
+            if (references != null) {
+
+                collect(references, observers);
+            }
+
+            // The observers of all the keys
+
+            final ArrayList<WeakReference<DataObserver>> any = mObservers.get(null);
+
+            if (any != null) {
+
+                collect(any, observers);
+            }
+
+            return observers;
+        }
+    }
+}
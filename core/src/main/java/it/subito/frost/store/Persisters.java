@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Collections;
+import java.util.List;
+
+import it.subito.frost.store.BasePersister.Batch;
+
+/**
+ * Utility methods invoking the optional {@link ExtendedPersister} capabilities on any
+ * {@link BasePersister}, falling back to a plain implementation, or to doing nothing, when the
+ * persister does not support them.
+ */
+public final class Persisters {
+
+    private Persisters() {
+
+    }
+
+    /**
+     * Creates a new batch of modifications to be applied to the specified persister.
+     *
+     * @param persister The persister instance.
+     * @return The batch instance, which is a {@link SimpleBatch} if batches are not supported.
+     * @see ExtendedPersister#edit()
+     */
+    public static Batch edit(final BasePersister persister) {
+
+        if (persister instanceof ExtendedPersister) {
+
+            return ((ExtendedPersister) persister).edit();
+        }
+
+        return new SimpleBatch(persister);
+    }
+
+    /**
+     * Loads at most the specified number of entries from the specified persister.
+     * <br/>
+     * When limited loads are not supported, all the entries are loaded and then truncated.
+     *
+     * @param persister  The persister instance.
+     * @param saveKey    The save key.
+     * @param constraint The starting sequence.
+     * @param limit      The maximum number of entries to load (0 or less means no limit).
+     * @return The list of entries.
+     * @see ExtendedPersister#load(String, CharSequence, int)
+     */
+    public static List<CharSequence> load(final BasePersister persister, final String saveKey,
+            final CharSequence constraint, final int limit) {
+
+        if (persister instanceof ExtendedPersister) {
+
+            return ((ExtendedPersister) persister).load(saveKey, constraint, limit);
+        }
+
+        final List<CharSequence> entries = persister.load(saveKey, constraint);
+
+        if ((limit > 0) && (limit < entries.size())) {
+
+            return Collections.unmodifiableList(entries.subList(0, limit));
+        }
+
+        return entries;
+    }
+
+    /**
+     * Limits the number of entries associated with each key, if supported by the specified
+     * persister.
+     *
+     * @param persister  The persister instance.
+     * @param maxEntries The maximum number of entries per key (0 or less means no limit).
+     * @param policy     The eviction policy (ignored when there is no limit).
+     * @see ExtendedPersister#setCapacity(int, EvictionPolicy)
+     */
+    public static void setCapacity(final BasePersister persister, final int maxEntries,
+            final EvictionPolicy policy) {
+
+        if (persister instanceof ExtendedPersister) {
+
+            ((ExtendedPersister) persister).setCapacity(maxEntries, policy);
+        }
+    }
+
+    /**
+     * Sets the context of the specified persister, if supported.
+     *
+     * @param persister The persister instance.
+     * @param context   The persister context.
+     * @return Whether the context has been set.
+     * @see ExtendedPersister#setContext(PersisterContext)
+     */
+    public static boolean setContext(final BasePersister persister,
+            final PersisterContext context) {
+
+        if (persister instanceof ExtendedPersister) {
+
+            ((ExtendedPersister) persister).setContext(context);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the ranking used to sort the entries loaded from the specified persister, if
+     * supported.
+     *
+     * @param persister  The persister instance.
+     * @param ranking    The ranking or null to load the entries in natural order.
+     * @param maxResults The maximum number of entries to load (0 or less means no limit).
+     * @see ExtendedPersister#setRanking(Ranking, int)
+     */
+    public static void setRanking(final BasePersister persister, final Ranking ranking,
+            final int maxResults) {
+
+        if (persister instanceof ExtendedPersister) {
+
+            ((ExtendedPersister) persister).setRanking(ranking, maxResults);
+        }
+    }
+}
@@ -0,0 +1,470 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Collection;
+
+/**
+ * Compact radix tree mapping a set of strings to their values.
+ * <p/>
+ * Each edge is labeled with the sequence of characters shared by all the strings in the subtree,
+ * so that common prefixes are stored only once. Children are kept sorted by their first
+ * character, hence the strings are always visited in natural order.
+ *
+ * @param <V> The value type.
+ */
+class RadixTree<V> {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node mRoot = new Node(new char[0]);
+
+    private int mSize;
+
+    private static int commonLength(final char[] label, final CharSequence string,
+            final int offset) {
+
+        final int length = Math.min(label.length, string.length() - offset);
+
+        for (int i = 0; i < length; ++i) {
+
+            if (label[i] != string.charAt(offset + i)) {
+
+                return i;
+            }
+        }
+
+        return length;
+    }
+
+    private static char[] chars(final String string, final int start, final int end) {
+
+        final char[] chars = new char[end - start];
+
+        string.getChars(start, end, chars, 0);
+
+        return chars;
+    }
+
+    private static char[] slice(final char[] label, final int start, final int end) {
+
+        final char[] chars = new char[end - start];
+
+        System.arraycopy(label, start, chars, 0, chars.length);
+
+        return chars;
+    }
+
+    /**
+     * Adds the specified string to the tree, if not already present.
+     *
+     * @param string The string to add.
+     * @param value  The value associated with the string (MUST not be null).
+     * @return The value already associated with the string, or null if the string was added.
+     */
+    @SuppressWarnings("unchecked")
+    public V add(final String string, final V value) {
+
+        final int length = string.length();
+
+        Node node = mRoot;
+        int offset = 0;
+
+        while (offset < length) {
+
+            final int index = node.indexOf(string.charAt(offset));
+
+            if (index < 0) {
+
+                final Node leaf = new Node(chars(string, offset, length));
+                leaf.value = value;
+
+                node.insert(-index - 1, leaf);
+
+                ++mSize;
+
+                return null;
+            }
+
+            final Node child = node.children[index];
+            final int common = commonLength(child.label, string, offset);
+
+            if (common < child.label.length) {
+
+                final Node middle = new Node(slice(child.label, 0, common));
+
+                child.label = slice(child.label, common, child.label.length);
+                middle.children = new Node[]{child};
+
+                node.children[index] = middle;
+            }
+
+            node = node.children[index];
+            offset += common;
+        }
+
+        if (node.value != null) {
+
+            return (V) node.value;
+        }
+
+        node.value = value;
+
+        ++mSize;
+
+        return null;
+    }
+
+    /**
+     * Removes all the strings from the tree.
+     */
+    public void clear() {
+
+        mRoot.children = NO_CHILDREN;
+        mRoot.value = null;
+
+        mSize = 0;
+    }
+
+    /**
+     * Returns the value associated with the specified string.
+     *
+     * @param string The string to look for.
+     * @return The value or null if the string is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final String string) {
+
+        final Node node = find(string);
+
+        return (node != null) ? (V) node.value : null;
+    }
+
+    /**
+     * Collects the strings starting with the specified prefix, in natural order, together with
+     * their values.
+     *
+     * @param prefix The prefix.
+     * @param out    The collection to fill with the strings.
+     * @param values The collection to fill with the values, in the same order, or null.
+     * @param limit  The maximum number of strings to collect (0 or less means no limit).
+     */
+    public void collect(final CharSequence prefix, final Collection<? super String> out,
+            final Collection<? super V> values, final int limit) {
+
+        visit(prefix, new Visitor<V>() {
+
+            @Override
+            public void visit(final CharSequence string, final V value) {
+
+                out.add(string.toString());
+
+                if (values != null) {
+
+                    values.add(value);
+                }
+            }
+        }, limit);
+    }
+
+    /**
+     * Visits the strings starting with the specified prefix, in natural order, together with
+     * their values.
+     * <br/>
+     * No string is created, unless the visitor itself copies the visited sequences.
+     *
+     * @param prefix  The prefix.
+     * @param visitor The visitor.
+     * @param limit   The maximum number of strings to visit (0 or less means no limit).
+     */
+    public void visit(final CharSequence prefix, final Visitor<? super V> visitor,
+            final int limit) {
+
+        final int length = prefix.length();
+        final StringBuilder path = new StringBuilder(Math.max(16, length));
+
+        Node node = mRoot;
+        int offset = 0;
+
+        while (offset < length) {
+
+            final int index = node.indexOf(prefix.charAt(offset));
+
+            if (index < 0) {
+
+                return;
+            }
+
+            final Node child = node.children[index];
+            final int common = commonLength(child.label, prefix, offset);
+
+            if ((common < child.label.length) && (offset + common < length)) {
+
+                return;
+            }
+
+            path.append(child.label);
+
+            node = child;
+            offset += child.label.length;
+        }
+
+        visit(node, path, visitor, (limit > 0) ? limit : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes the specified string from the tree.
+     *
+     * @param string The string to remove.
+     * @return The value associated with the removed string, or null if the string was not
+     * present.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final String string) {
+
+        final Object value = remove(mRoot, string, 0);
+
+        if (value != null) {
+
+            --mSize;
+        }
+
+        return (V) value;
+    }
+
+    /**
+     * Returns the number of strings stored in the tree.
+     *
+     * @return The string count.
+     */
+    public int size() {
+
+        return mSize;
+    }
+
+    /**
+     * Visits the strings in the subtree rooted in the specified node.
+     *
+     * @return The number of strings which can still be visited.
+     */
+    @SuppressWarnings("unchecked")
+    private int visit(final Node node, final StringBuilder path,
+            final Visitor<? super V> visitor, final int remaining) {
+
+        int left = remaining;
+
+        if (node.value != null) {
+
+            visitor.visit(path, (V) node.value);
+
+            --left;
+        }
+
+        final int length = path.length();
+
+        for (final Node child : node.children) {
+
+            if (left <= 0) {
+
+                break;
+            }
+
+            path.append(child.label);
+
+            left = visit(child, path, visitor, left);
+
+            path.setLength(length);
+        }
+
+        return left;
+    }
+
+    private Node find(final String string) {
+
+        final int length = string.length();
+
+        Node node = mRoot;
+        int offset = 0;
+
+        while (offset < length) {
+
+            final int index = node.indexOf(string.charAt(offset));
+
+            if (index < 0) {
+
+                return null;
+            }
+
+            final Node child = node.children[index];
+
+            if (commonLength(child.label, string, offset) < child.label.length) {
+
+                return null;
+            }
+
+            node = child;
+            offset += child.label.length;
+        }
+
+        return node;
+    }
+
+    private Object remove(final Node node, final String string, final int offset) {
+
+        if (offset == string.length()) {
+
+            final Object value = node.value;
+
+            node.value = null;
+
+            return value;
+        }
+
+        final int index = node.indexOf(string.charAt(offset));
+
+        if (index < 0) {
+
+            return null;
+        }
+
+        final Node child = node.children[index];
+
+        if (commonLength(child.label, string, offset) < child.label.length) {
+
+            return null;
+        }
+
+        final Object value = remove(child, string, offset + child.label.length);
+
+        if (value == null) {
+
+            return null;
+        }
+
+        if (child.value == null) {
+
+            if (child.children.length == 0) {
+
+                node.delete(index);
+
+            } else if (child.children.length == 1) {
+
+                final Node grandChild = child.children[0];
+                final char[] label = new char[child.label.length + grandChild.label.length];
+
+                System.arraycopy(child.label, 0, label, 0, child.label.length);
+                System.arraycopy(grandChild.label, 0, label, child.label.length,
+                                 grandChild.label.length);
+
+                grandChild.label = label;
+                node.children[index] = grandChild;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Interface defining a visitor of the strings stored in the tree.
+     *
+     * @param <V> The value type.
+     */
+    interface Visitor<V> {
+
+        /**
+         * Visits the specified string.
+         *
+         * @param string The string, only valid during the call since its characters are reused.
+         * @param value  The associated value.
+         */
+        void visit(CharSequence string, V value);
+    }
+
+    private static class Node {
+
+        public Node[] children = NO_CHILDREN;
+
+        public char[] label;
+
+        public Object value;
+
+        public Node(final char[] label) {
+
+            this.label = label;
+        }
+
+        public void delete(final int index) {
+
+            final Node[] children = this.children;
+
+            if (children.length == 1) {
+
+                this.children = NO_CHILDREN;
+
+                return;
+            }
+
+            final Node[] newChildren = new Node[children.length - 1];
+
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+
+            this.children = newChildren;
+        }
+
+        public int indexOf(final char c) {
+
+            final Node[] children = this.children;
+
+            int low = 0;
+            int high = children.length - 1;
+
+            while (low <= high) {
+
+                final int middle = (low + high) >>> 1;
+                final char first = children[middle].label[0];
+
+                if (first < c) {
+
+                    low = middle + 1;
+
+                } else if (first > c) {
+
+                    high = middle - 1;
+
+                } else {
+
+                    return middle;
+                }
+            }
+
+            return -(low + 1);
+        }
+
+        public void insert(final int index, final Node child) {
+
+            final Node[] children = this.children;
+            final Node[] newChildren = new Node[children.length + 1];
+
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+
+            newChildren[index] = child;
+
+            this.children = newChildren;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+/**
+ * Interface defining a strategy to rank the saved entries based on their usage statistics.
+ * <p/>
+ * Entries with higher scores are suggested first.
+ */
+public interface Ranking {
+
+    /**
+     * Computes the score of an entry.
+     *
+     * @param stats The entry usage statistics.
+     * @param now   The current time in milliseconds.
+     * @return The entry score.
+     */
+    public double score(EntryStats stats, long now);
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Bounded LRU cache of the sorted lists of entries loaded for a specific pair of save key and
+ * constraint.
+ * <p/>
+ * The cached lists must never be modified once put into the cache.
+ */
+class ResultCache {
+
+    public static final int DEFAULT_SIZE = 16;
+
+    private final LinkedHashMap<Key, List<String>> mEntries =
+            new LinkedHashMap<Key, List<String>>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(final Entry<Key, List<String>> eldest) {
+
+                    return (size() > mMaxSize);
+                }
+            };
+
+    private int mGeneration;
+
+    private long mHitCount;
+
+    private int mMaxSize = DEFAULT_SIZE;
+
+    private long mMissCount;
+
+    /**
+     * Removes all the cached lists.
+     */
+    public synchronized void clear() {
+
+        ++mGeneration;
+
+        mEntries.clear();
+    }
+
+    /**
+     * Returns the cached list associated with the specified save key and constraint, updating the
+     * hit and miss counters.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The constraint.
+     * @return The cached list or null.
+     */
+    public synchronized List<String> get(final String saveKey, final String constraint) {
+
+        final List<String> list = mEntries.get(new Key(saveKey, constraint));
+
+        if (list != null) {
+
+            ++mHitCount;
+
+        } else {
+
+            ++mMissCount;
+        }
+
+        return list;
+    }
+
+    /**
+     * Returns the cached list associated with the specified save key and with the longest
+     * constraint which is a proper prefix of the specified one.
+     * <p/>
+     * Such list is a superset of the entries matching the specified constraint.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The constraint.
+     * @return The cached list or null.
+     */
+    public synchronized List<String> getClosest(final String saveKey, final String constraint) {
+
+        Key closest = null;
+
+        for (final Key key : mEntries.keySet()) {
+
+            if (key.saveKey.equals(saveKey) && (key.constraint.length() < constraint.length())
+                    && constraint.startsWith(key.constraint) && ((closest == null) || (
+                    key.constraint.length() > closest.constraint.length()))) {
+
+                closest = key;
+            }
+        }
+
+        return (closest != null) ? mEntries.get(closest) : null;
+    }
+
+    /**
+     * Returns the current generation of the cached data, which changes each time the cache is
+     * invalidated.
+     *
+     * @return The generation.
+     */
+    public synchronized int getGeneration() {
+
+        return mGeneration;
+    }
+
+    /**
+     * Returns the number of successful cache lookups.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHitCount() {
+
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of failed cache lookups.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMissCount() {
+
+        return mMissCount;
+    }
+
+    /**
+     * Removes all the cached lists associated with the specified save key.
+     *
+     * @param saveKey The save key.
+     */
+    public synchronized void invalidate(final String saveKey) {
+
+        ++mGeneration;
+
+        final Iterator<Key> iterator = mEntries.keySet().iterator();
+
+        while (iterator.hasNext()) {
+
+            if (iterator.next().saveKey.equals(saveKey)) {
+
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Caches the specified list, unless the cache has been invalidated after the specified
+     * generation.
+     *
+     * @param saveKey    The save key.
+     * @param constraint The constraint.
+     * @param list       The sorted list of entries.
+     * @param generation The generation of the data the list was built from.
+     */
+    public synchronized void put(final String saveKey, final String constraint,
+            final List<String> list, final int generation) {
+
+        if ((generation == mGeneration) && (mMaxSize > 0)) {
+
+            mEntries.put(new Key(saveKey, constraint), list);
+        }
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+    public synchronized void resetCounters() {
+
+        mHitCount = 0;
+        mMissCount = 0;
+    }
+
+    /**
+     * Sets the maximum number of cached lists.
+     *
+     * @param maxSize The maximum size (0 to disable caching).
+     */
+    public synchronized void setMaxSize(final int maxSize) {
+
+        if (maxSize < 0) {
+
+            throw new IllegalArgumentException("the cache size cannot be negative");
+        }
+
+        mMaxSize = maxSize;
+
+        final Iterator<Key> iterator = mEntries.keySet().iterator();
+
+        while ((mEntries.size() > maxSize) && iterator.hasNext()) {
+
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static class Key {
+
+        public final String constraint;
+
+        public final String saveKey;
+
+        public Key(final String saveKey, final String constraint) {
+
+            this.saveKey = saveKey;
+            this.constraint = constraint;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+
+            if (this == o) {
+
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+
+                return false;
+            }
+
+            final Key key = (Key) o;
+
+            return constraint.equals(key.constraint) && saveKey.equals(key.saveKey);
+        }
+
+        @Override
+        public int hashCode() {
+
+            return 31 * saveKey.hashCode() + constraint.hashCode();
+        }
+    }
+}
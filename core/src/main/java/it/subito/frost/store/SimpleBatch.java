@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import it.subito.frost.store.BasePersister.Batch;
+
+/**
+ * Class implementing a {@link Batch} which records the requested modifications and then replays
+ * them, one by one, on the target persister.
+ */
+public class SimpleBatch implements Batch {
+
+    private final ArrayList<Operation> mOperations = new ArrayList<Operation>();
+
+    private final BasePersister mPersister;
+
+    /**
+     * Creates a new batch of modifications to be applied to the specified persister.
+     *
+     * @param persister The persister instance.
+     */
+    public SimpleBatch(final BasePersister persister) {
+
+        mPersister = persister;
+    }
+
+    @Override
+    public Batch clear() {
+
+        mOperations.add(new Operation(Operation.CLEAR, null, null));
+
+        return this;
+    }
+
+    @Override
+    public void commit() {
+
+        final BasePersister persister = mPersister;
+
+        for (final Operation operation : mOperations) {
+
+            switch (operation.type) {
+
+                case Operation.CLEAR:
+
+                    persister.clear();
+
+                    break;
+
+                case Operation.REMOVE_ALL:
+
+                    persister.remove(operation.saveKey);
+
+                    break;
+
+                case Operation.REMOVE:
+
+                    persister.remove(operation.saveKey, operation.data);
+
+                    break;
+
+                case Operation.SAVE:
+
+                    persister.save(operation.saveKey, operation.data.get(0));
+
+                    break;
+            }
+        }
+
+        mOperations.clear();
+    }
+
+    @Override
+    public Batch remove(final String saveKey) {
+
+        mOperations.add(new Operation(Operation.REMOVE_ALL, saveKey, null));
+
+        return this;
+    }
+
+    @Override
+    public Batch remove(final String saveKey, final CharSequence... data) {
+
+        if ((data != null) && (data.length > 0)) {
+
+            remove(saveKey, Arrays.asList(data));
+        }
+
+        return this;
+    }
+
+    @Override
+    public Batch remove(final String saveKey, final Collection<CharSequence> data) {
+
+        mOperations.add(
+                new Operation(Operation.REMOVE, saveKey, new ArrayList<CharSequence>(data)));
+
+        return this;
+    }
+
+    @Override
+    public Batch save(final String saveKey, final CharSequence data) {
+
+        final CharSequence text = (data != null) ? data.toString() : null;
+
+        mOperations.add(
+                new Operation(Operation.SAVE, saveKey, Collections.singletonList(text)));
+
+        return this;
+    }
+
+    /**
+     * Returns the modifications recorded so far, in the same order they have been requested.
+     *
+     * @return The list of operations.
+     */
+    protected List<Operation> getOperations() {
+
+        return mOperations;
+    }
+
+    /**
+     * Class describing a single recorded modification.
+     */
+    public static class Operation {
+
+        public static final int CLEAR = 0;
+
+        public static final int REMOVE = 2;
+
+        public static final int REMOVE_ALL = 1;
+
+        public static final int SAVE = 3;
+
+        public final List<CharSequence> data;
+
+        public final String saveKey;
+
+        public final int type;
+
+        public Operation(final int type, final String saveKey, final List<CharSequence> data) {
+
+            this.type = type;
+            this.saveKey = saveKey;
+            this.data = data;
+        }
+    }
+}
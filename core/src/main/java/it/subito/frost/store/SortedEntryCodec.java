@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Collection;
+
+/**
+ * Interface defining an {@link EntryCodec} keeping the entries sorted, which is able to decode
+ * only the ones starting with a specific prefix.
+ */
+public interface SortedEntryCodec extends EntryCodec {
+
+    /**
+     * Decodes the entries starting with the specified prefix, adding them to the passed
+     * collection in natural order.
+     *
+     * @param text   The encoded text.
+     * @param prefix The prefix.
+     * @param out    The collection to fill.
+     * @param limit  The maximum number of entries to decode (0 or less means no limit).
+     * @return Whether the text was in the format supported by this codec.
+     * @throws IllegalArgumentException if the text is malformed.
+     */
+    public boolean decode(String text, String prefix, Collection<String> out, int limit);
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.List;
+
+/**
+ * Utility methods on character sequences, replacing the Android ones.
+ * <p/>
+ * The matching methods compare the characters in place, so that a constraint, like the
+ * {@code Editable} of a text view, never needs to be copied into a string.
+ */
+final class TextHelper {
+
+    private TextHelper() {
+
+    }
+
+    /**
+     * Returns whether the specified sequence is null or has zero length.
+     *
+     * @param text The character sequence.
+     * @return Whether the sequence is empty.
+     */
+    static boolean isEmpty(final CharSequence text) {
+
+        return (text == null) || (text.length() == 0);
+    }
+
+    /**
+     * Compares the specified sequences lexicographically, like {@link String#compareTo(String)}.
+     *
+     * @param lhs The first sequence.
+     * @param rhs The second sequence.
+     * @return A negative number, zero or a positive number if the first sequence is less than,
+     * equal to or greater than the second one.
+     */
+    static int compare(final CharSequence lhs, final CharSequence rhs) {
+
+        final int lhsLength = lhs.length();
+        final int rhsLength = rhs.length();
+        final int length = Math.min(lhsLength, rhsLength);
+
+        for (int i = 0; i < length; ++i) {
+
+            final char c = lhs.charAt(i);
+            final char d = rhs.charAt(i);
+
+            if (c != d) {
+
+                return c - d;
+            }
+        }
+
+        return lhsLength - rhsLength;
+    }
+
+    /**
+     * Compares the beginning of the specified text with the specified prefix.
+     *
+     * @param text   The text.
+     * @param prefix The prefix.
+     * @return Zero if the text starts with the prefix, otherwise a negative or a positive number if
+     * the text is less or greater than all the sequences starting with the prefix.
+     */
+    static int comparePrefix(final CharSequence text, final CharSequence prefix) {
+
+        final int textLength = text.length();
+        final int prefixLength = prefix.length();
+        final int length = Math.min(textLength, prefixLength);
+
+        for (int i = 0; i < length; ++i) {
+
+            final char c = text.charAt(i);
+            final char d = prefix.charAt(i);
+
+            if (c != d) {
+
+                return c - d;
+            }
+        }
+
+        return (textLength < prefixLength) ? -1 : 0;
+    }
+
+    /**
+     * Returns the index of the first entry of the specified sorted list which is not less than
+     * the specified prefix, that is the start of the range of the entries starting with it.
+     *
+     * @param sorted The list of entries, sorted in natural order.
+     * @param prefix The prefix.
+     * @return The range start.
+     */
+    static int prefixStart(final List<? extends CharSequence> sorted, final CharSequence prefix) {
+
+        int low = 0;
+        int high = sorted.size();
+
+        while (low < high) {
+
+            final int middle = (low + high) >>> 1;
+
+            if (comparePrefix(sorted.get(middle), prefix) < 0) {
+
+                low = middle + 1;
+
+            } else {
+
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the index following the last entry of the specified sorted list starting with the
+     * specified prefix.
+     *
+     * @param sorted The list of entries, sorted in natural order.
+     * @param prefix The prefix.
+     * @param start  The range start, as returned by {@link #prefixStart(List, CharSequence)}.
+     * @return The range end.
+     */
+    static int prefixEnd(final List<? extends CharSequence> sorted, final CharSequence prefix,
+            final int start) {
+
+        int low = start;
+        int high = sorted.size();
+
+        while (low < high) {
+
+            final int middle = (low + high) >>> 1;
+
+            if (comparePrefix(sorted.get(middle), prefix) <= 0) {
+
+                low = middle + 1;
+
+            } else {
+
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns whether the specified text starts with the specified prefix.
+     *
+     * @param text   The text.
+     * @param prefix The prefix.
+     * @return Whether the text starts with the prefix.
+     */
+    static boolean startsWith(final CharSequence text, final CharSequence prefix) {
+
+        final int length = prefix.length();
+
+        if (text.length() < length) {
+
+            return false;
+        }
+
+        for (int i = 0; i < length; ++i) {
+
+            if (text.charAt(i) != prefix.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
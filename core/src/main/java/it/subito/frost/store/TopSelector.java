@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Class selecting the entries with the highest scores among the offered ones.
+ * <p/>
+ * A bounded min-heap holds the best candidates found so far, so that selecting the top K out of
+ * N entries costs O(N log K) instead of sorting all of them. Ties are broken by last use time and
+ * then by natural order.
+ * <p/>
+ * The candidates evicted from the heap are reused, and an offered entry is converted into a string
+ * only when selected, so the allocations depend on K and not on N.
+ */
+class TopSelector {
+
+    private static final int CANCELLATION_CHECK_MASK = 0xff;
+
+    private static final Comparator<Candidate> WORST_FIRST = new Comparator<Candidate>() {
+
+        @Override
+        public int compare(final Candidate lhs, final Candidate rhs) {
+
+            return compareCandidates(lhs.score, lhs.lastUsed, lhs.entry, rhs);
+        }
+    };
+
+    private final int mMaxResults;
+
+    private final CancellationToken mToken;
+
+    private final long mNow;
+
+    private final PriorityQueue<Candidate> mQueue;
+
+    private final Ranking mRanking;
+
+    private int mOffered;
+
+    /**
+     * Creates a new selector.
+     *
+     * @param ranking    The ranking used to score the entries.
+     * @param maxResults The maximum number of entries to select, or 0 to select all of them.
+     * @param now        The current time in milliseconds.
+     */
+    public TopSelector(final Ranking ranking, final int maxResults, final long now) {
+
+        this(ranking, maxResults, now, CancellationToken.NONE);
+    }
+
+    /**
+     * Creates a new selector periodically checking the specified token while offered the entries.
+     *
+     * @param ranking    The ranking used to score the entries.
+     * @param maxResults The maximum number of entries to select, or 0 to select all of them.
+     * @param now        The current time in milliseconds.
+     * @param token      The cancellation token.
+     */
+    public TopSelector(final Ranking ranking, final int maxResults, final long now,
+            final CancellationToken token) {
+
+        mRanking = ranking;
+        mToken = token;
+        mMaxResults = (maxResults > 0) ? maxResults : Integer.MAX_VALUE;
+        mNow = now;
+        mQueue = new PriorityQueue<Candidate>(Math.min(mMaxResults, 16), WORST_FIRST);
+    }
+
+    /**
+     * Compares the specified entry with a candidate.
+     *
+     * @return A positive number if the entry ranks higher than the candidate.
+     */
+    private static int compareCandidates(final double score, final long lastUsed,
+            final CharSequence entry, final Candidate candidate) {
+
+        if (score != candidate.score) {
+
+            return (score > candidate.score) ? 1 : -1;
+        }
+
+        if (lastUsed != candidate.lastUsed) {
+
+            return (lastUsed > candidate.lastUsed) ? 1 : -1;
+        }
+
+        return TextHelper.compare(candidate.entry, entry);
+    }
+
+    /**
+     * Offers the specified entry to the selection.
+     *
+     * @param entry The entry, which may be a mutable sequence since it is copied when selected.
+     * @param stats The entry usage statistics, or null if unknown.
+     * @throws java.util.concurrent.CancellationException If the token has been canceled.
+     */
+    public void offer(final CharSequence entry, final EntryStats stats) {
+
+        if ((mOffered++ & CANCELLATION_CHECK_MASK) == 0) {
+
+            mToken.throwIfCanceled();
+        }
+
+        final double score = (stats != null) ? mRanking.score(stats, mNow) : 0;
+        final long lastUsed = (stats != null) ? stats.lastUsed : 0;
+
+        final PriorityQueue<Candidate> queue = mQueue;
+
+        if (queue.size() < mMaxResults) {
+
+            queue.add(new Candidate(entry.toString(), score, lastUsed));
+
+        } else if (compareCandidates(score, lastUsed, entry, queue.peek()) > 0) {
+
+            final Candidate candidate = queue.poll();
+            candidate.entry = entry.toString();
+            candidate.score = score;
+            candidate.lastUsed = lastUsed;
+
+            queue.add(candidate);
+        }
+    }
+
+    /**
+     * Returns the selected entries, from the highest ranked to the lowest.
+     *
+     * @return The read-only list of entries.
+     */
+    public List<CharSequence> toList() {
+
+        final PriorityQueue<Candidate> queue = mQueue;
+        final CharSequence[] entries = new CharSequence[queue.size()];
+
+        for (int i = entries.length - 1; i >= 0; --i) {
+
+            entries[i] = queue.poll().entry;
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    private static class Candidate {
+
+        public String entry;
+
+        public long lastUsed;
+
+        public double score;
+
+        public Candidate(final String entry, final double score, final long lastUsed) {
+
+            this.entry = entry;
+            this.score = score;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
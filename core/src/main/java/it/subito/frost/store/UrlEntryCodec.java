@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Collection;
+
+/**
+ * Codec URL-encoding each entry and joining them with {@link #STRING_SEPARATOR}.
+ * <p/>
+ * This is the format historically used by {@code SharedPreferencesPersister}, which is still
+ * able to read it, but escaping each character and splitting the text through a regular
+ * expression makes it quite slow with large sets.
+ */
+public class UrlEntryCodec implements EntryCodec {
+
+    public static final String CHARSET_NAME = "UTF-8";
+
+    public static final String STRING_SEPARATOR = "&";
+
+    @Override
+    public boolean decode(final String text, final Collection<String> out) {
+
+        try {
+
+            for (final String s : text.split(STRING_SEPARATOR)) {
+
+                out.add(URLDecoder.decode(s, CHARSET_NAME));
+            }
+
+        } catch (final UnsupportedEncodingException ignored) {
+
+        }
+
+        return true;
+    }
+
+    @Override
+    public String encode(final Collection<String> entries) {
+
+        final StringBuilder builder = new StringBuilder();
+
+        for (final String entry : entries) {
+
+            try {
+
+                final String encoded = URLEncoder.encode(entry, CHARSET_NAME);
+
+                if (builder.length() > 0) {
+
+                    builder.append(STRING_SEPARATOR);
+                }
+
+                builder.append(encoded);
+
+            } catch (final UnsupportedEncodingException ignored) {
+
+            }
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import it.subito.frost.store.AsyncPersister.Callback;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class AsyncPersisterTest extends TestCase {
+
+    private ExecutorService mExecutor;
+
+    public void testAwaitSetUp() throws Exception {
+
+        final InMemoryPersister wrapped = new InMemoryPersister();
+
+        AsyncPersister.setUpAsync(wrapped, mExecutor, new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+
+                    Thread.sleep(100);
+
+                } catch (final InterruptedException e) {
+
+                    throw new IllegalStateException(e);
+                }
+
+                wrapped.save("test", "aaa");
+            }
+        });
+
+        // The persister can be used directly once the set up completes
+
+        AsyncPersister.awaitSetUp(wrapped);
+
+        assertThat(wrapped.load("test", null)).containsExactly("aaa");
+
+        AsyncPersister.awaitSetUp(new InMemoryPersister());
+    }
+
+    public void testCallback() throws Exception {
+
+        final ArrayList<Runnable> delivered = new ArrayList<Runnable>();
+
+        final AsyncPersister persister =
+                new AsyncPersister(new InMemoryPersister(), mExecutor, new Executor() {
+
+                    @Override
+                    public void execute(final Runnable command) {
+
+                        synchronized (delivered) {
+
+                            delivered.add(command);
+                        }
+                    }
+                });
+
+        persister.saveAsync("test", "aaa");
+
+        final ArrayList<CharSequence> results = new ArrayList<CharSequence>();
+
+        persister.loadAsync("test", "a", 0, new Callback<List<CharSequence>>() {
+
+            @Override
+            public void onResult(final List<CharSequence> result) {
+
+                results.addAll(result);
+            }
+        }).get();
+
+        // The result is delivered only through the callback executor
+
+        assertThat(results).isEmpty();
+
+        synchronized (delivered) {
+
+            assertThat(delivered).hasSize(1);
+
+            delivered.get(0).run();
+        }
+
+        assertThat(results).containsExactly("aaa");
+    }
+
+    public void testErrorCallback() throws Exception {
+
+        final AsyncPersister persister =
+                new AsyncPersister(new InMemoryPersister() {
+
+                    @Override
+                    public void save(final String saveKey, final CharSequence data) {
+
+                        throw new IllegalStateException("test");
+                    }
+                }, mExecutor, null);
+
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        persister.setErrorCallback(new Callback<Throwable>() {
+
+            @Override
+            public void onResult(final Throwable error) {
+
+                errors.add(error);
+            }
+        });
+
+        // Canceled loads are not failures
+
+        final GenerationCounter counter = new GenerationCounter();
+        final CancellationToken token = counter.current();
+
+        counter.next();
+
+        final Future<List<CharSequence>> load =
+                persister.loadAsync("test", null, 0, token, new Callback<List<CharSequence>>() {
+
+                    @Override
+                    public void onResult(final List<CharSequence> result) {
+
+                        fail("the load must be canceled");
+                    }
+                });
+
+        final Future<Void> save = persister.saveAsync("test", "aaa");
+
+        try {
+
+            save.get();
+
+            fail();
+
+        } catch (final ExecutionException e) {
+
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+
+        assertThat(load.isDone()).isTrue();
+
+        // The error is delivered in the executor thread, before the following task runs
+
+        persister.runAsync(new Runnable() {
+
+            @Override
+            public void run() {
+
+            }
+        }).get();
+
+        assertThat(errors).hasSize(1);
+        assertThat(errors.get(0)).isInstanceOf(IllegalStateException.class);
+    }
+
+    public void testErrors() throws InterruptedException {
+
+        final AsyncPersister persister =
+                new AsyncPersister(new InMemoryPersister() {
+
+                    @Override
+                    public void save(final String saveKey, final CharSequence data) {
+
+                        throw new IllegalStateException("test");
+                    }
+                }, mExecutor, null);
+
+        final Future<Void> future = persister.saveAsync("test", "aaa");
+
+        try {
+
+            future.get();
+
+            fail();
+
+        } catch (final ExecutionException e) {
+
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    public void testOrdering() throws Exception {
+
+        final AsyncPersister persister =
+                new AsyncPersister(new InMemoryPersister(), mExecutor, null);
+
+        final StringBuilder mutable = new StringBuilder("aaa");
+
+        for (int i = 0; i < 100; ++i) {
+
+            persister.saveAsync("test", "entry" + i);
+        }
+
+        persister.saveAsync("test", mutable);
+        persister.removeAsync("test", "entry0", "entry1");
+
+        // The passed texts are copied before returning
+
+        mutable.append("bbb");
+
+        final List<CharSequence> entries = persister.loadAsync("test", null, 0, null).get();
+
+        assertThat(entries).hasSize(99);
+        assertThat(entries).contains("aaa").doesNotContain("aaabbb", "entry0", "entry1");
+
+        persister.commitAsync(Persisters.edit(persister.getPersister()).remove("test"));
+
+        assertThat(persister.loadAsync("test", null, 0, null).get()).isEmpty();
+    }
+
+    public void testRunAsync() throws Exception {
+
+        final AsyncPersister persister =
+                new AsyncPersister(new InMemoryPersister(), mExecutor, null);
+
+        final List<CharSequence> entries = new ArrayList<CharSequence>();
+
+        persister.saveAsync("test", "aaa");
+        persister.runAsync(new Runnable() {
+
+            @Override
+            public void run() {
+
+                // The task runs after the operations requested before it
+
+                entries.addAll(persister.getPersister().load("test", null));
+            }
+        }).get();
+
+        assertThat(entries).containsExactly("aaa");
+    }
+
+    public void testSetUp() throws Exception {
+
+        final InMemoryPersister wrapped = new InMemoryPersister();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService setUpExecutor = Executors.newSingleThreadExecutor();
+
+        try {
+
+            final Future<Void> setUp =
+                    AsyncPersister.setUpAsync(wrapped, setUpExecutor, new Runnable() {
+
+                        @Override
+                        public void run() {
+
+                            try {
+
+                                release.await();
+
+                            } catch (final InterruptedException e) {
+
+                                throw new IllegalStateException(e);
+                            }
+
+                            wrapped.save("test", "aaa");
+                        }
+                    });
+
+            // The operations submitted to another executor wait for the set up
+
+            final AsyncPersister persister = new AsyncPersister(wrapped, mExecutor, null);
+            final Future<List<CharSequence>> load = persister.loadAsync("test", null, 0, null);
+
+            try {
+
+                load.get(100, TimeUnit.MILLISECONDS);
+
+                fail("the load must wait for the set up");
+
+            } catch (final TimeoutException ignored) {
+
+            }
+
+            release.countDown();
+
+            assertThat(load.get()).containsExactly("aaa");
+            assertThat(setUp.isDone()).isTrue();
+
+        } finally {
+
+            setUpExecutor.shutdownNow();
+        }
+    }
+
+    public void testSetUpFailure() throws Exception {
+
+        final InMemoryPersister wrapped = new InMemoryPersister();
+
+        AsyncPersister.setUpAsync(wrapped, mExecutor, new Runnable() {
+
+            @Override
+            public void run() {
+
+                throw new IllegalArgumentException("no context");
+            }
+        });
+
+        final AsyncPersister persister = new AsyncPersister(wrapped, mExecutor, null);
+
+        try {
+
+            persister.saveAsync("test", "aaa").get();
+
+            fail("the set up failure must be reported");
+
+        } catch (final ExecutionException e) {
+
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            assertThat(e.getCause().getCause()).isInstanceOf(IllegalArgumentException.class);
+        }
+
+        assertThat(wrapped.getCount("test")).isEqualTo(0);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        mExecutor.shutdownNow();
+
+        super.tearDown();
+    }
+}
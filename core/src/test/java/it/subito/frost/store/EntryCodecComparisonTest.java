@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Compares encoding, decoding and prefix search time and encoded size of
+ * {@link FrontCodedEntryCodec} and {@link UrlEntryCodec} on a synthetic history of street
+ * addresses.
+ */
+public class EntryCodecComparisonTest extends TestCase {
+
+    private static final int HISTORY_SIZE = 10000;
+
+    private static final int ITERATIONS = 20;
+
+    private static final String[] STREETS =
+            {"via Giuseppe Garibaldi", "corso Vittorio Emanuele", "piazza del Duomo",
+             "viale Monza", "via Nazionale", "largo Augusto", "via dell'Indipendenza"};
+
+    private static final String[] TOWNS =
+            {"Milano", "Roma", "Napoli", "Torino", "Bologna", "Forl\u00ec", "Cant\u00f9"};
+
+    private HashSet<String> mHistory;
+
+    public void testFrontCodedCorrupted() {
+
+        final FrontCodedEntryCodec codec = new FrontCodedEntryCodec(4);
+
+        final String text = codec.encode(Arrays.asList("aaa", "aab", "abc", "b", "ba", "bcd"));
+        final String[] prefixes = {"", "a", "ab", "bc", "z"};
+
+        // Truncated or altered texts must be reported as decode failures
+
+        for (int i = FrontCodedEntryCodec.MARKER.length(); i < text.length(); ++i) {
+
+            final String[] corrupted = {text.substring(0, i),
+                                        text.substring(0, i) + '9' + text.substring(i + 1),
+                                        text.substring(0, i) + '0' + text.substring(i + 1)};
+
+            for (final String value : corrupted) {
+
+                for (final String prefix : prefixes) {
+
+                    try {
+
+                        codec.decode(value, prefix, new ArrayList<String>(), 0);
+
+                    } catch (final IllegalArgumentException ignored) {
+
+                    }
+                }
+            }
+        }
+
+        // A restart point beyond the end of the text
+
+        try {
+
+            codec.decode(FrontCodedEntryCodec.MARKER + "2:0,99:0:1:a0:1:b", "b",
+                         new ArrayList<String>(), 0);
+
+            fail();
+
+        } catch (final IllegalArgumentException ignored) {
+
+        }
+    }
+
+    public void testFrontCodedCrossIntervalRoundTrip() {
+
+        final int[] restartIntervals = {1, 2, 4, 16, 100000};
+
+        for (final int encodeInterval : restartIntervals) {
+
+            final String text = new FrontCodedEntryCodec(encodeInterval).encode(mHistory);
+
+            for (final int decodeInterval : restartIntervals) {
+
+                final FrontCodedEntryCodec codec = new FrontCodedEntryCodec(decodeInterval);
+
+                final HashSet<String> decoded = new HashSet<String>();
+
+                assertThat(codec.decode(text, decoded)).isTrue();
+                assertThat(decoded).isEqualTo(mHistory);
+
+                final ArrayList<String> matching = new ArrayList<String>();
+
+                assertThat(codec.decode(text, "via N", matching, 0)).isTrue();
+                assertThat(matching).isEqualTo(filter(mHistory, "via N"));
+            }
+        }
+    }
+
+    public void testFrontCodedRoundTrip() {
+
+        final FrontCodedEntryCodec codec = new FrontCodedEntryCodec();
+
+        final HashSet<String> entries =
+                new HashSet<String>(Arrays.asList("", "a", "ab", "abc", "b", "1,2:3", "#F&%"));
+
+        final String text = codec.encode(entries);
+
+        assertThat(text).startsWith(FrontCodedEntryCodec.MARKER);
+
+        final HashSet<String> decoded = new HashSet<String>();
+
+        assertThat(codec.decode(text, decoded)).isTrue();
+        assertThat(decoded).isEqualTo(entries);
+
+        assertThat(codec.decode(new UrlEntryCodec().encode(entries), decoded)).isFalse();
+
+        try {
+
+            codec.decode(text.substring(0, text.length() - 1), decoded);
+
+            fail();
+
+        } catch (final IllegalArgumentException ignored) {
+
+        }
+    }
+
+    public void testPerformance() {
+
+        final EntryCodec[] codecs = {new UrlEntryCodec(), new FrontCodedEntryCodec()};
+
+        for (final EntryCodec codec : codecs) {
+
+            String text = null;
+
+            final long encodeStart = System.nanoTime();
+
+            for (int i = 0; i < ITERATIONS; ++i) {
+
+                text = codec.encode(mHistory);
+            }
+
+            final long encodeTime = (System.nanoTime() - encodeStart) / ITERATIONS / 1000;
+
+            HashSet<String> decoded = null;
+
+            final long decodeStart = System.nanoTime();
+
+            for (int i = 0; i < ITERATIONS; ++i) {
+
+                decoded = new HashSet<String>(HISTORY_SIZE);
+
+                codec.decode(text, decoded);
+            }
+
+            final long decodeTime = (System.nanoTime() - decodeStart) / ITERATIONS / 1000;
+
+            //noinspection ConstantConditions
+            assertThat(decoded)
+                    .as(codec.getClass().getSimpleName() + ": " + mHistory.size() + " entries, "
+                                + text.length() + " chars, encode " + encodeTime + "us, decode "
+                                + decodeTime + "us")
+                    .isEqualTo(mHistory);
+        }
+    }
+
+    public void testPrefixSearch() {
+
+        final String[] prefixes = {"", "c", "corso Vittorio Emanuele 1", "via", "via N", "viale",
+                                   "via Giuseppe Garibaldi 300, Milano", "z", "\u00ec"};
+
+        for (final int restartInterval : new int[]{1, 2, 16, 100000}) {
+
+            final FrontCodedEntryCodec codec = new FrontCodedEntryCodec(restartInterval);
+
+            final String text = codec.encode(mHistory);
+
+            for (final String prefix : prefixes) {
+
+                final ArrayList<String> decoded = new ArrayList<String>();
+
+                assertThat(codec.decode(text, prefix, decoded, 0)).isTrue();
+                assertThat(decoded).isEqualTo(filter(mHistory, prefix));
+
+                decoded.clear();
+
+                codec.decode(text, prefix, decoded, 5);
+
+                final ArrayList<String> expected = filter(mHistory, prefix);
+
+                assertThat(decoded).isEqualTo(expected.subList(0, Math.min(5, expected.size())));
+            }
+        }
+    }
+
+    public void testPrefixSearchPerformance() {
+
+        final FrontCodedEntryCodec codec = new FrontCodedEntryCodec();
+
+        final String text = codec.encode(mHistory);
+        final String prefix = "largo Augusto 12";
+
+        ArrayList<String> expected = null;
+
+        final long fullStart = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; ++i) {
+
+            final HashSet<String> decoded = new HashSet<String>(HISTORY_SIZE);
+
+            codec.decode(text, decoded);
+
+            expected = filter(decoded, prefix);
+        }
+
+        final long fullTime = (System.nanoTime() - fullStart) / ITERATIONS / 1000;
+
+        ArrayList<String> found = null;
+
+        final long searchStart = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; ++i) {
+
+            found = new ArrayList<String>();
+
+            codec.decode(text, prefix, found, 0);
+        }
+
+        final long searchTime = (System.nanoTime() - searchStart) / ITERATIONS / 1000;
+
+        assertThat(found).isEqualTo(expected);
+
+        // Each entry of a string set is stored as <string>entry</string> in the XML file
+
+        long xmlLength = 0;
+
+        for (final String entry : mHistory) {
+
+            xmlLength += entry.length() + 17;
+        }
+
+        assertThat(searchTime)
+                .as("prefix search of " + found.size() + " entries: full decode " + fullTime
+                            + "us, restart points " + searchTime + "us")
+                .isLessThan(fullTime);
+        assertThat((long) text.length())
+                .as("string set XML ~" + xmlLength + " chars, encoded " + text.length() + " chars")
+                .isLessThan(xmlLength);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        final Random random = new Random(117);
+
+        mHistory = new HashSet<String>(HISTORY_SIZE);
+
+        while (mHistory.size() < HISTORY_SIZE) {
+
+            mHistory.add(STREETS[random.nextInt(STREETS.length)] + " " + (1 + random.nextInt(300))
+                    + ", " + TOWNS[random.nextInt(TOWNS.length)]);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        mHistory = null;
+
+        super.tearDown();
+    }
+
+    private static ArrayList<String> filter(final Collection<String> entries, final String prefix) {
+
+        final ArrayList<String> sorted = new ArrayList<String>();
+
+        for (final String entry : entries) {
+
+            if (entry.startsWith(prefix)) {
+
+                sorted.add(entry);
+            }
+        }
+
+        Collections.sort(sorted);
+
+        return sorted;
+    }
+}
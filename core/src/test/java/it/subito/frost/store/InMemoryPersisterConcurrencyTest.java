@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import it.subito.frost.store.BasePersister.KeyedDataObserver;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Stresses {@link InMemoryPersister} with concurrent saves and loads.
+ * <p/>
+ * Each writer saves its own entries in natural order and publishes its progress after each save,
+ * so that every load must return, for each writer, exactly the first entries saved by it: at
+ * least as many as were saved before the load started, and at most one more than the ones
+ * published when it ended, since the save in progress may already be visible.
+ */
+public class InMemoryPersisterConcurrencyTest extends TestCase {
+
+    private static final int ENTRY_COUNT = 2000;
+
+    private static final int READER_COUNT = 4;
+
+    private static final int WRITER_COUNT = 4;
+
+    private final AtomicReference<Throwable> mFailure = new AtomicReference<Throwable>();
+
+    private InMemoryPersister mPersister;
+
+    private AtomicInteger[] mProgress;
+
+    private static String entry(final int writer, final int index) {
+
+        return String.format(Locale.US, "w%d-%05d", writer, index);
+    }
+
+    public void testBatchConfinedToThread() throws InterruptedException {
+
+        final InMemoryPersister persister = mPersister;
+
+        final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+
+        persister.setObserver(new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                fail("the keyed method must be called instead");
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                keys.add(saveKey);
+            }
+        });
+
+        persister.beginBatch();
+
+        persister.save("batch", "aaa");
+
+        final Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                persister.save("other", "aaa");
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        // The batch in progress does not defer the other thread notifications
+
+        assertThat(keys).containsExactly("other");
+
+        persister.endBatch();
+
+        assertThat(keys).containsExactly("other", "batch");
+    }
+
+    public void testConcurrentSaveAndLoad() throws InterruptedException {
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(WRITER_COUNT);
+
+        final Thread[] threads = new Thread[WRITER_COUNT + READER_COUNT];
+
+        for (int i = 0; i < WRITER_COUNT; ++i) {
+
+            final int writer = i;
+
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        start.await();
+
+                        for (int j = 0; j < ENTRY_COUNT; ++j) {
+
+                            mPersister.save("test", entry(writer, j));
+                            mProgress[writer].set(j + 1);
+
+                            if ((j % 10) == 0) {
+
+                                // Record a new use of an already saved entry
+
+                                mPersister.save("test", entry(writer, j / 2));
+                            }
+                        }
+
+                    } catch (final Throwable t) {
+
+                        mFailure.compareAndSet(null, t);
+
+                    } finally {
+
+                        writersDone.countDown();
+                    }
+                }
+            });
+        }
+
+        for (int i = WRITER_COUNT; i < threads.length; ++i) {
+
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        start.await();
+
+                        while (writersDone.getCount() > 0) {
+
+                            checkLoad();
+                        }
+
+                        checkLoad();
+
+                    } catch (final Throwable t) {
+
+                        mFailure.compareAndSet(null, t);
+                    }
+                }
+            });
+        }
+
+        for (final Thread thread : threads) {
+
+            thread.start();
+        }
+
+        start.countDown();
+
+        for (final Thread thread : threads) {
+
+            thread.join();
+        }
+
+        final Throwable failure = mFailure.get();
+
+        if (failure != null) {
+
+            final AssertionError error = new AssertionError(failure.toString());
+            error.initCause(failure);
+
+            throw error;
+        }
+
+        assertThat(mPersister.getCount("test")).isEqualTo(WRITER_COUNT * ENTRY_COUNT);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mPersister = new InMemoryPersister();
+        mProgress = new AtomicInteger[WRITER_COUNT];
+
+        for (int i = 0; i < WRITER_COUNT; ++i) {
+
+            mProgress[i] = new AtomicInteger();
+        }
+    }
+
+    private void checkLoad() {
+
+        for (int writer = 0; writer < WRITER_COUNT; ++writer) {
+
+            final int before = mProgress[writer].get();
+
+            final List<CharSequence> list = mPersister.load("test", "w" + writer + "-");
+
+            final int after = mProgress[writer].get();
+
+            assertThat(list.size()).isGreaterThanOrEqualTo(before).isLessThanOrEqualTo(after + 1);
+
+            for (int j = 0; j < list.size(); ++j) {
+
+                assertThat(list.get(j)).isEqualTo(entry(writer, j));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class InMemoryPersisterIndexTest extends TestCase {
+
+    private static final char[] ALPHABET = {'a', 'b', 'c', '.', '@', '\u00e8', Character.MAX_VALUE};
+
+    private ArrayList<String> mHistory;
+
+    private BasePersister mPersister;
+
+    public void testPrefixRange() {
+
+        final List<String> sorted =
+                Arrays.asList("ab", "abc", "abd", "a\uffff", "a\uffff\uffff", "b", "\uffff\uffff",
+                              "\uffff\uffff\uffff");
+
+        assertThat(TextHelper.prefixStart(sorted, "abc")).isEqualTo(1);
+        assertThat(TextHelper.prefixEnd(sorted, "abc", 1)).isEqualTo(2);
+        assertThat(TextHelper.prefixStart(sorted, "a\uffff")).isEqualTo(3);
+        assertThat(TextHelper.prefixEnd(sorted, "a\uffff", 3)).isEqualTo(5);
+        assertThat(TextHelper.prefixStart(sorted, "\uffff\uffff")).isEqualTo(6);
+        assertThat(TextHelper.prefixEnd(sorted, "\uffff\uffff", 6)).isEqualTo(8);
+        assertThat(TextHelper.prefixStart(sorted, "abb")).isEqualTo(1);
+        assertThat(TextHelper.prefixEnd(sorted, "abb", 1)).isEqualTo(1);
+    }
+
+    public void testLoadMatchesLinearScan() {
+
+        final Random random = new Random(117);
+
+        for (int i = 0; i < 500; ++i) {
+
+            final String constraint = randomString(random, random.nextInt(4));
+
+            assertThat(mPersister.load("test", constraint)).isEqualTo(scan(constraint));
+
+            // Mutable sequences, like the text view editables, are matched in place
+
+            assertThat(mPersister.load("test", new StringBuilder(constraint)))
+                    .isEqualTo(scan(constraint));
+        }
+    }
+
+    public void testLoadMatchesLinearScanAfterRemove() {
+
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 200; ++i) {
+
+            final String removed = mHistory.remove(random.nextInt(mHistory.size()));
+            mPersister.remove("test", removed);
+
+            final String constraint = randomString(random, random.nextInt(3));
+
+            assertThat(mPersister.load("test", constraint)).isEqualTo(scan(constraint));
+        }
+
+        assertThat(mPersister.getCount("test")).isEqualTo(mHistory.size());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        final Random random = new Random(7);
+
+        final ArrayList<String> history = new ArrayList<String>();
+        final BasePersister persister = new InMemoryPersister();
+
+        for (int i = 0; i < 5000; ++i) {
+
+            final String entry = randomString(random, 1 + random.nextInt(8));
+
+            if (!history.contains(entry)) {
+
+                history.add(entry);
+            }
+
+            persister.save("test", entry);
+        }
+
+        mHistory = history;
+        mPersister = persister;
+    }
+
+    private String randomString(final Random random, final int length) {
+
+        final char[] chars = new char[length];
+
+        for (int i = 0; i < length; ++i) {
+
+            chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+
+        return new String(chars);
+    }
+
+    private List<CharSequence> scan(final String constraint) {
+
+        final ArrayList<String> filtered = new ArrayList<String>();
+
+        for (final String s : mHistory) {
+
+            if (s.startsWith(constraint)) {
+
+                filtered.add(s);
+            }
+        }
+
+        Collections.sort(filtered);
+
+        return new ArrayList<CharSequence>(filtered);
+    }
+}
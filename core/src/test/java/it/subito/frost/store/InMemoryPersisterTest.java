@@ -0,0 +1,535 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import it.subito.frost.store.BasePersister.Batch;
+import it.subito.frost.store.BasePersister.DataObserver;
+import it.subito.frost.store.BasePersister.KeyedDataObserver;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class InMemoryPersisterTest extends TestCase {
+
+    private PersisterContext mContext;
+
+    private ExtendedPersister mPersister;
+
+    public void testBatch() {
+
+        final ExtendedPersister persister = mPersister;
+
+        final int[] notifications = new int[1];
+
+        persister.setObserver(new DataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                ++notifications[0];
+            }
+        });
+
+        final Batch batch = persister.edit()
+                                     .save("test2", "aaa")
+                                     .save("test2", "bbb")
+                                     .save("test3", "ccc")
+                                     .remove("test", "aaa", "bbb")
+                                     .save("test", "ddd");
+
+        assertThat(persister.getCount("test2")).isEqualTo(0);
+        assertThat(notifications[0]).isEqualTo(0);
+
+        batch.commit();
+
+        assertThat(persister.load("test", null)).containsExactly("aaaa", "ccc", "ddd");
+        assertThat(persister.load("test2", null)).containsExactly("aaa", "bbb");
+        assertThat(persister.load("test3", null)).containsExactly("ccc");
+        assertThat(notifications[0]).isEqualTo(1);
+
+        persister.edit().clear().save("test", "eee").commit();
+
+        assertThat(persister.load("test", null)).containsExactly("eee");
+        assertThat(persister.getCount("test2")).isEqualTo(0);
+        assertThat(notifications[0]).isEqualTo(2);
+    }
+
+    public void testCapacityFifo() {
+
+        final ExtendedPersister persister = mPersister;
+        persister.clear();
+        persister.setCapacity(3, new FifoEvictionPolicy());
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+        persister.save("test", "aaa");
+        persister.save("test", "ddd");
+
+        assertThat(persister.load("test", null)).containsExactly("bbb", "ccc", "ddd");
+    }
+
+    public void testCapacityLfu() {
+
+        final ExtendedPersister persister = mPersister;
+        persister.clear();
+        persister.setCapacity(3, new LfuEvictionPolicy());
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+        persister.save("test", "aaa");
+        persister.save("test", "aaa");
+        persister.save("test", "ccc");
+        persister.save("test", "ddd");
+
+        assertThat(persister.load("test", null)).containsExactly("aaa", "ccc", "ddd");
+
+        persister.save("test", "eee");
+
+        assertThat(persister.load("test", null)).containsExactly("aaa", "ccc", "eee");
+    }
+
+    public void testCapacityLru() {
+
+        final ExtendedPersister persister = mPersister;
+        persister.clear();
+        persister.setCapacity(3, new LruEvictionPolicy());
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+        persister.save("test", "aaa");
+        persister.save("test", "ddd");
+
+        assertThat(persister.load("test", null)).containsExactly("aaa", "ccc", "ddd");
+
+        persister.remove("test", "ccc");
+        persister.save("test", "eee");
+        persister.save("test", "fff");
+
+        assertThat(persister.load("test", null)).containsExactly("ddd", "eee", "fff");
+        assertThat(persister.getCount("test2")).isEqualTo(0);
+
+        persister.setCapacity(0, null);
+        persister.save("test", "ggg");
+
+        assertThat(persister.getCount("test")).isEqualTo(4);
+    }
+
+    public void testClear() {
+
+        final ExtendedPersister persister = mPersister;
+        persister.save("test2", "aaaa");
+
+        persister.clear();
+
+        assertThat(persister.getCount("test")).isEqualTo(0);
+        assertThat(persister.getCount("test2")).isEqualTo(0);
+    }
+
+    public void testKeyedObserver() {
+
+        final ExtendedPersister persister = mPersister;
+
+        final ArrayList<String> keys = new ArrayList<String>();
+        final ArrayList<DataChange> changes = new ArrayList<DataChange>();
+
+        persister.setObserver(new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                fail("the keyed method must be called instead");
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                keys.add(saveKey);
+                changes.add(change);
+            }
+        });
+
+        persister.save("test", "aaa");
+
+        assertThat(keys).isEmpty();
+
+        persister.save("test", "ddd");
+
+        assertThat(keys).containsExactly("test");
+        assertThat(changes.get(0).getAdded()).containsExactly("ddd");
+        assertThat(changes.get(0).getRemoved()).isEmpty();
+        assertThat(changes.get(0).affects("d")).isTrue();
+        assertThat(changes.get(0).affects("a")).isFalse();
+
+        keys.clear();
+        changes.clear();
+
+        persister.edit()
+                 .save("test2", "aaa")
+                 .save("test3", "bbb")
+                 .save("test2", "ccc")
+                 .commit();
+
+        assertThat(keys).containsExactly("test2", "test3");
+        assertThat(changes.get(0).getAdded()).containsExactly("aaa", "ccc");
+        assertThat(changes.get(1).getAdded()).containsExactly("bbb");
+
+        persister.setCapacity(1, new FifoEvictionPolicy());
+        persister.save("test4", "eee");
+
+        keys.clear();
+        changes.clear();
+
+        persister.save("test4", "fff");
+
+        assertThat(keys).containsExactly("test4");
+        assertThat(changes.get(0).getAdded()).containsExactly("fff");
+        assertThat(changes.get(0).getRemoved()).containsExactly("eee");
+        assertThat(changes.get(0).affects("e")).isTrue();
+        assertThat(changes.get(0).affects("a")).isFalse();
+        assertThat(changes.get(0).affects(null)).isTrue();
+    }
+
+    public void testKeyedObserverRemovals() {
+
+        final ExtendedPersister persister = mPersister;
+
+        final ArrayList<String> keys = new ArrayList<String>();
+        final ArrayList<DataChange> changes = new ArrayList<DataChange>();
+
+        persister.setObserver(new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                fail("the keyed method must be called instead");
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                keys.add(saveKey);
+                changes.add(change);
+            }
+        });
+
+        persister.remove("test", "zzz");
+        persister.remove("test2");
+
+        assertThat(keys).isEmpty();
+
+        persister.remove("test", "aaa", "zzz");
+
+        assertThat(keys).containsExactly("test");
+        assertThat(changes.get(0).getAdded()).isEmpty();
+        assertThat(changes.get(0).getRemoved()).containsExactly("aaa");
+
+        keys.clear();
+        changes.clear();
+
+        persister.save("test2", "aaa");
+
+        keys.clear();
+        changes.clear();
+
+        // A batch made only of removals is notified too
+
+        persister.edit().remove("test", "bbb").remove("test2").commit();
+
+        assertThat(keys).containsOnly("test", "test2");
+        assertThat(changes.get(keys.indexOf("test")).getRemoved()).containsExactly("bbb");
+        assertThat(changes.get(keys.indexOf("test2")).getRemoved()).containsExactly("aaa");
+
+        keys.clear();
+        changes.clear();
+
+        persister.remove("test");
+
+        assertThat(keys).containsExactly("test");
+        assertThat(changes.get(0).getRemoved()).containsOnly("aaaa", "ccc");
+
+        keys.clear();
+        changes.clear();
+
+        persister.clear();
+
+        assertThat(keys).containsExactly((String) null);
+        assertThat(changes.get(0).isUnknown()).isTrue();
+    }
+
+    public void testKeyedObserverUses() {
+
+        final ExtendedPersister persister = mPersister;
+
+        final ArrayList<String> keys = new ArrayList<String>();
+        final ArrayList<DataChange> changes = new ArrayList<DataChange>();
+
+        persister.setObserver(new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                fail("the keyed method must be called instead");
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                keys.add(saveKey);
+                changes.add(change);
+            }
+        });
+
+        // Without a ranking, a new use does not change the loaded entries
+
+        persister.save("test", "aaa");
+
+        assertThat(keys).isEmpty();
+
+        persister.setRanking(new FrecencyRanking(), 0);
+        persister.save("test", "aaa");
+
+        assertThat(keys).containsExactly("test");
+        assertThat(changes.get(0).getAdded()).isEmpty();
+        assertThat(changes.get(0).getRemoved()).isEmpty();
+        assertThat(changes.get(0).getUsed()).containsExactly("aaa");
+        assertThat(changes.get(0).affects("a")).isTrue();
+        assertThat(changes.get(0).affects("b")).isFalse();
+    }
+
+    public void testLoad() {
+
+        final ExtendedPersister persister = mPersister;
+
+        final List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isNotEmpty();
+        assertThat(list).containsExactly("aaa", "aaaa");
+
+        assertThat(persister.getCount("test")).isEqualTo(4);
+    }
+
+    public void testLoadLimit() {
+
+        final ExtendedPersister persister = mPersister;
+
+        assertThat(persister.load("test", null, 2)).containsExactly("aaa", "aaaa");
+        assertThat(persister.load("test", "a", 1)).containsExactly("aaa");
+        assertThat(persister.load("test", "a", 5)).containsExactly("aaa", "aaaa");
+        assertThat(persister.load("test", null, 0)).hasSize(4);
+        assertThat(persister.load("test", "b", 1)).containsExactly("bbb");
+        assertThat(persister.load("test", "d", 1)).isEmpty();
+
+        // The refined results must not be affected by the limited ones
+
+        assertThat(persister.load("test", "aa")).containsExactly("aaa", "aaaa");
+    }
+
+    public void testLoadRefined() {
+
+        final ExtendedPersister persister = mPersister;
+
+        assertThat(persister.load("test", "a")).containsExactly("aaa", "aaaa");
+        assertThat(persister.load("test", "aa")).containsExactly("aaa", "aaaa");
+        assertThat(persister.load("test", "aaaa")).containsExactly("aaaa");
+        assertThat(persister.load("test", "a")).containsExactly("aaa", "aaaa");
+
+        persister.save("test", "aab");
+
+        assertThat(persister.load("test", "aa")).containsExactly("aaa", "aaaa", "aab");
+        assertThat(persister.load("test", "aab")).containsExactly("aab");
+
+        persister.save("test2", "aac");
+
+        assertThat(persister.load("test2", "aa")).containsExactly("aac");
+        assertThat(persister.load("test", "aa")).containsExactly("aaa", "aaaa", "aab");
+    }
+
+    public void testRanking() {
+
+        final ExtendedPersister persister = mPersister;
+        persister.setRanking(new Ranking() {
+
+            @Override
+            public double score(final EntryStats stats, final long now) {
+
+                return stats.useCount;
+            }
+        }, 2);
+
+        persister.save("test", "bbb");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+
+        assertThat(persister.load("test", null)).containsExactly("bbb", "ccc");
+
+        // The count is not limited by the maximum number of ranked results
+
+        assertThat(persister.getCount("test")).isEqualTo(4);
+
+        // Same score, so the order depends on whether they were saved in the same millisecond
+
+        assertThat(persister.load("test", "a")).containsOnly("aaa", "aaaa");
+
+        persister.save("test", "aaaa");
+        persister.save("test", "aaaa");
+        persister.save("test", "aaaa");
+
+        assertThat(persister.load("test", null)).containsExactly("aaaa", "bbb");
+        assertThat(persister.load("test", "a")).containsExactly("aaaa", "aaa");
+
+        persister.setRanking(null, 0);
+
+        assertThat(persister.load("test", null)).containsExactly("aaa", "aaaa", "bbb", "ccc");
+    }
+
+    public void testRemove() {
+
+        final ExtendedPersister persister = mPersister;
+
+        persister.remove("test");
+
+        List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isEmpty();
+
+        assertThat(persister.getCount("test")).isEqualTo(0);
+    }
+
+    public void testRemoveArray() {
+
+        final ExtendedPersister persister = mPersister;
+
+        persister.remove("test", "aaa", "aaaa");
+
+        List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isEmpty();
+
+        assertThat(persister.getCount("test")).isEqualTo(2);
+    }
+
+    public void testRemoveList() {
+
+        final ExtendedPersister persister = mPersister;
+
+        persister.remove("test", Arrays.asList((CharSequence) "aaa", "aaaa"));
+
+        final List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isEmpty();
+
+        assertThat(persister.getCount("test")).isEqualTo(2);
+    }
+
+    public void testRemoveNone() {
+
+        final ExtendedPersister persister = mPersister;
+
+        persister.remove("test", "a");
+
+        final List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isNotEmpty();
+        assertThat(list).containsExactly("aaa", "aaaa");
+
+        assertThat(persister.getCount("test")).isEqualTo(4);
+    }
+
+    public void testRemovePartialArray() {
+
+        final ExtendedPersister persister = mPersister;
+
+        persister.remove("test", "aaa", "aaab");
+
+        final List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isNotEmpty();
+        assertThat(list).containsExactly("aaaa");
+
+        assertThat(persister.getCount("test")).isEqualTo(3);
+    }
+
+    public void testRemovePartialList() {
+
+        final ExtendedPersister persister = mPersister;
+
+        persister.remove("test", Arrays.asList((CharSequence) "aaa", "aaab"));
+
+        final List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isNotEmpty();
+        assertThat(list).containsExactly("aaaa");
+
+        assertThat(persister.getCount("test")).isEqualTo(3);
+    }
+
+    public void testRemoveSingle() {
+
+        final ExtendedPersister persister = mPersister;
+
+        persister.remove("test", "aaa");
+
+        final List<CharSequence> list = persister.load("test", "a");
+
+        assertThat(list).isNotEmpty();
+        assertThat(list).containsExactly("aaaa");
+
+        assertThat(persister.getCount("test")).isEqualTo(3);
+    }
+
+    protected ExtendedPersister buildPersister() {
+
+        return new InMemoryPersister();
+    }
+
+    protected PersisterContext getContext() {
+
+        return mContext;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mContext = new DirectoryPersisterContext(
+                new File(System.getProperty("java.io.tmpdir"), "frost-test"));
+
+        mPersister = buildPersister();
+        initPersister(mPersister);
+    }
+
+    private void initPersister(final ExtendedPersister persister) {
+
+        persister.setContext(getContext());
+
+        persister.clear();
+
+        persister.save("test", "aaa");
+        persister.save("test", "aaaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+    }
+}
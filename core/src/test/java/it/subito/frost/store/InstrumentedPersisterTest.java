@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class InstrumentedPersisterTest extends InMemoryPersisterTest {
+
+    private HistogramMetrics mMetrics;
+
+    public void testBuckets() {
+
+        assertThat(HistogramMetrics.getBucket(999)).isEqualTo(0);
+        assertThat(HistogramMetrics.getBucket(1000)).isEqualTo(1);
+        assertThat(HistogramMetrics.getBucket(16000000)).isEqualTo(14);
+        assertThat(HistogramMetrics.getBucket(Long.MAX_VALUE)).isEqualTo(
+                HistogramMetrics.BUCKET_COUNT - 1);
+
+        for (int i = 0; i < HistogramMetrics.BUCKET_COUNT - 1; ++i) {
+
+            final long bound = HistogramMetrics.getBucketUpperBound(i);
+
+            assertThat(HistogramMetrics.getBucket(bound - 1)).isEqualTo(i);
+            assertThat(HistogramMetrics.getBucket(bound)).isEqualTo(i + 1);
+        }
+    }
+
+    public void testMetrics() {
+
+        final HistogramMetrics metrics = new HistogramMetrics();
+
+        final ExtendedPersister persister =
+                new InstrumentedPersister(new InMemoryPersister(), metrics);
+
+        persister.save("test", "aaa");
+        persister.save("test", "aab");
+        persister.edit().save("test", "bbb").remove("test", "aaa").commit();
+
+        assertThat(persister.load("test", "a")).containsExactly("aab");
+        assertThat(persister.load("test", null, 1)).containsExactly("aab");
+
+        persister.remove("test", "aab", "bbb");
+        persister.clear();
+
+        assertThat(metrics.getCount(PersisterMetrics.OPERATION_SAVE)).isEqualTo(2);
+        assertThat(metrics.getCount(PersisterMetrics.OPERATION_COMMIT)).isEqualTo(1);
+        assertThat(metrics.getTotalSize(PersisterMetrics.OPERATION_COMMIT)).isEqualTo(2);
+        assertThat(metrics.getCount(PersisterMetrics.OPERATION_LOAD)).isEqualTo(2);
+        assertThat(metrics.getTotalSize(PersisterMetrics.OPERATION_LOAD)).isEqualTo(2);
+        assertThat(metrics.getTotalSize(PersisterMetrics.OPERATION_REMOVE)).isEqualTo(2);
+        assertThat(metrics.getCount(PersisterMetrics.OPERATION_CLEAR)).isEqualTo(1);
+
+        long total = 0;
+
+        for (final long count : metrics.getHistogram(PersisterMetrics.OPERATION_LOAD)) {
+
+            total += count;
+        }
+
+        final int load = PersisterMetrics.OPERATION_LOAD;
+        final long max = metrics.getMaxDuration(load);
+
+        assertThat(total).isEqualTo(2);
+        assertThat(metrics.getPercentile(load, 100)).isEqualTo(max);
+        assertThat(metrics.getTotalDuration(load)).isGreaterThanOrEqualTo(max);
+
+        metrics.reset();
+
+        assertThat(metrics.getCount(PersisterMetrics.OPERATION_LOAD)).isEqualTo(0);
+        assertThat(metrics.getPercentile(PersisterMetrics.OPERATION_LOAD, 50)).isEqualTo(0);
+    }
+
+    public void testPercentile() {
+
+        final HistogramMetrics metrics = new HistogramMetrics();
+
+        for (int i = 1; i <= 100; ++i) {
+
+            metrics.onOperation(PersisterMetrics.OPERATION_LOAD, "test", i * 1000000L, 0);
+        }
+
+        // 50ms falls in the bucket between 32.768ms and 65.536ms
+
+        assertThat(metrics.getPercentile(PersisterMetrics.OPERATION_LOAD, 50)).isEqualTo(
+                65536000L);
+        assertThat(metrics.getPercentile(PersisterMetrics.OPERATION_LOAD, 99)).isEqualTo(
+                100000000L);
+    }
+
+    @Override
+    protected ExtendedPersister buildPersister() {
+
+        mMetrics = new HistogramMetrics();
+
+        return new InstrumentedPersister(new InMemoryPersister(), mMetrics);
+    }
+}
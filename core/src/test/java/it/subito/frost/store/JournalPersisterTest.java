@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class JournalPersisterTest extends InMemoryPersisterTest {
+
+    private File mFile;
+
+    public void testBackgroundCompaction() throws IOException, InterruptedException {
+
+        final JournalPersister persister = newPersister();
+        persister.setCompactionThreshold(0.5f);
+
+        for (int i = 0; i < 1000; ++i) {
+
+            persister.save("test", "aaa" + (i % 10));
+        }
+
+        // Up to MIN_COMPACTION_RECORDS - 1 records may be left behind the last compaction, while
+        // the uncompacted journal would take more than 30000 bytes
+
+        for (int i = 0; (i < 50) && (journalLength() > 100 * 100); ++i) {
+
+            Thread.sleep(100);
+        }
+
+        assertThat(journalLength()).isLessThan(100 * 100);
+        assertThat(newPersister().getCount("test")).isEqualTo(10);
+    }
+
+    public void testCompaction() throws IOException {
+
+        final JournalPersister persister = newPersister();
+
+        for (int i = 0; i < 100; ++i) {
+
+            persister.save("test", "aaa" + i);
+            persister.save("test", "bbb");
+        }
+
+        persister.remove("test", "aaa1", "aaa2");
+
+        final long before = journalLength();
+
+        persister.compact();
+
+        assertThat(journalLength()).isLessThan(before);
+
+        persister.save("test", "ccc");
+
+        final JournalPersister restored = newPersister();
+
+        assertThat(restored.getCount("test")).isEqualTo(100);
+        assertThat(restored.load("test", "aaa1", 2)).containsExactly("aaa10", "aaa11");
+        assertThat(restored.load("test", "c")).containsExactly("ccc");
+
+        // Statistics survive the compaction
+
+        restored.setRanking(new Ranking() {
+
+            @Override
+            public double score(final EntryStats stats, final long now) {
+
+                return stats.useCount;
+            }
+        }, 1);
+
+        assertThat(restored.load("test", null)).containsExactly("bbb");
+    }
+
+    public void testCorruptedTail() throws IOException {
+
+        final JournalPersister persister = newPersister();
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+
+        final long length = journalLength();
+
+        persister.save("test", "ccc");
+
+        // Simulate a record only partially written
+
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+
+        try {
+
+            final long end = usedLength(file);
+
+            file.seek(end - 3);
+            file.write(new byte[]{1, 2, 3});
+
+        } finally {
+
+            file.close();
+        }
+
+        assertThat(journalLength()).isGreaterThanOrEqualTo(length);
+
+        final JournalPersister restored = newPersister();
+
+        assertThat(restored.load("test", null)).containsExactly("aaa", "bbb");
+
+        restored.save("test", "ddd");
+
+        assertThat(newPersister().load("test", null)).containsExactly("aaa", "bbb", "ddd");
+    }
+
+    public void testRecovery() {
+
+        final JournalPersister persister = newPersister();
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test2", "ccc");
+        persister.remove("test", "aaa");
+        persister.save("test", "ddd");
+        persister.remove("test2");
+
+        final JournalPersister restored = newPersister();
+
+        assertThat(restored.load("test", null)).containsExactly("bbb", "ddd");
+        assertThat(restored.getCount("test2")).isEqualTo(0);
+
+        restored.clear();
+
+        assertThat(newPersister().getCount("test")).isEqualTo(0);
+    }
+
+    @Override
+    protected ExtendedPersister buildPersister() {
+
+        return new JournalPersister();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mFile = new File(getContext().getFilesDir(), "test.frostJournal");
+
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    private long journalLength() throws IOException {
+
+        final RandomAccessFile file = new RandomAccessFile(mFile, "r");
+
+        try {
+
+            return usedLength(file);
+
+        } finally {
+
+            file.close();
+        }
+    }
+
+    private JournalPersister newPersister() {
+
+        final JournalPersister persister = new JournalPersister(mFile);
+        persister.setContext(getContext());
+
+        return persister;
+    }
+
+    /**
+     * Returns the length of the journal up to the first empty record.
+     */
+    private long usedLength(final RandomAccessFile file) throws IOException {
+
+        long position = 0;
+
+        while (position + 4 <= file.length()) {
+
+            file.seek(position);
+
+            final int length = file.readInt();
+
+            if (length == 0) {
+
+                break;
+            }
+
+            position += 8 + length;
+        }
+
+        return position;
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Verifies that a steady state keystroke allocates memory proportionally to the number of results
+ * and not to the history size, by counting the bytes allocated by the current thread while
+ * loading the same constraint from a small and a large history.
+ */
+public class LoadAllocationTest extends TestCase {
+
+    private static final int LARGE_HISTORY = 100000;
+
+    private static final int LOADS = 2000;
+
+    private static final int MAX_SUGGESTIONS = 10;
+
+    private static final int SMALL_HISTORY = 1000;
+
+    private static final int WARMUP_LOADS = 2000;
+
+    private static String entry(final int index) {
+
+        final String number = Integer.toString(index);
+
+        return "000000".substring(number.length()) + number + "@example.com";
+    }
+
+    private static <T extends BasePersister> T fill(final T persister, final int size) {
+
+        for (int i = 0; i < size; ++i) {
+
+            persister.save("test", entry(i));
+        }
+
+        return persister;
+    }
+
+    public void testInMemory() {
+
+        // The constraint matches 10 entries of both histories
+
+        assertAllocations("in memory", fill(new InMemoryPersister(), SMALL_HISTORY),
+                          fill(new InMemoryPersister(), LARGE_HISTORY), "00012", 0, false);
+    }
+
+    public void testInMemoryRanked() {
+
+        final InMemoryPersister small = fill(new InMemoryPersister(), SMALL_HISTORY);
+        small.setRanking(new FrecencyRanking(), MAX_SUGGESTIONS);
+
+        final InMemoryPersister large = fill(new InMemoryPersister(), LARGE_HISTORY);
+        large.setRanking(new FrecencyRanking(), MAX_SUGGESTIONS);
+
+        // The constraint matches the whole histories, while only the top entries are returned
+
+        assertAllocations("in memory ranked", small, large, "0", 0, false);
+    }
+
+    public void testInMemoryUse() {
+
+        final InMemoryPersister small = fill(new InMemoryPersister(), SMALL_HISTORY);
+        small.setRanking(new FrecencyRanking(), MAX_SUGGESTIONS);
+
+        final InMemoryPersister large = fill(new InMemoryPersister(), LARGE_HISTORY);
+        large.setRanking(new FrecencyRanking(), MAX_SUGGESTIONS);
+
+        // Using an entry before each load must not rebuild the whole snapshot
+
+        assertAllocations("in memory use", small, large, "00012", 0, true);
+    }
+
+    public void testTrie() {
+
+        assertAllocations("trie", fill(new TriePersister(), SMALL_HISTORY),
+                          fill(new TriePersister(), LARGE_HISTORY), "00012", MAX_SUGGESTIONS,
+                          false);
+    }
+
+    private void assertAllocations(final String name, final ExtendedPersister small,
+            final ExtendedPersister large, final String constraint, final int limit,
+            final boolean use) {
+
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+
+            // Thread allocation counting is not supported by this virtual machine
+
+            return;
+        }
+
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+
+        // Both loads return the same number of results
+
+        assertThat(large.load("test", constraint, limit))
+                .hasSize(small.load("test", constraint, limit).size());
+
+        final long smallBytes = measure(threadBean, small, constraint, limit, use);
+        final long largeBytes = measure(threadBean, large, constraint, limit, use);
+
+        // A history 100 times larger must not cost more than a few extra bytes
+
+        assertThat(largeBytes)
+                .as(name + " bytes allocated per load: " + SMALL_HISTORY + " entries " + smallBytes
+                            + ", " + LARGE_HISTORY + " entries " + largeBytes)
+                .isLessThanOrEqualTo(smallBytes + 64);
+    }
+
+    private void load(final ExtendedPersister persister, final CharSequence constraint,
+            final int limit, final boolean use) {
+
+        if (use) {
+
+            persister.save("test", entry(120));
+        }
+
+        persister.load("test", constraint, limit);
+    }
+
+    private long measure(final com.sun.management.ThreadMXBean bean,
+            final ExtendedPersister persister, final String constraint, final int limit,
+            final boolean use) {
+
+        // Type the constraint into a mutable sequence, like the text view editable
+
+        final StringBuilder editable = new StringBuilder(constraint);
+
+        for (int i = 0; i < WARMUP_LOADS; ++i) {
+
+            load(persister, editable, limit, use);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long start = bean.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < LOADS; ++i) {
+
+            load(persister, editable, limit, use);
+        }
+
+        return (bean.getThreadAllocatedBytes(threadId) - start) / LOADS;
+    }
+
+}
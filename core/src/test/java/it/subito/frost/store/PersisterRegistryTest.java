@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+import it.subito.frost.store.BasePersister.DataObserver;
+import it.subito.frost.store.BasePersister.KeyedDataObserver;
+import it.subito.frost.store.PersisterRegistry.Factory;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PersisterRegistryTest extends TestCase {
+
+    private static final Factory FACTORY = new Factory() {
+
+        @Override
+        public BasePersister create() {
+
+            return new InMemoryPersister();
+        }
+    };
+
+    public void testFanOut() {
+
+        final InMemoryPersister persister = new InMemoryPersister();
+
+        final RecordingObserver first = new RecordingObserver();
+        final RecordingObserver second = new RecordingObserver();
+        final RecordingObserver all = new RecordingObserver();
+
+        final int[] plain = new int[1];
+
+        final DataObserver plainObserver = new DataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                ++plain[0];
+            }
+        };
+
+        PersisterRegistry.addObserver(persister, "first", first);
+        PersisterRegistry.addObserver(persister, "second", second);
+        PersisterRegistry.addObserver(persister, "second", plainObserver);
+        PersisterRegistry.addObserver(persister, null, all);
+
+        persister.save("first", "aaa");
+
+        assertThat(first.keys).containsExactly("first");
+        assertThat(second.keys).isEmpty();
+        assertThat(all.keys).containsExactly("first");
+        assertThat(plain[0]).isEqualTo(0);
+
+        persister.edit().save("first", "bbb").save("second", "ccc").commit();
+
+        assertThat(first.keys).containsExactly("first", "first");
+        assertThat(second.keys).containsExactly("second");
+        assertThat(all.keys).containsExactly("first", "first", "second");
+        assertThat(plain[0]).isEqualTo(1);
+
+        PersisterRegistry.removeObserver(persister, "first", first);
+
+        persister.save("first", "ddd");
+
+        assertThat(first.keys).hasSize(2);
+        assertThat(all.keys).hasSize(4);
+
+        persister.setCapacity(1, new FifoEvictionPolicy());
+
+        // Any key may have changed
+
+        assertThat(second.keys).containsExactly("second", null);
+        assertThat(plain[0]).isEqualTo(2);
+    }
+
+    public void testObtain() {
+
+        final BasePersister persister = PersisterRegistry.obtain("test:1", FACTORY);
+
+        assertThat(PersisterRegistry.obtain("test:1", FACTORY)).isSameAs(persister);
+        assertThat(PersisterRegistry.obtain("test:2", FACTORY)).isNotSameAs(persister);
+    }
+
+    public void testWeakObservers() throws InterruptedException {
+
+        final BasePersister persister = new InMemoryPersister();
+
+        RecordingObserver observer = new RecordingObserver();
+
+        final WeakReference<RecordingObserver> reference =
+                new WeakReference<RecordingObserver>(observer);
+
+        PersisterRegistry.addObserver(persister, "test", observer);
+
+        persister.save("test", "aaa");
+
+        assertThat(observer.keys).hasSize(1);
+
+        // The registry must not prevent the observer from being collected
+
+        //noinspection UnusedAssignment
+        observer = null;
+
+        for (int i = 0; (i < 50) && (reference.get() != null); ++i) {
+
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(reference.get()).isNull();
+
+        persister.save("test", "bbb");
+    }
+
+    private static class RecordingObserver implements KeyedDataObserver {
+
+        public final ArrayList<String> keys = new ArrayList<String>();
+
+        @Override
+        public void onDataChanged() {
+
+            fail("the keyed method must be called instead");
+        }
+
+        @Override
+        public void onDataChanged(final String saveKey, final DataChange change) {
+
+            keys.add(saveKey);
+        }
+    }
+}
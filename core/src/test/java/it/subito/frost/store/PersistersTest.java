@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class PersistersTest extends TestCase {
+
+    private LegacyPersister mPersister;
+
+    public void testEdit() {
+
+        final LegacyPersister persister = mPersister;
+
+        final BasePersister.Batch batch = Persisters.edit(persister);
+
+        assertThat(batch).isInstanceOf(SimpleBatch.class);
+
+        batch.save("test", "ddd").remove("test", "aaa").commit();
+
+        assertThat(persister.load("test", null)).containsExactly("bbb", "ccc", "ddd");
+    }
+
+    public void testExtendedPersister() {
+
+        final InMemoryPersister persister = new InMemoryPersister();
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+
+        Persisters.setCapacity(persister, 1, new FifoEvictionPolicy());
+
+        assertThat(Persisters.load(persister, "test", null, 0)).containsExactly("bbb");
+        assertThat(Persisters.setContext(persister, null)).isTrue();
+    }
+
+    public void testLoad() {
+
+        final LegacyPersister persister = mPersister;
+
+        assertThat(Persisters.load(persister, "test", null, 2)).containsExactly("aaa", "bbb");
+        assertThat(Persisters.load(persister, "test", "b", 2)).containsExactly("bbb");
+        assertThat(Persisters.load(persister, "test", null, 0)).hasSize(3);
+    }
+
+    public void testUnsupported() {
+
+        final LegacyPersister persister = mPersister;
+
+        // The optional capabilities are silently ignored
+
+        Persisters.setCapacity(persister, 1, new FifoEvictionPolicy());
+        Persisters.setRanking(persister, new FrecencyRanking(), 1);
+
+        assertThat(Persisters.setContext(persister, null)).isFalse();
+        assertThat(persister.load("test", null)).containsExactly("aaa", "bbb", "ccc");
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mPersister = new LegacyPersister();
+
+        mPersister.save("test", "aaa");
+        mPersister.save("test", "bbb");
+        mPersister.save("test", "ccc");
+    }
+
+    /**
+     * Persister implementing only the methods of the base interface.
+     */
+    private static class LegacyPersister implements BasePersister {
+
+        private final InMemoryPersister mDelegate = new InMemoryPersister();
+
+        @Override
+        public void clear() {
+
+            mDelegate.clear();
+        }
+
+        @Override
+        public int getCount(final String savedKey) {
+
+            return mDelegate.getCount(savedKey);
+        }
+
+        @Override
+        public List<CharSequence> load(final String saveKey, final CharSequence constraint) {
+
+            return mDelegate.load(saveKey, constraint);
+        }
+
+        @Override
+        public void remove(final String saveKey) {
+
+            mDelegate.remove(saveKey);
+        }
+
+        @Override
+        public void remove(final String saveKey, final CharSequence... data) {
+
+            mDelegate.remove(saveKey, data);
+        }
+
+        @Override
+        public void remove(final String saveKey, final Collection<CharSequence> data) {
+
+            mDelegate.remove(saveKey, data);
+        }
+
+        @Override
+        public void save(final String saveKey, final CharSequence data) {
+
+            mDelegate.save(saveKey, data);
+        }
+
+        @Override
+        public void setObserver(final DataObserver observer) {
+
+            mDelegate.setObserver(observer);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Replays a burst of keystrokes typed at 20 keys per second against a ranked persister, on a
+ * virtual clock advanced by each scanned entry, so to measure the scan work spent on queries
+ * whose results are already obsolete.
+ */
+public class QueryCancellationTest extends TestCase {
+
+    private static final String ALPHABET = "abc";
+
+    private static final String[] CONSTRAINTS =
+            {"a", "ab", "abc", "abca", "abc", "ab", "a", "b", "bc", "bca", "bcab", "bca", "bc",
+             "b", "c", "ca", "cab", "cabc", "cab", "ca"};
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(final Runnable command) {
+
+            command.run();
+        }
+    };
+
+    private static final int ENTRY_LENGTH = 9;
+
+    private static final long KEYSTROKE_INTERVAL_MICROS = 1000000 / 20;
+
+    private static final long SCAN_COST_MICROS = 30;
+
+    private final GenerationCounter mGeneration = new GenerationCounter();
+
+    private String mLatest;
+
+    private int mNextKeystroke;
+
+    private long mNow;
+
+    private long mScanned;
+
+    private long mStale;
+
+    private static void fill(final BasePersister persister, final String prefix) {
+
+        if (prefix.length() == ENTRY_LENGTH) {
+
+            persister.save("test", prefix);
+
+            return;
+        }
+
+        for (int i = 0; i < ALPHABET.length(); ++i) {
+
+            fill(persister, prefix + ALPHABET.charAt(i));
+        }
+    }
+
+    public void testWastedWork() throws InterruptedException {
+
+        // The same entries are replayed twice, so that ties are broken the same way
+
+        final InMemoryPersister persister = new InMemoryPersister();
+
+        fill(persister, "");
+
+        final Replay baseline = replay(persister, false);
+        final Replay cancellable = replay(persister, true);
+
+        final String figures =
+                CONSTRAINTS.length + " keystrokes, wasted entry scans: baseline " + baseline.wasted
+                        + " out of " + (baseline.wasted + baseline.useful) + " (" + baseline.stale
+                        + " after being superseded), with cancellation " + cancellable.wasted
+                        + " out of " + (cancellable.wasted + cancellable.useful) + " ("
+                        + cancellable.stale + " after being superseded, " + cancellable.canceled
+                        + " queries canceled)";
+
+        assertThat(cancellable.result).isEqualTo(baseline.result);
+        assertThat(cancellable.canceled).as(figures).isGreaterThan(0);
+        assertThat(cancellable.wasted).as(figures).isLessThan(baseline.wasted);
+        assertThat(cancellable.stale).as(figures).isLessThan(baseline.stale / 5);
+    }
+
+    private void deliverKeystrokes() {
+
+        while ((mNextKeystroke < CONSTRAINTS.length)
+                && (mNextKeystroke * KEYSTROKE_INTERVAL_MICROS <= mNow)) {
+
+            // Like the platform filter, only the latest pending constraint is kept
+
+            mLatest = CONSTRAINTS[mNextKeystroke++];
+            mGeneration.next();
+        }
+    }
+
+    private Replay replay(final InMemoryPersister persister, final boolean cancellation) throws
+            InterruptedException {
+
+        persister.setRanking(new Ranking() {
+
+            @Override
+            public double score(final EntryStats stats, final long now) {
+
+                ++mScanned;
+
+                if (mLatest != null) {
+
+                    // The constraint being scanned is already obsolete
+
+                    ++mStale;
+                }
+
+                mNow += SCAN_COST_MICROS;
+
+                deliverKeystrokes();
+
+                return stats.useCount;
+            }
+        }, 10);
+
+        final AsyncPersister asyncPersister = new AsyncPersister(persister, DIRECT_EXECUTOR, null);
+
+        final Replay replay = new Replay();
+
+        mLatest = null;
+        mNextKeystroke = 0;
+        mNow = 0;
+        mScanned = 0;
+        mStale = 0;
+
+        deliverKeystrokes();
+
+        while ((mLatest != null) || (mNextKeystroke < CONSTRAINTS.length)) {
+
+            if (mLatest == null) {
+
+                // Idle until the next keystroke
+
+                mNow = mNextKeystroke * KEYSTROKE_INTERVAL_MICROS;
+
+                deliverKeystrokes();
+            }
+
+            final String constraint = mLatest;
+            final CancellationToken token =
+                    cancellation ? mGeneration.current() : CancellationToken.NONE;
+            final long scanned = mScanned;
+
+            mLatest = null;
+
+            try {
+
+                final List<CharSequence> result =
+                        asyncPersister.loadAsync("test", constraint, 0, token, null).get();
+
+                if (mLatest != null) {
+
+                    // Superseded while running, so the result is thrown away
+
+                    replay.wasted += mScanned - scanned;
+
+                } else {
+
+                    replay.useful += mScanned - scanned;
+                    replay.result = result;
+                }
+
+            } catch (final ExecutionException e) {
+
+                assertThat(e.getCause()).isInstanceOf(CancellationException.class);
+
+                replay.wasted += mScanned - scanned;
+
+                ++replay.canceled;
+            }
+        }
+
+        replay.stale = mStale;
+
+        return replay;
+    }
+
+    private static class Replay {
+
+        public int canceled;
+
+        public List<CharSequence> result;
+
+        public long stale;
+
+        public long useful;
+
+        public long wasted;
+    }
+}
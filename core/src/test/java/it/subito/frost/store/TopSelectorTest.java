@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TopSelectorTest extends TestCase {
+
+    private static final long NOW = 1000000000L;
+
+    private final Ranking mRanking = new FrecencyRanking(1000);
+
+    private ArrayList<String> mEntries;
+
+    private ArrayList<EntryStats> mStats;
+
+    public void testFrecency() {
+
+        final FrecencyRanking ranking = new FrecencyRanking(1000);
+
+        assertThat(ranking.score(new EntryStats(0, NOW, 4), NOW)).isEqualTo(4.0);
+        assertThat(ranking.score(new EntryStats(0, NOW - 2000, 4), NOW)).isEqualTo(1.0);
+    }
+
+    public void testMatchesFullSort() {
+
+        final ArrayList<Integer> indexes = new ArrayList<Integer>();
+
+        for (int i = 0; i < mEntries.size(); ++i) {
+
+            indexes.add(i);
+        }
+
+        Collections.sort(indexes, new Comparator<Integer>() {
+
+            @Override
+            public int compare(final Integer lhs, final Integer rhs) {
+
+                final EntryStats lhsStats = mStats.get(lhs);
+                final EntryStats rhsStats = mStats.get(rhs);
+
+                final int byScore = Double.compare(mRanking.score(rhsStats, NOW),
+                                                   mRanking.score(lhsStats, NOW));
+
+                if (byScore != 0) {
+
+                    return byScore;
+                }
+
+                if (lhsStats.lastUsed != rhsStats.lastUsed) {
+
+                    return (lhsStats.lastUsed > rhsStats.lastUsed) ? -1 : 1;
+                }
+
+                return mEntries.get(lhs).compareTo(mEntries.get(rhs));
+            }
+        });
+
+        for (final int maxResults : new int[]{1, 5, 20, 0}) {
+
+            final TopSelector selector = new TopSelector(mRanking, maxResults, NOW);
+
+            for (int i = 0; i < mEntries.size(); ++i) {
+
+                selector.offer(mEntries.get(i), mStats.get(i));
+            }
+
+            final int count = (maxResults > 0) ? maxResults : mEntries.size();
+            final List<CharSequence> expected = new ArrayList<CharSequence>();
+
+            for (int i = 0; i < count; ++i) {
+
+                expected.add(mEntries.get(indexes.get(i)));
+            }
+
+            assertThat(selector.toList()).isEqualTo(expected);
+        }
+    }
+
+    public void testUnknownStats() {
+
+        final TopSelector selector = new TopSelector(mRanking, 2, NOW);
+
+        selector.offer("bbb", null);
+        selector.offer("aaa", null);
+        selector.offer("ccc", new EntryStats(NOW));
+
+        assertThat(selector.toList()).containsExactly("ccc", "aaa");
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        final Random random = new Random(42);
+
+        mEntries = new ArrayList<String>();
+        mStats = new ArrayList<EntryStats>();
+
+        for (int i = 0; i < 200; ++i) {
+
+            mEntries.add("entry" + i);
+            mStats.add(new EntryStats(0, NOW - random.nextInt(5) * 500, 1 + random.nextInt(4)));
+        }
+    }
+}
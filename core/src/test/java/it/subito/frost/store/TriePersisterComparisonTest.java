@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Compares memory usage and load latency of {@link TriePersister} and {@link InMemoryPersister}
+ * on a synthetic history of e-mail addresses.
+ */
+public class TriePersisterComparisonTest extends TestCase {
+
+    private static final String[] DOMAINS =
+            {"@gmail.com", "@hotmail.it", "@libero.it", "@subito.it", "@yahoo.it"};
+
+    private static final int HISTORY_SIZE = 100000;
+
+    private static final String[] NAMES =
+            {"alessandro", "andrea", "chiara", "francesca", "giulia", "giuseppe", "luca", "marco",
+             "maria", "mario", "paolo", "roberto", "sara", "stefano", "valentina"};
+
+    private static final String[] SURNAMES =
+            {"bianchi", "colombo", "esposito", "ferrari", "gallo", "greco", "marino", "ricci",
+             "romano", "rossi", "russo", "verdi"};
+
+    private ArrayList<String> mHistory;
+
+    private static long usedMemory() {
+
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; ++i) {
+
+            runtime.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public void testLoadLatency() {
+
+        final BasePersister inMemory = fill(new InMemoryPersister());
+        final BasePersister trie = fill(new TriePersister());
+
+        final String[] constraints = {"m", "ma", "mar", "mario.", "mario.rossi", "mario.rossi1"};
+
+        for (final String constraint : constraints) {
+
+            final long inMemoryTime = loadTime(inMemory, constraint);
+            final long trieTime = loadTime(trie, constraint);
+
+            assertThat(trie.load("test", constraint))
+                    .as("load(\"" + constraint + "\"): in-memory " + inMemoryTime + "us, trie "
+                                + trieTime + "us")
+                    .isEqualTo(inMemory.load("test", constraint));
+        }
+    }
+
+    public void testMemoryUsage() {
+
+        final long baseline = usedMemory();
+
+        BasePersister persister = fill(new InMemoryPersister());
+
+        final long inMemory = usedMemory() - baseline;
+
+        assertThat(persister.getCount("test")).isEqualTo(mHistory.size());
+
+        //noinspection UnusedAssignment
+        persister = null;
+
+        final long trieBaseline = usedMemory();
+
+        persister = fill(new TriePersister());
+
+        final long trie = usedMemory() - trieBaseline;
+
+        assertThat(persister.getCount("test"))
+                .as(mHistory.size() + " entries: in-memory " + (inMemory / 1024) + "KB, trie "
+                            + (trie / 1024) + "KB")
+                .isEqualTo(mHistory.size());
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        final Random random = new Random(117);
+
+        final HashSet<String> history = new HashSet<String>(HISTORY_SIZE);
+
+        while (history.size() < HISTORY_SIZE) {
+
+            history.add(NAMES[random.nextInt(NAMES.length)] + "." + SURNAMES[random
+                    .nextInt(SURNAMES.length)] + random.nextInt(10000) + DOMAINS[random
+                    .nextInt(DOMAINS.length)]);
+        }
+
+        mHistory = new ArrayList<String>(history);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        mHistory = null;
+
+        super.tearDown();
+    }
+
+    private BasePersister fill(final BasePersister persister) {
+
+        for (final String entry : mHistory) {
+
+            // Make the persister allocate its own copy of the text
+
+            persister.save("test", new StringBuilder(entry));
+        }
+
+        return persister;
+    }
+
+    private long loadTime(final BasePersister persister, final String constraint) {
+
+        final int iterations = 20;
+
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; ++i) {
+
+            persister.load("test", constraint);
+        }
+
+        return (System.nanoTime() - start) / iterations / 1000;
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost;
+
+import android.content.Context;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.Debug;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.SimpleCursorAdapter;
+import android.widget.SimpleCursorAdapter.CursorToStringConverter;
+import android.widget.TextView;
+
+import com.google.android.apps.common.testing.testrunner.InstrumentationRegistry;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Compares the bind cost and the allocations per dropdown row of the {@link FrostAdapter} against
+ * the previous path, wrapping each result list into a cursor fed to a {@link SimpleCursorAdapter}.
+ */
+public class FrostAdapterTest extends TestCase {
+
+    private static final int ROUNDS = 1000;
+
+    private static final int ROWS = 10;
+
+    private static final String TAG = "FrostAdapterBenchmark";
+
+    private static final int WARMUP_ROUNDS = 100;
+
+    private List<CharSequence> mItems;
+
+    private ViewGroup mParent;
+
+    public void testBind() {
+
+        final FrostAdapter adapter = newFrostAdapter();
+        adapter.setItems(mItems);
+
+        assertThat(adapter.getCount()).isEqualTo(ROWS);
+
+        final View view = adapter.getView(0, null, mParent);
+
+        assertThat(((TextView) view).getText().toString()).isEqualTo("user0@example.com");
+        assertThat(adapter.getView(1, view, mParent)).isSameAs(view);
+        assertThat(((TextView) view).getText().toString()).isEqualTo("user1@example.com");
+        assertThat(adapter.getFilter().convertResultToString(adapter.getItem(2)))
+                .isEqualTo("user2@example.com");
+    }
+
+    public void testBindBenchmark() {
+
+        final FrostAdapter frostAdapter = newFrostAdapter();
+        final SimpleCursorAdapter cursorAdapter = newCursorAdapter();
+
+        final View[] frostViews = new View[ROWS];
+        final View[] cursorViews = new View[ROWS];
+
+        // Warm up both paths, so that the row views are inflated and recycled afterwards
+
+        for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+
+            bindFrost(frostAdapter, frostViews);
+            bindCursor(cursorAdapter, cursorViews);
+        }
+
+        final long frostStart = System.nanoTime();
+
+        for (int i = 0; i < ROUNDS; ++i) {
+
+            bindFrost(frostAdapter, frostViews);
+        }
+
+        final long frostTime = System.nanoTime() - frostStart;
+
+        final long cursorStart = System.nanoTime();
+
+        for (int i = 0; i < ROUNDS; ++i) {
+
+            bindCursor(cursorAdapter, cursorViews);
+        }
+
+        final long cursorTime = System.nanoTime() - cursorStart;
+
+        //noinspection deprecation
+        Debug.startAllocCounting();
+
+        final int frostAllocations;
+        final int cursorAllocations;
+
+        try {
+
+            //noinspection deprecation
+            Debug.resetThreadAllocCount();
+
+            for (int i = 0; i < ROUNDS; ++i) {
+
+                bindFrost(frostAdapter, frostViews);
+            }
+
+            //noinspection deprecation
+            frostAllocations = Debug.getThreadAllocCount();
+
+            //noinspection deprecation
+            Debug.resetThreadAllocCount();
+
+            for (int i = 0; i < ROUNDS; ++i) {
+
+                bindCursor(cursorAdapter, cursorViews);
+            }
+
+            //noinspection deprecation
+            cursorAllocations = Debug.getThreadAllocCount();
+
+        } finally {
+
+            //noinspection deprecation
+            Debug.stopAllocCounting();
+        }
+
+        final int rows = ROUNDS * ROWS;
+
+        Log.i(TAG, "bind cost per row: adapter " + (frostTime / rows) + "ns, cursor "
+                + (cursorTime / rows) + "ns");
+        Log.i(TAG, "allocations per row: adapter " + ((float) frostAllocations / rows)
+                + ", cursor " + ((float) cursorAllocations / rows));
+
+        assertThat(frostAllocations).isLessThan(cursorAllocations);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mItems = new ArrayList<CharSequence>();
+
+        for (int i = 0; i < ROWS; ++i) {
+
+            mItems.add("user" + i + "@example.com");
+        }
+
+        mParent = new FrameLayout(getContext());
+    }
+
+    private void bindCursor(final SimpleCursorAdapter adapter, final View[] views) {
+
+        // A new cursor was created for every query result
+
+        adapter.changeCursor(new ListCursor(mItems));
+
+        final int count = adapter.getCount();
+
+        for (int i = 0; i < count; ++i) {
+
+            views[i] = adapter.getView(i, views[i], mParent);
+        }
+    }
+
+    private void bindFrost(final FrostAdapter adapter, final View[] views) {
+
+        adapter.setItems(mItems);
+
+        final int count = adapter.getCount();
+
+        for (int i = 0; i < count; ++i) {
+
+            views[i] = adapter.getView(i, views[i], mParent);
+        }
+    }
+
+    private Context getContext() {
+
+        return InstrumentationRegistry.getInstance().getTargetContext();
+    }
+
+    private SimpleCursorAdapter newCursorAdapter() {
+
+        //noinspection deprecation
+        final SimpleCursorAdapter adapter =
+                new SimpleCursorAdapter(getContext(), android.R.layout.simple_dropdown_item_1line,
+                                        new ListCursor(), new String[]{ListCursor.TEXT_COLUMN_NAME},
+                                        new int[]{android.R.id.text1});
+
+        adapter.setCursorToStringConverter(new CursorToStringConverter() {
+
+            @Override
+            public CharSequence convertToString(final Cursor cursor) {
+
+                return cursor.getString(ListCursor.TEXT_COLUMN_INDEX);
+            }
+        });
+
+        return adapter;
+    }
+
+    private FrostAdapter newFrostAdapter() {
+
+        return new FrostAdapter(getContext(), android.R.layout.simple_dropdown_item_1line,
+                                android.R.id.text1);
+    }
+
+    /**
+     * Copy of the cursor previously used to feed the suggestions to the adapter.
+     */
+    private static class ListCursor extends AbstractCursor {
+
+        public static final int ID_COLUMN_INDEX = 0;
+
+        public static final String ID_COLUMN_NAME = "_id";
+
+        public static final int TEXT_COLUMN_INDEX = 1;
+
+        public static final String TEXT_COLUMN_NAME = "text";
+
+        private static final String[] COLUMN_NAMES = new String[]{ID_COLUMN_NAME, TEXT_COLUMN_NAME};
+
+        private final List<? extends CharSequence> mItems;
+
+        public ListCursor() {
+
+            mItems = Collections.emptyList();
+        }
+
+        public ListCursor(final List<? extends CharSequence> items) {
+
+            mItems = items;
+        }
+
+        @Override
+        public int getCount() {
+
+            return mItems.size();
+        }
+
+        @Override
+        public String[] getColumnNames() {
+
+            return COLUMN_NAMES;
+        }
+
+        @Override
+        public String getString(final int i) {
+
+            final CharSequence value = mItems.get(getPosition());
+
+            if (value != null) {
+
+                final String text = value.toString();
+
+                if (i == ID_COLUMN_INDEX) {
+
+                    return Integer.toString(text.hashCode());
+                }
+
+                return text;
+            }
+
+            return null;
+        }
+
+        @Override
+        public short getShort(final int i) {
+
+            final String text = getString(i);
+
+            if (!TextUtils.isEmpty(text)) {
+
+                if (i == ID_COLUMN_INDEX) {
+
+                    return (short) text.hashCode();
+                }
+
+                try {
+
+                    return Short.parseShort(text);
+
+                } catch (final NumberFormatException ignored) {
+
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public int getInt(final int i) {
+
+            final String text = getString(i);
+
+            if (!TextUtils.isEmpty(text)) {
+
+                if (i == ID_COLUMN_INDEX) {
+
+                    return text.hashCode();
+                }
+
+                try {
+
+                    return Integer.parseInt(text);
+
+                } catch (final NumberFormatException ignored) {
+
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public long getLong(final int i) {
+
+            final String text = getString(i);
+
+            if (!TextUtils.isEmpty(text)) {
+
+                if (i == ID_COLUMN_INDEX) {
+
+                    return text.hashCode();
+                }
+
+                try {
+
+                    return Long.parseLong(text);
+
+                } catch (final NumberFormatException ignored) {
+
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public float getFloat(final int i) {
+
+            final String text = getString(i);
+
+            if (!TextUtils.isEmpty(text)) {
+
+                if (i == ID_COLUMN_INDEX) {
+
+                    return text.hashCode();
+                }
+
+                try {
+
+                    return Float.parseFloat(text);
+
+                } catch (final NumberFormatException ignored) {
+
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public double getDouble(final int i) {
+
+            final String text = getString(i);
+
+            if (!TextUtils.isEmpty(text)) {
+
+                if (i == ID_COLUMN_INDEX) {
+
+                    return text.hashCode();
+                }
+
+                try {
+
+                    return Double.parseDouble(text);
+
+                } catch (final NumberFormatException ignored) {
+
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public boolean isNull(final int i) {
+
+            return (getString(i) == null);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.database.DataSetObserver;
+import android.os.Looper;
+
+import com.google.android.apps.common.testing.testrunner.InstrumentationRegistry;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import it.subito.frost.store.InMemoryPersister;
+import it.subito.frost.store.Persister;
+import it.subito.frost.store.PersisterContext;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class FrostTextViewTest extends TestCase {
+
+    private Instrumentation mInstrumentation;
+
+    private FrostTextView mTextView;
+
+    public void testAndroidContext() throws InterruptedException {
+
+        final AndroidPersister persister = new AndroidPersister();
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+
+            @Override
+            public void run() {
+
+                mTextView.setPersister(persister);
+            }
+        });
+
+        // Persisters implementing the Android interface get the Android context
+
+        assertThat(persister.mLatch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(persister.mContext).isSameAs(mTextView.getContext());
+    }
+
+    public void testRefreshFromBackgroundSave() throws InterruptedException {
+
+        final InMemoryPersister persister = new InMemoryPersister();
+        final List<Boolean> refreshes = Collections.synchronizedList(new ArrayList<Boolean>());
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+
+            @Override
+            public void run() {
+
+                mTextView.setPersister(persister);
+                mTextView.getAdapter().registerDataSetObserver(new DataSetObserver() {
+
+                    @Override
+                    public void onChanged() {
+
+                        refreshes.add(Looper.myLooper() == Looper.getMainLooper());
+                    }
+                });
+            }
+        });
+
+        // The persister notifies the change in the saving thread
+
+        final Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                persister.save(FrostTextView.DEFAULT_SAVEKEY, "aaa");
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        mInstrumentation.waitForIdleSync();
+
+        assertThat(refreshes).containsExactly(true);
+    }
+
+    public void testSetUpInBackground() throws InterruptedException {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] mainThread = new boolean[1];
+
+        final InMemoryPersister persister = new InMemoryPersister() {
+
+            @Override
+            public void setContext(final PersisterContext context) {
+
+                mainThread[0] = (Looper.myLooper() == Looper.getMainLooper());
+
+                latch.countDown();
+            }
+        };
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+
+            @Override
+            public void run() {
+
+                mTextView.setPersister(persister);
+            }
+        });
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(mainThread[0]).isFalse();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mInstrumentation = InstrumentationRegistry.getInstance();
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+
+            @Override
+            public void run() {
+
+                mTextView = new FrostTextView(mInstrumentation.getTargetContext());
+            }
+        });
+    }
+
+    private static class AndroidPersister extends InMemoryPersister implements Persister {
+
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+
+        private volatile Context mContext;
+
+        @Override
+        public void setContext(final Context context) {
+
+            mContext = context;
+
+            mLatch.countDown();
+        }
+    }
+}
@@ -15,11 +15,565 @@
  */
 package it.subito.frost.store;
 
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.android.apps.common.testing.testrunner.InstrumentationRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import it.subito.frost.store.BasePersister.Batch;
+import it.subito.frost.store.BasePersister.KeyedDataObserver;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
 public class SharedPreferencesPersisterTest extends InMemoryPersisterTest {
 
+    public void testCache() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.setCacheSize(2);
+
+        persister.clear();
+        persister.save("test", "aaa");
+        persister.save("test2", "aab");
+
+        assertThat(persister.load("test", "a")).containsExactly("aaa");
+        assertThat(persister.load("test", "a")).containsExactly("aaa");
+        assertThat(persister.load("test2", "a")).containsExactly("aab");
+
+        assertThat(persister.getCacheHitCount()).isEqualTo(1);
+        assertThat(persister.getCacheMissCount()).isEqualTo(2);
+
+        persister.save("test2", "aac");
+
+        assertThat(persister.load("test", "a")).containsExactly("aaa");
+        assertThat(persister.load("test2", "a")).containsExactly("aab", "aac");
+
+        assertThat(persister.getCacheHitCount()).isEqualTo(2);
+        assertThat(persister.getCacheMissCount()).isEqualTo(3);
+
+        persister.load("test", "aa");
+        persister.load("test2", "aa");
+
+        assertThat(persister.load("test", "a")).containsExactly("aaa");
+
+        assertThat(persister.getCacheMissCount()).isEqualTo(6);
+    }
+
+    public void testCacheMetrics() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+
+        final HistogramMetrics metrics = new HistogramMetrics();
+
+        final BasePersister instrumented = new InstrumentedPersister(persister, metrics);
+        instrumented.save("test", "aaa");
+        instrumented.load("test", "a");
+        instrumented.load("test", "a");
+        instrumented.load("test", "aa");
+
+        assertThat(metrics.getCacheHitCount()).isEqualTo(1);
+        assertThat(metrics.getCacheMissCount()).isEqualTo(2);
+        assertThat(metrics.getCount(PersisterMetrics.OPERATION_LOAD)).isEqualTo(3);
+        assertThat(metrics.getTotalSize(PersisterMetrics.OPERATION_LOAD)).isEqualTo(3);
+
+        instrumented.clear();
+    }
+
+    public void testCapacityStats() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+        persister.setCapacity(3, new LfuEvictionPolicy());
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+        persister.save("test", "aaa");
+        persister.save("test", "aaa");
+
+        final SharedPreferencesPersister other = new SharedPreferencesPersister();
+        other.setContext(getContext());
+        other.setCapacity(3, new LfuEvictionPolicy());
+
+        other.save("test", "ddd");
+
+        assertThat(other.load("test", null)).contains("aaa", "ddd").hasSize(3);
+        assertThat(persister.load("test", null)).contains("aaa", "ddd").hasSize(3);
+
+        other.remove("test");
+
+        InstrumentationRegistry.getInstance().waitForIdleSync();
+
+        assertThat(persister.load("test", null)).isEmpty();
+        assertThat(persister.load(SharedPreferencesPersister.statsKey("test"), null)).isEmpty();
+    }
+
+    public void testCorruptedEncoding() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+        persister.setStorageFormat(SharedPreferencesPersister.FORMAT_ENCODED);
+
+        final String corrupted = FrontCodedEntryCodec.MARKER + "2:0:0,3:aaa0,x:b";
+
+        persister.getPreferences("test").edit().putString("test", corrupted).commit();
+
+        try {
+
+            persister.load("test", null);
+
+            fail("the decoding failure must be reported");
+
+        } catch (final IllegalStateException ignored) {
+
+        }
+
+        try {
+
+            persister.save("test", "ccc");
+
+            fail("the decoding failure must be reported");
+
+        } catch (final IllegalStateException ignored) {
+
+        }
+
+        // The unreadable history is never overwritten
+
+        assertThat(persister.getPreferences("test").getString("test", null)).isEqualTo(corrupted);
+
+        persister.clear();
+        persister.setStorageFormat(SharedPreferencesPersister.FORMAT_STRING_SET);
+    }
+
+    public void testFilterCancellation() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+
+        final Batch batch = persister.edit();
+
+        for (int i = 0; i < 1000; ++i) {
+
+            batch.save("test", "aaa" + i);
+        }
+
+        batch.commit();
+
+        final int[] checks = new int[1];
+
+        try {
+
+            // Let the first check pass, so that the query is canceled while scanning the entries
+
+            persister.load("test", "aaa", 0, new CancellationToken() {
+
+                @Override
+                public boolean isCanceled() {
+
+                    return (++checks[0] > 1);
+                }
+            });
+
+            fail("the query must be canceled");
+
+        } catch (final CancellationException ignored) {
+
+        }
+
+        assertThat(checks[0]).isEqualTo(2);
+        assertThat(persister.load("test", "aaa")).hasSize(1000);
+
+        persister.clear();
+    }
+
+    public void testKeyedObserverExternal() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+
+        final SharedPreferencesPersister reader = new SharedPreferencesPersister();
+        reader.setContext(getContext());
+
+        // The preferences listeners are notified on the main thread, after the write
+
+        final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+        final List<DataChange> unknown = Collections.synchronizedList(new ArrayList<DataChange>());
+        final List<DataChange> known = Collections.synchronizedList(new ArrayList<DataChange>());
+
+        final KeyedDataObserver observer = new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                fail("the keyed method must be called instead");
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                keys.add(saveKey);
+                (change.isUnknown() ? unknown : known).add(change);
+            }
+        };
+
+        persister.setObserver(observer);
+        reader.setObserver(observer);
+
+        persister.save("test", "ddd");
+
+        InstrumentationRegistry.getInstance().waitForIdleSync();
+
+        // The reader only knows the modified key, while the writer knows the exact change and
+        // does not report its own write again
+
+        assertThat(keys).containsExactly("test", "test");
+        assertThat(unknown).hasSize(1);
+        assertThat(known).hasSize(1);
+        assertThat(known.get(0).getAdded()).containsExactly("ddd");
+
+        keys.clear();
+        unknown.clear();
+        known.clear();
+
+        persister.remove("test");
+
+        InstrumentationRegistry.getInstance().waitForIdleSync();
+
+        assertThat(keys).containsExactly("test", "test");
+        assertThat(unknown).hasSize(1);
+        assertThat(known).hasSize(1);
+        assertThat(known.get(0).getRemoved()).containsOnly("aaa", "aaaa", "bbb", "ccc", "ddd");
+    }
+
+    public void testNullKey() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+        persister.save("test", "aaa");
+
+        final List<String> keys = new ArrayList<String>();
+        final List<DataChange> changes = new ArrayList<DataChange>();
+
+        persister.setObserver(new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                fail("the keyed method must be called instead");
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                keys.add(saveKey);
+                changes.add(change);
+            }
+        });
+
+        // Sent by Android 11 and later after Editor.clear()
+
+        persister.onSharedPreferenceChanged(persister.getPreferences("test"), null);
+
+        assertThat(keys).containsExactly((String) null);
+        assertThat(changes.get(0).isUnknown()).isTrue();
+        assertThat(persister.load("test", null)).containsExactly("aaa");
+    }
+
+    public void testOwnWrites() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+        persister.setCapacity(3, new LfuEvictionPolicy());
+
+        final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+
+        persister.setObserver(new KeyedDataObserver() {
+
+            @Override
+            public void onDataChanged() {
+
+                fail("the keyed method must be called instead");
+            }
+
+            @Override
+            public void onDataChanged(final String saveKey, final DataChange change) {
+
+                keys.add(saveKey);
+            }
+        });
+
+        // Repeated writes of the same keys, statistics included, are all recognized even if
+        // notified later
+
+        persister.save("test", "aaa");
+        persister.save("test", "aaa");
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+
+        InstrumentationRegistry.getInstance().waitForIdleSync();
+
+        assertThat(keys).containsExactly("test", "test", "test");
+
+        persister.save("test", "ddd");
+
+        assertThat(persister.load("test", null)).contains("aaa", "ddd").hasSize(3);
+    }
+
+    public void testSharding() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+
+        persister.save("address", "via Roma 1");
+        persister.save("zip", "20100");
+
+        final SharedPreferences single = persister.getPreferences("zip");
+
+        persister.setSharding(SharedPreferencesPersister.SHARD_PER_KEY);
+
+        assertThat(persister.getPreferences("zip")).isNotSameAs(single);
+        assertThat(persister.getPreferences("zip")).isNotSameAs(
+                persister.getPreferences("address"));
+        assertThat(single.contains("zip")).isFalse();
+
+        persister.save("zip", "20121");
+
+        assertThat(persister.load("zip", null)).containsExactly("20100", "20121");
+        assertThat(persister.load("address", null)).containsExactly("via Roma 1");
+
+        // A new instance finds the keys already moved
+
+        final SharedPreferencesPersister other = new SharedPreferencesPersister();
+        other.setContext(getContext());
+        other.setSharding(SharedPreferencesPersister.SHARD_PER_KEY);
+
+        assertThat(other.load("zip", null)).containsExactly("20100", "20121");
+
+        other.setSharding(4);
+
+        assertThat(other.load("zip", null)).containsExactly("20100", "20121");
+        assertThat(other.load("address", null)).containsExactly("via Roma 1");
+
+        other.setSharding(SharedPreferencesPersister.NO_SHARDING);
+
+        assertThat(single.contains("zip")).isTrue();
+
+        other.clear();
+
+        assertThat(other.getCount("zip")).isEqualTo(0);
+        assertThat(other.getCount("address")).isEqualTo(0);
+    }
+
+    public void testShardingBytesWritten() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+
+        for (int i = 0; i < 1000; ++i) {
+
+            persister.save("address", "via Giuseppe Garibaldi " + i + ", Milano");
+        }
+
+        persister.save("zip", "20100");
+
+        final long single = size(persister.getPreferences("zip"));
+
+        persister.setSharding(SharedPreferencesPersister.SHARD_PER_KEY);
+
+        final long sharded = size(persister.getPreferences("zip"));
+
+        Log.i("SharedPreferencesSharding",
+              "bytes rewritten per zip code save: single file " + single + ", sharded " + sharded);
+
+        assertThat(sharded * 100).isLessThan(single);
+
+        persister.clear();
+        persister.setSharding(SharedPreferencesPersister.NO_SHARDING);
+    }
+
+    public void testStatsUpdate() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+        persister.setCapacity(3, new LfuEvictionPolicy());
+
+        // Only the modified statistics are encoded again, so each write must still store the
+        // statistics of all the entries
+
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ccc");
+        persister.save("test", "aaa");
+        persister.save("test", "aaa");
+        persister.save("test", "bbb");
+        persister.save("test", "ddd");
+        persister.remove("test", "bbb");
+        persister.save("test", "eee");
+
+        final ArrayList<String> counts = new ArrayList<String>();
+
+        for (final CharSequence stats : persister.load(SharedPreferencesPersister.statsKey("test"),
+                                                       null)) {
+
+            final String string = stats.toString();
+
+            counts.add(string.substring(0, string.indexOf(':')) + ' '
+                               + string.substring(string.lastIndexOf(':') + 1));
+        }
+
+        assertThat(counts).containsOnly("3 aaa", "1 ddd", "1 eee");
+    }
+
+    public void testStorageFormat() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+
+        for (int i = 0; i < 100; ++i) {
+
+            persister.save("address", "via Nazionale " + i + ", Roma");
+        }
+
+        persister.save("zip", "00184");
+
+        persister.setStorageFormat(SharedPreferencesPersister.FORMAT_ENCODED);
+
+        final SharedPreferencesPersister reader = new SharedPreferencesPersister();
+        reader.setContext(getContext());
+        reader.setStorageFormat(SharedPreferencesPersister.FORMAT_ENCODED);
+
+        assertThat(reader.getCount("address")).isEqualTo(100);
+
+        persister.save("address", "via Nazionale 100, Roma");
+
+        assertThat(persister.getPreferences("address").getString("address", null)).startsWith(
+                FrontCodedEntryCodec.MARKER);
+
+        final SharedPreferencesPersister encoded = new SharedPreferencesPersister();
+        encoded.setContext(getContext());
+        encoded.setStorageFormat(SharedPreferencesPersister.FORMAT_ENCODED);
+
+        assertThat(encoded.load("address", "via Nazionale 10")).containsExactly(
+                "via Nazionale 10, Roma", "via Nazionale 100, Roma");
+        assertThat(encoded.load("address", "via Nazionale 9", 3)).containsExactly(
+                "via Nazionale 9, Roma", "via Nazionale 90, Roma", "via Nazionale 91, Roma");
+        assertThat(encoded.load("zip", "00")).containsExactly("00184");
+
+        final SharedPreferencesPersister legacy = new SharedPreferencesPersister();
+        legacy.setContext(getContext());
+
+        assertThat(legacy.getCount("address")).isEqualTo(101);
+        assertThat(legacy.load("zip", null)).containsExactly("00184");
+
+        persister.clear();
+    }
+
+    public void testWriteBehind() {
+
+        final SharedPreferencesPersister persister = new SharedPreferencesPersister();
+        persister.setContext(getContext());
+        persister.clear();
+        persister.setWriteBehindDelay(60000);
+
+        final SharedPreferencesPersister reader = new SharedPreferencesPersister();
+        reader.setContext(getContext());
+
+        for (int i = 0; i < 10; ++i) {
+
+            persister.save("test" + i, "aaa");
+            persister.save("test" + i, "bbb");
+        }
+
+        persister.remove("test0", "aaa");
+        persister.remove("test1");
+
+        assertThat(persister.load("test0", null)).containsExactly("bbb");
+        assertThat(persister.load("test1", null)).isEmpty();
+        assertThat(persister.load("test2", null)).containsExactly("aaa", "bbb");
+        assertThat(reader.load("test2", null)).isEmpty();
+
+        persister.flush();
+
+        // Let the reader be notified of the written keys
+
+        InstrumentationRegistry.getInstance().waitForIdleSync();
+
+        assertThat(reader.load("test0", null)).containsExactly("bbb");
+        assertThat(reader.load("test1", null)).isEmpty();
+        assertThat(reader.load("test2", null)).containsExactly("aaa", "bbb");
+
+        persister.clear();
+
+        assertThat(persister.getCount("test2")).isEqualTo(0);
+        assertThat(reader.getCount("test2")).isEqualTo(2);
+
+        persister.setWriteBehindDelay(SharedPreferencesPersister.NO_WRITE_BEHIND);
+
+        InstrumentationRegistry.getInstance().waitForIdleSync();
+
+        assertThat(reader.getCount("test2")).isEqualTo(0);
+    }
+
     @Override
-    protected Persister buildPersister() {
+    protected ExtendedPersister buildPersister() {
 
         return new SharedPreferencesPersister();
     }
-}
\ No newline at end of file
+
+    @Override
+    protected PersisterContext getContext() {
+
+        return new AndroidPersisterContext(
+                InstrumentationRegistry.getInstance().getTargetContext());
+    }
+
+    /**
+     * Estimates the number of bytes written when the specified preferences are saved.
+     */
+    private long size(final SharedPreferences preferences) {
+
+        long size = 0;
+
+        for (final Entry<String, ?> entry : preferences.getAll().entrySet()) {
+
+            size += entry.getKey().length();
+
+            final Object value = entry.getValue();
+
+            if (value instanceof Set) {
+
+                for (final Object string : (Set<?>) value) {
+
+                    size += string.toString().length();
+                }
+
+            } else {
+
+                size += String.valueOf(value).length();
+            }
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Implementation of a {@link Filterable} adapter binding a list of suggestions directly to the
+ * dropdown rows.
+ * <br/>
+ * The row views are recycled, and the text view inside each row is looked up only once when the
+ * row is inflated.
+ */
+public class FrostAdapter extends BaseAdapter implements Filterable {
+
+    private final LayoutInflater mInflater;
+
+    private final int mResource;
+
+    private final int mTextViewId;
+
+    private Filter mFilter;
+
+    private volatile List<? extends CharSequence> mItems = Collections.emptyList();
+
+    private QueryProvider mQueryProvider;
+
+    /**
+     * Creates a new adapter.
+     *
+     * @param context    The context.
+     * @param resource   The resource ID of the layout used for each row.
+     * @param textViewId The ID of the text view inside the row layout, bound to the suggestion
+     *                   text. When the whole row is a text view its own ID can be passed.
+     */
+    public FrostAdapter(final Context context, final int resource, final int textViewId) {
+
+        if (context == null) {
+
+            throw new IllegalArgumentException("the context cannot be null");
+        }
+
+        mInflater = LayoutInflater.from(context);
+        mResource = resource;
+        mTextViewId = textViewId;
+    }
+
+    @Override
+    public int getCount() {
+
+        return mItems.size();
+    }
+
+    @Override
+    public Filter getFilter() {
+
+        if (mFilter == null) {
+
+            mFilter = new QueryFilter();
+        }
+
+        return mFilter;
+    }
+
+    @Override
+    public CharSequence getItem(final int position) {
+
+        return mItems.get(position);
+    }
+
+    @Override
+    public long getItemId(final int position) {
+
+        return position;
+    }
+
+    /**
+     * Returns the list of suggestions currently bound to the adapter.
+     *
+     * @return The list of suggestions.
+     */
+    public List<? extends CharSequence> getItems() {
+
+        return mItems;
+    }
+
+    /**
+     * Sets the list of suggestions bound to the adapter.
+     * <br/>
+     * The list is not copied, so it must not be modified afterwards.
+     *
+     * @param items The list of suggestions.
+     */
+    public void setItems(final List<? extends CharSequence> items) {
+
+        if (items == null) {
+
+            throw new IllegalArgumentException("the list of items cannot be null");
+        }
+
+        mItems = items;
+
+        if (!items.isEmpty()) {
+
+            notifyDataSetChanged();
+
+        } else {
+
+            notifyDataSetInvalidated();
+        }
+    }
+
+    /**
+     * Returns the query provider used to filter the suggestions.
+     *
+     * @return The query provider or null.
+     */
+    public QueryProvider getQueryProvider() {
+
+        return mQueryProvider;
+    }
+
+    /**
+     * Sets the query provider used to filter the suggestions.
+     *
+     * @param provider The query provider or null.
+     */
+    public void setQueryProvider(final QueryProvider provider) {
+
+        mQueryProvider = provider;
+    }
+
+    @Override
+    public View getView(final int position, final View convertView, final ViewGroup parent) {
+
+        final View view;
+        final TextView textView;
+
+        if (convertView == null) {
+
+            view = mInflater.inflate(mResource, parent, false);
+            textView = (TextView) view.findViewById(mTextViewId);
+
+            view.setTag(textView);
+
+        } else {
+
+            view = convertView;
+            textView = (TextView) convertView.getTag();
+        }
+
+        textView.setText(mItems.get(position));
+
+        return view;
+    }
+
+    /**
+     * Runs the query returning the suggestions matching the specified constraint.
+     * <br/>
+     * The method is called in the filter background thread. If no query provider is set the
+     * current list of suggestions is returned.
+     *
+     * @param constraint The constraint.
+     * @return The list of suggestions.
+     * @throws CancellationException If the query has been given up.
+     */
+    public List<? extends CharSequence> runQueryOnBackgroundThread(final CharSequence constraint) {
+
+        final QueryProvider provider = mQueryProvider;
+
+        if (provider != null) {
+
+            return provider.runQuery(constraint);
+        }
+
+        return mItems;
+    }
+
+    /**
+     * Interface defining a provider of the suggestions matching a constraint.
+     */
+    public interface QueryProvider {
+
+        /**
+         * Returns the suggestions matching the specified constraint.
+         * <br/>
+         * The method is called in a background thread.
+         *
+         * @param constraint The constraint.
+         * @return The list of suggestions (MUST never be null).
+         * @throws CancellationException If the query has been given up.
+         */
+        List<? extends CharSequence> runQuery(CharSequence constraint);
+    }
+
+    private class QueryFilter extends Filter {
+
+        @Override
+        public CharSequence convertResultToString(final Object resultValue) {
+
+            return (CharSequence) resultValue;
+        }
+
+        @Override
+        protected FilterResults performFiltering(final CharSequence constraint) {
+
+            List<? extends CharSequence> items;
+
+            try {
+
+                items = runQueryOnBackgroundThread(constraint);
+
+            } catch (final CancellationException e) {
+
+                // Publishing the current items leaves the suggestions untouched until the newer
+                // query completes
+
+                items = mItems;
+            }
+
+            final FilterResults results = new FilterResults();
+            results.values = items;
+            results.count = items.size();
+
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(final CharSequence constraint, final FilterResults results) {
+
+            if ((results != null) && (results.values != mItems)) {
+
+                setItems((List<? extends CharSequence>) results.values);
+            }
+        }
+    }
+}
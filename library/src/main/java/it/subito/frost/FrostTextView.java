@@ -15,34 +15,51 @@
  */
 package it.subito.frost;
 
-import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.database.AbstractCursor;
-import android.database.Cursor;
-import android.os.Build.VERSION;
-import android.os.Build.VERSION_CODES;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.widget.BaseAdapter;
-import android.widget.FilterQueryProvider;
 import android.widget.Filterable;
 import android.widget.ListAdapter;
 import android.widget.MultiAutoCompleteTextView;
-import android.widget.SimpleCursorAdapter;
-import android.widget.SimpleCursorAdapter.CursorToStringConverter;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.WeakHashMap;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import it.subito.frost.FrostAdapter.QueryProvider;
+import it.subito.frost.store.AndroidPersisterContext;
+import it.subito.frost.store.AsyncPersister;
+import it.subito.frost.store.AsyncPersister.Callback;
+import it.subito.frost.store.BasePersister;
+import it.subito.frost.store.BasePersister.Batch;
+import it.subito.frost.store.BasePersister.DataObserver;
+import it.subito.frost.store.BasePersister.KeyedDataObserver;
+import it.subito.frost.store.CancellationToken;
+import it.subito.frost.store.DataChange;
+import it.subito.frost.store.EvictionPolicy;
+import it.subito.frost.store.FifoEvictionPolicy;
+import it.subito.frost.store.FrecencyRanking;
+import it.subito.frost.store.GenerationCounter;
+import it.subito.frost.store.LfuEvictionPolicy;
+import it.subito.frost.store.LruEvictionPolicy;
 import it.subito.frost.store.Persister;
-import it.subito.frost.store.Persister.DataObserver;
+import it.subito.frost.store.PersisterRegistry;
+import it.subito.frost.store.PersisterRegistry.Factory;
+import it.subito.frost.store.Persisters;
+import it.subito.frost.store.RecencyRanking;
 import it.subito.frost.store.SharedPreferencesPersister;
 
-public class FrostTextView extends MultiAutoCompleteTextView implements DataObserver {
+public class FrostTextView extends MultiAutoCompleteTextView implements KeyedDataObserver {
 
     public static final String DEFAULT_SAVEKEY = "default_frost";
 
@@ -50,14 +67,63 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
 
     private static final String DEFAULT_SEPARATORS = "";
 
+    private static final int EVICTION_POLICY_FIFO = 0;
+
+    private static final int EVICTION_POLICY_LFU = 2;
+
+    private static final int EVICTION_POLICY_LRU = 1;
+
+    private static final int RANKING_FRECENCY = 2;
+
+    private static final int RANKING_NONE = 0;
+
+    private static final int RANKING_RECENCY = 1;
+
+    private static final String TRACE_AUTO_RESTORE = "Frost.autoRestore";
+
+    private static final String TRACE_AUTO_SAVE = "Frost.autoSave";
+
+    private static final String TRACE_LOAD = "Frost.load";
+
+    private static final String TRACE_QUERY = "Frost.runQuery";
+
+    private static final String TRACE_REFRESH = "Frost.refresh";
+
+    private static final String TRACE_SAVE = "Frost.save";
+
+    private static final String TRACE_SAVE_ALL = "Frost.saveAll";
+
     private static final WeakHashMap<FrostTextView, Void> sViews =
             new WeakHashMap<FrostTextView, Void>();
 
+    private final GenerationCounter mGeneration = new GenerationCounter();
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+
+            refresh();
+        }
+    };
+
     private ListAdapter mAdapter;
 
+    private AsyncPersister mAsyncPersister;
+
     private boolean mAutoSave;
 
-    private Persister mPersister;
+    private Batch mBatch;
+
+    private volatile String mConstraint;
+
+    private Executor mExecutor = HandlerExecutor.getIoExecutor();
+
+    private volatile FilterRequest mFilterRequest;
+
+    private int mMaxSuggestions;
+
+    private BasePersister mPersister;
 
     private String mSaveKey;
 
@@ -113,69 +179,229 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
         return "";
     }
 
+    /**
+     * Creates a new instance running the operations of the specified persister through the
+     * specified executor. Since the view does not wait for the modifications, their failures are
+     * thrown again on the main thread.
+     */
+    private static AsyncPersister newAsyncPersister(final BasePersister persister,
+            final Executor executor) {
+
+        final AsyncPersister asyncPersister =
+                new AsyncPersister(persister, executor, HandlerExecutor.getMainExecutor());
+
+        asyncPersister.setErrorCallback(new Callback<Throwable>() {
+
+            @Override
+            public void onResult(final Throwable error) {
+
+                throw new IllegalStateException("the persister operation failed", error);
+            }
+        });
+
+        return asyncPersister;
+    }
+
+    private static EvictionPolicy newEvictionPolicy(final int evictionPolicy) {
+
+        switch (evictionPolicy) {
+
+            case EVICTION_POLICY_FIFO:
+
+                return new FifoEvictionPolicy();
+
+            case EVICTION_POLICY_LFU:
+
+                return new LfuEvictionPolicy();
+
+            default:
+
+                return new LruEvictionPolicy();
+        }
+    }
+
+    private static BasePersister newPersister(final String className, final int maxHistory,
+            final int evictionPolicy, final int ranking) {
+
+        final BasePersister persister;
+
+        try {
+
+            persister = (BasePersister) Class.forName(className).newInstance();
+
+        } catch (final Exception e) {
+
+            throw new IllegalArgumentException(e);
+        }
+
+        if (maxHistory > 0) {
+
+            Persisters.setCapacity(persister, maxHistory, newEvictionPolicy(evictionPolicy));
+        }
+
+        if (ranking != RANKING_NONE) {
+
+            Persisters.setRanking(persister, (ranking == RANKING_RECENCY) ? new RecencyRanking()
+                                                  : new FrecencyRanking(), 0);
+        }
+
+        return persister;
+    }
+
+    /**
+     * Sets the context of the specified persister, through the Android interface if implemented,
+     * or else through the platform independent one.
+     */
+    private static void setContext(final BasePersister persister, final Context context) {
+
+        if (persister instanceof Persister) {
+
+            ((Persister) persister).setContext(context);
+
+        } else {
+
+            Persisters.setContext(persister, new AndroidPersisterContext(context));
+        }
+    }
+
     /**
      * Saves the currently selected text in all the views into the autocomplete history.
+     * <p/>
+     * The texts of all the views sharing the same persister are saved in a single batch, which is
+     * committed in background.
      */
     public static void saveAll() {
 
+        final IdentityHashMap<BasePersister, Batch> batches =
+                new IdentityHashMap<BasePersister, Batch>();
+        final IdentityHashMap<Batch, AsyncPersister> commits =
+                new IdentityHashMap<Batch, AsyncPersister>();
+
         for (final FrostTextView textView : sViews.keySet()) {
 
-            textView.save();
+            final BasePersister persister = textView.mPersister;
+
+            Batch batch = batches.get(persister);
+
+            if (batch == null) {
+
+                batch = Persisters.edit(persister);
+                batches.put(persister, batch);
+                commits.put(batch, textView.mAsyncPersister);
+            }
+
+            textView.mBatch = batch;
+
+            try {
+
+                textView.save();
+
+            } finally {
+
+                textView.mBatch = null;
+            }
+        }
+
+        for (final Entry<Batch, AsyncPersister> entry : commits.entrySet()) {
+
+            final Batch batch = entry.getKey();
+
+            entry.getValue().runAsync(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    final boolean traced = FrostTrace.beginSection(TRACE_SAVE_ALL);
+
+                    try {
+
+                        batch.commit();
+
+                    } finally {
+
+                        FrostTrace.endSection(traced);
+                    }
+                }
+            });
         }
     }
 
     /**
      * Clears the history associated with this view.
+     * <br/>
+     * The history is cleared in background.
      */
     public void clearHistory() {
 
-        final Persister persister = mPersister;
-
-        persister.remove(mSaveKey);
-        persister.remove(autoSaveKey());
+        mAsyncPersister.commitAsync(
+                Persisters.edit(mPersister).remove(mSaveKey).remove(autoSaveKey()));
     }
 
     /**
      * Gets the persister associated with this view.
+     * <br/>
+     * Since the persister is set up in background, this method waits for the set up to complete,
+     * so that the returned instance can be used right away.
      *
      * @return The persister instance or null.
      */
-    public Persister getPersister() {
+    public BasePersister getPersister() {
+
+        final BasePersister persister = mPersister;
 
-        if (mPersister instanceof MockPersister) {
+        if (persister instanceof MockPersister) {
 
             return null;
         }
 
-        return mPersister;
+        AsyncPersister.awaitSetUp(persister);
+
+        return persister;
     }
 
     /**
      * Sets the persister associated with this view.
+     * <br/>
+     * Note that, by default, all the views with the same persister configuration share the same
+     * instance, obtained through the {@link PersisterRegistry}.
      *
      * @param persister The persister instance or null.
      */
-    public void setPersister(final Persister persister) {
+    public void setPersister(final BasePersister persister) {
 
-        mPersister = persister;
+        final BasePersister instance = (persister != null) ? persister : new MockPersister();
 
-        if (persister == null) {
+        setUp(instance, getContext());
 
-            mPersister = new MockPersister();
-        }
-
-        mPersister.setContext(getContext());
-        mPersister.setObserver(this);
+        bindPersister(instance);
     }
 
     @Override
     public void onDataChanged() {
 
-        refresh();
+        postRefresh();
+    }
+
+    @Override
+    public void onDataChanged(final String saveKey, final DataChange change) {
+
+        // Changes to other keys, including the auto saved text, cannot affect the suggestions
+
+        if ((saveKey != null) && !saveKey.equals(mSaveKey)) {
+
+            return;
+        }
+
+        if (change.affects(mConstraint)) {
+
+            postRefresh();
+        }
     }
 
     /**
      * Saves the currently selected text into the autocomplete history.
+     * <br/>
+     * The text is saved in background.
      */
     public void save() {
 
@@ -220,6 +446,36 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
         mAutoSave = autoSave;
     }
 
+    /**
+     * Sets the executor running the persister operations, so that the main thread never waits
+     * for the storage. By default a single background thread is shared by all the views.
+     * <br/>
+     * Note that the executor should run the operations one at a time and in the same order they
+     * are submitted.
+     *
+     * @param executor The executor instance.
+     */
+    public void setExecutor(final Executor executor) {
+
+        if (executor == null) {
+
+            throw new IllegalArgumentException("the executor cannot be null");
+        }
+
+        mExecutor = executor;
+        mAsyncPersister = newAsyncPersister(mPersister, executor);
+    }
+
+    /**
+     * Sets the maximum number of suggestions to load from the history.
+     *
+     * @param maxSuggestions The maximum number of suggestions (0 or less means no limit).
+     */
+    public void setMaxSuggestions(final int maxSuggestions) {
+
+        mMaxSuggestions = maxSuggestions;
+    }
+
     /**
      * Sets the key used to store the selected texts.
      *
@@ -227,6 +483,14 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
      */
     public void setSaveKey(final String saveKey) {
 
+        final BasePersister persister = mPersister;
+
+        if (persister != null) {
+
+            PersisterRegistry.removeObserver(persister, mSaveKey, this);
+            PersisterRegistry.addObserver(persister, saveKey, this);
+        }
+
         mSaveKey = saveKey;
 
         refresh();
@@ -272,13 +536,50 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
 
     /**
      * Called when a request to load all the data starting with the specified text is made.
+     * <br/>
+     * The method is called in a background thread and gives up as soon as the token is canceled.
      *
      * @param constraint The starting sequence.
+     * @param token      The token canceled when a newer request is made.
      * @return The list of entries (MUST never be null).
+     * @throws CancellationException If a newer request has been made in the meantime.
      */
-    protected List<CharSequence> onLoad(final CharSequence constraint) {
+    protected List<CharSequence> onLoad(final CharSequence constraint,
+            final CancellationToken token) {
+
+        final String saveKey = mSaveKey;
+
+        final boolean traced = FrostTrace.beginSection(TRACE_LOAD, saveKey);
+
+        try {
+
+            // Wait for the modifications requested in the meantime, since this method is already
+            // called in a background thread
+
+            return mAsyncPersister.loadAsync(saveKey, constraint, mMaxSuggestions, token,
+                                             null).get();
+
+        } catch (final InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            return Collections.emptyList();
+
+        } catch (final ExecutionException e) {
+
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof CancellationException) {
 
-        return mPersister.load(mSaveKey, constraint);
+                throw (CancellationException) cause;
+            }
+
+            throw new IllegalStateException(cause);
+
+        } finally {
+
+            FrostTrace.endSection(traced);
+        }
     }
 
     /**
@@ -292,7 +593,42 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
 
         if (!TextUtils.isEmpty(saveKey) && !TextUtils.isEmpty(data)) {
 
-            mPersister.save(saveKey, data);
+            final Batch batch = mBatch;
+
+            if (batch != null) {
+
+                batch.save(saveKey, data);
+
+            } else {
+
+                save(saveKey, data);
+            }
+        }
+    }
+
+    @Override
+    protected void performFiltering(final CharSequence text, final int start, final int end,
+            final int keyCode) {
+
+        // The queries still running for the previous constraints are now useless
+
+        mFilterRequest = new FilterRequest(text.subSequence(start, end), mGeneration.next());
+
+        super.performFiltering(text, start, end, keyCode);
+    }
+
+    @Override
+    protected void replaceText(final CharSequence text) {
+
+        super.replaceText(text);
+
+        // A suggestion has been chosen, so record a new use of it
+
+        final String saveKey = mSaveKey;
+
+        if (!TextUtils.isEmpty(saveKey) && !TextUtils.isEmpty(text)) {
+
+            save(saveKey, text);
         }
     }
 
@@ -303,25 +639,43 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
 
         if (!TextUtils.isEmpty(autoSaveKey) && !TextUtils.isEmpty(constraint)) {
 
-            final Persister persister = mPersister;
+            final AsyncPersister persister = mAsyncPersister;
 
-            final List<CharSequence> list = persister.load(autoSaveKey, constraint);
+            persister.runAsync(new Runnable() {
 
-            if (!list.isEmpty()) {
+                @Override
+                public void run() {
 
-                final CharSequence autoSaved = list.get(0);
-                final CharSequence savedText =
-                        autoSaved.subSequence(constraint.length(), autoSaved.length()).toString();
+                    final List<CharSequence> list;
 
-                final Editable text = getText();
+                    final boolean traced = FrostTrace.beginSection(TRACE_AUTO_RESTORE);
 
-                if (TextUtils.isEmpty(text) || !savedText.toString().equals(text.toString())) {
+                    try {
 
-                    onSave(savedText);
-                }
+                        list = persister.getPersister().load(autoSaveKey, constraint);
 
-                persister.remove(autoSaveKey, autoSaved);
-            }
+                    } finally {
+
+                        FrostTrace.endSection(traced);
+                    }
+
+                    if (!list.isEmpty()) {
+
+                        final CharSequence autoSaved = list.get(0);
+
+                        // The restored text is saved by the view on the main thread
+
+                        HandlerExecutor.getMainExecutor().execute(new Runnable() {
+
+                            @Override
+                            public void run() {
+
+                                restore(persister, autoSaveKey, constraint, autoSaved);
+                            }
+                        });
+                    }
+                }
+            });
         }
     }
 
@@ -334,11 +688,64 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
         if (!TextUtils.isEmpty(autoSaveKey) && !TextUtils.isEmpty(prefix) && !TextUtils
                 .isEmpty(text)) {
 
-            mPersister.save(autoSaveKey, prefix + text);
+            // The text may be modified in the meantime, so copy it now
+
+            final String entry = prefix + text;
+            final AsyncPersister persister = mAsyncPersister;
+
+            persister.runAsync(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    final boolean traced = FrostTrace.beginSection(TRACE_AUTO_SAVE);
+
+                    try {
+
+                        persister.getPersister().save(autoSaveKey, entry);
+
+                    } finally {
+
+                        FrostTrace.endSection(traced);
+                    }
+                }
+            });
         }
     }
 
-    @TargetApi(VERSION_CODES.HONEYCOMB)
+    /**
+     * Sets the persister associated with this view, observing the changes to the save key.
+     */
+    private void bindPersister(final BasePersister persister) {
+
+        final BasePersister previous = mPersister;
+
+        if (previous != null) {
+
+            PersisterRegistry.removeObserver(previous, mSaveKey, this);
+        }
+
+        mPersister = persister;
+        mAsyncPersister = newAsyncPersister(persister, mExecutor);
+
+        PersisterRegistry.addObserver(persister, mSaveKey, this);
+    }
+
+    private CancellationToken getFilterToken(final CharSequence constraint) {
+
+        final FilterRequest request = mFilterRequest;
+
+        if ((request != null) && TextUtils.equals(request.constraint, constraint)) {
+
+            return request.token;
+        }
+
+        // Either superseded by a newer request, which will replace the results anyway, or not
+        // started by the view
+
+        return CancellationToken.NONE;
+    }
+
     private void init(final AttributeSet attrs, final int defStyle) {
 
         sViews.put(this, null);
@@ -358,6 +765,13 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
 
         final String persisterClassName = typedArray.getString(R.styleable.FrostTextView_persister);
 
+        final int maxHistory = typedArray.getInt(R.styleable.FrostTextView_max_history, 0);
+        final int evictionPolicy = typedArray.getInt(R.styleable.FrostTextView_eviction_policy,
+                                                     EVICTION_POLICY_LRU);
+
+        final int ranking = typedArray.getInt(R.styleable.FrostTextView_ranking, RANKING_NONE);
+        final int maxSuggestions = typedArray.getInt(R.styleable.FrostTextView_max_suggestions, 0);
+
         final int itemLayout = typedArray.getResourceId(R.styleable.FrostTextView_item_layout,
                                                         android.R.layout.simple_dropdown_item_1line);
         final int textViewId = typedArray
@@ -380,268 +794,186 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
 
         // Setup the adapter
 
-        final SimpleCursorAdapter adapter;
-
-        if (VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB) {
+        final FrostAdapter adapter = new FrostAdapter(getContext(), itemLayout, textViewId);
 
-            adapter = new SimpleCursorAdapter(getContext(), itemLayout, new ListCursor(),
-                                              new String[]{ListCursor.TEXT_COLUMN_NAME},
-                                              new int[]{textViewId},
-                                              SimpleCursorAdapter.FLAG_REGISTER_CONTENT_OBSERVER);
-
-        } else {
-
-            //noinspection deprecation
-            adapter = new SimpleCursorAdapter(getContext(), itemLayout, new ListCursor(),
-                                              new String[]{ListCursor.TEXT_COLUMN_NAME},
-                                              new int[]{textViewId});
-        }
-
-        adapter.setFilterQueryProvider(new FilterQueryProvider() {
+        adapter.setQueryProvider(new QueryProvider() {
 
             @Override
-            public Cursor runQuery(final CharSequence charSequence) {
+            public List<CharSequence> runQuery(final CharSequence constraint) {
 
-                final List<CharSequence> items = onLoad(charSequence);
+                final boolean traced = FrostTrace.beginSection(TRACE_QUERY, mSaveKey);
 
-                return new ListCursor(items);
-            }
-        });
+                try {
 
-        adapter.setCursorToStringConverter(new CursorToStringConverter() {
+                    mConstraint = (constraint != null) ? constraint.toString() : null;
 
-            @Override
-            public CharSequence convertToString(final Cursor cursor) {
+                    return onLoad(constraint, getFilterToken(constraint));
 
-                return cursor.getString(ListCursor.TEXT_COLUMN_INDEX);
+                } finally {
+
+                    FrostTrace.endSection(traced);
+                }
             }
         });
 
         setAdapter(adapter);
 
-        // Create the persister instance
+        // Share the persister instance with all the views having the same configuration
 
-        Persister persister = null;
+        final String className = !TextUtils.isEmpty(persisterClassName) ? persisterClassName
+                : SharedPreferencesPersister.class.getName();
+        final String configuration =
+                className + ':' + maxHistory + ':' + evictionPolicy + ':' + ranking;
 
-        if (!TextUtils.isEmpty(persisterClassName)) {
+        final Context applicationContext = getContext().getApplicationContext();
 
-            try {
-
-                persister = (Persister) Class.forName(persisterClassName).newInstance();
-
-            } catch (final Exception e) {
+        bindPersister(PersisterRegistry.obtain(configuration, new Factory() {
 
-                throw new IllegalArgumentException(e);
-            }
-        }
+            @Override
+            public BasePersister create() {
 
-        if (persister == null) {
+                final BasePersister persister =
+                        newPersister(className, maxHistory, evictionPolicy, ranking);
 
-            persister = new SharedPreferencesPersister();
-        }
+                setUp(persister, applicationContext);
 
-        setPersister(persister);
+                return persister;
+            }
+        }));
 
         // Final setup
 
         setAutoSave(autoSave);
+        setMaxSuggestions(maxSuggestions);
         setSaveKey(saveKey);
     }
 
-    private void refresh() {
+    /**
+     * Refreshes the suggestions on the main thread, since the persister notifies the changes in
+     * the thread modifying the data.
+     */
+    private void postRefresh() {
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
 
-        final ListAdapter adapter = mAdapter;
+            refresh();
 
-        if (adapter instanceof BaseAdapter) {
+        } else {
 
-            ((BaseAdapter) adapter).notifyDataSetChanged();
+            HandlerExecutor.getMainExecutor().execute(mRefreshRunnable);
         }
     }
 
-    private static class ListCursor extends AbstractCursor {
-
-        public static final int ID_COLUMN_INDEX = 0;
-
-        public static final String ID_COLUMN_NAME = "_id";
-
-        public static final int TEXT_COLUMN_INDEX = 1;
+    private void refresh() {
 
-        public static final String TEXT_COLUMN_NAME = "text";
+        final boolean traced = FrostTrace.beginSection(TRACE_REFRESH, mSaveKey);
 
-        private static final String[] COLUMN_NAMES = new String[]{ID_COLUMN_NAME, TEXT_COLUMN_NAME};
+        try {
 
-        private final List<? extends CharSequence> mItems;
+            if (isPopupShowing()) {
 
-        public ListCursor() {
+                // Load the suggestions again, since the change may add, remove or reorder them
 
-            mItems = Collections.emptyList();
-        }
+                final String constraint = mConstraint;
 
-        public ListCursor(final List<? extends CharSequence> items) {
-
-            mItems = items;
-        }
+                mFilterRequest = new FilterRequest(constraint, mGeneration.next());
 
-        @Override
-        public int getCount() {
+                getFilter().filter(constraint, this);
 
-            return mItems.size();
-        }
+            } else {
 
-        @Override
-        public String[] getColumnNames() {
+                // Nothing is shown, so the next filtering will load the suggestions anyway
 
-            return COLUMN_NAMES;
-        }
+                final ListAdapter adapter = mAdapter;
 
-        @Override
-        public String getString(final int i) {
+                if (adapter instanceof BaseAdapter) {
 
-            final CharSequence value = mItems.get(getPosition());
-
-            if (value != null) {
-
-                final String text = value.toString();
-
-                if (i == ID_COLUMN_INDEX) {
-
-                    return Integer.toString(text.hashCode());
+                    ((BaseAdapter) adapter).notifyDataSetChanged();
                 }
-
-                return text;
             }
 
-            return null;
-        }
-
-        @Override
-        public short getShort(final int i) {
-
-            final String text = getString(i);
-
-            if (!TextUtils.isEmpty(text)) {
-
-                if (i == ID_COLUMN_INDEX) {
-
-                    return (short) text.hashCode();
-                }
-
-                try {
-
-                    return Short.parseShort(text);
-
-                } catch (final NumberFormatException ignored) {
-
-                }
-            }
+        } finally {
 
-            return 0;
+            FrostTrace.endSection(traced);
         }
+    }
 
-        @Override
-        public int getInt(final int i) {
-
-            final String text = getString(i);
-
-            if (!TextUtils.isEmpty(text)) {
-
-                if (i == ID_COLUMN_INDEX) {
-
-                    return text.hashCode();
-                }
-
-                try {
+    private void restore(final AsyncPersister persister, final String autoSaveKey,
+            final String prefix, final CharSequence autoSaved) {
 
-                    return Integer.parseInt(text);
+        final String savedText = autoSaved.subSequence(prefix.length(), autoSaved.length())
+                                          .toString();
 
-                } catch (final NumberFormatException ignored) {
+        final Editable text = getText();
 
-                }
-            }
+        if (TextUtils.isEmpty(text) || !savedText.equals(text.toString())) {
 
-            return 0;
+            onSave(savedText);
         }
 
-        @Override
-        public long getLong(final int i) {
-
-            final String text = getString(i);
-
-            if (!TextUtils.isEmpty(text)) {
-
-                if (i == ID_COLUMN_INDEX) {
-
-                    return text.hashCode();
-                }
-
-                try {
-
-                    return Long.parseLong(text);
-
-                } catch (final NumberFormatException ignored) {
-
-                }
-            }
+        persister.removeAsync(autoSaveKey, autoSaved);
+    }
 
-            return 0;
-        }
+    private void save(final String saveKey, final CharSequence data) {
 
-        @Override
-        public float getFloat(final int i) {
+        // The text may be modified in the meantime, so copy it now
 
-            final String text = getString(i);
+        final String entry = data.toString();
+        final AsyncPersister persister = mAsyncPersister;
 
-            if (!TextUtils.isEmpty(text)) {
+        persister.runAsync(new Runnable() {
 
-                if (i == ID_COLUMN_INDEX) {
+            @Override
+            public void run() {
 
-                    return text.hashCode();
-                }
+                final boolean traced = FrostTrace.beginSection(TRACE_SAVE, saveKey);
 
                 try {
 
-                    return Float.parseFloat(text);
+                    persister.getPersister().save(saveKey, entry);
 
-                } catch (final NumberFormatException ignored) {
+                } finally {
 
+                    FrostTrace.endSection(traced);
                 }
             }
+        });
+    }
 
-            return 0;
-        }
-
-        @Override
-        public double getDouble(final int i) {
-
-            final String text = getString(i);
-
-            if (!TextUtils.isEmpty(text)) {
-
-                if (i == ID_COLUMN_INDEX) {
+    /**
+     * Sets up the specified persister in background, since setting its context may load the
+     * stored data. The view operations wait for the set up to complete.
+     */
+    private void setUp(final BasePersister persister, final Context context) {
 
-                    return text.hashCode();
-                }
+        AsyncPersister.setUpAsync(persister, mExecutor, new Runnable() {
 
-                try {
+            @Override
+            public void run() {
 
-                    return Double.parseDouble(text);
+                setContext(persister, context);
+            }
+        });
+    }
 
-                } catch (final NumberFormatException ignored) {
+    /**
+     * Filtering request made on the main thread, pairing the constraint with the token of its
+     * generation.
+     */
+    private static class FilterRequest {
 
-                }
-            }
+        public final String constraint;
 
-            return 0;
-        }
+        public final CancellationToken token;
 
-        @Override
-        public boolean isNull(final int i) {
+        public FilterRequest(final CharSequence constraint, final CancellationToken token) {
 
-            return (getString(i) == null);
+            this.constraint = (constraint != null) ? constraint.toString() : null;
+            this.token = token;
         }
     }
 
-    private static class MockPersister implements Persister {
+    private static class MockPersister implements BasePersister {
 
         @Override
         public void clear() {
@@ -680,11 +1012,6 @@ public class FrostTextView extends MultiAutoCompleteTextView implements DataObse
 
         }
 
-        @Override
-        public void setContext(final Context context) {
-
-        }
-
         @Override
         public void setObserver(final DataObserver observer) {
 
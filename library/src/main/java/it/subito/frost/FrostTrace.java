@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost;
+
+import android.annotation.TargetApi;
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.os.Trace;
+
+/**
+ * Utility class adding opt-in sections to the systrace output around the expensive phases of
+ * the suggestion pipeline.
+ * <p/>
+ * Tracing is disabled by default and requires Jelly Bean MR2 or later. While disabled, beginning
+ * a section costs just a volatile read, and no section name is built.
+ * <p/>
+ * Sections must be used as follows:
+ * <pre>
+ * final boolean traced = FrostTrace.beginSection("Frost.load", saveKey);
+ *
+ * try {
+ *     ...
+ * } finally {
+ *     FrostTrace.endSection(traced);
+ * }
+ * </pre>
+ */
+public final class FrostTrace {
+
+    private static final int MAX_NAME_LENGTH = 127;
+
+    private static final Tracer SYSTEM_TRACER = new SystemTracer();
+
+    private static volatile boolean sEnabled;
+
+    private static volatile Tracer sTracer = SYSTEM_TRACER;
+
+    private FrostTrace() {
+
+    }
+
+    /**
+     * Begins a new section, if tracing is enabled.
+     *
+     * @param name The section name.
+     * @return Whether the section was begun.
+     */
+    public static boolean beginSection(final String name) {
+
+        if (!sEnabled) {
+
+            return false;
+        }
+
+        sTracer.beginSection(
+                (name.length() > MAX_NAME_LENGTH) ? name.substring(0, MAX_NAME_LENGTH) : name);
+
+        return true;
+    }
+
+    /**
+     * Begins a new section named after the specified save key, if tracing is enabled.
+     *
+     * @param name    The section name.
+     * @param saveKey The save key.
+     * @return Whether the section was begun.
+     */
+    public static boolean beginSection(final String name, final String saveKey) {
+
+        if (!sEnabled) {
+
+            return false;
+        }
+
+        return beginSection(name + ":" + saveKey);
+    }
+
+    /**
+     * Ends the last section begun on the current thread.
+     *
+     * @param begun The value returned when the section was begun.
+     */
+    public static void endSection(final boolean begun) {
+
+        if (begun) {
+
+            sTracer.endSection();
+        }
+    }
+
+    /**
+     * Returns whether tracing is enabled.
+     *
+     * @return Whether the sections are added to the trace output.
+     */
+    public static boolean isEnabled() {
+
+        return sEnabled;
+    }
+
+    /**
+     * Enables/disables tracing. Has no effect before Jelly Bean MR2.
+     *
+     * @param enabled Whether the sections are added to the trace output.
+     */
+    public static void setEnabled(final boolean enabled) {
+
+        sEnabled = enabled && (VERSION.SDK_INT >= VERSION_CODES.JELLY_BEAN_MR2);
+    }
+
+    /**
+     * Replaces the object writing the trace sections, used for testing.
+     *
+     * @param tracer The tracer or null to restore the system one.
+     */
+    static void setTracer(final Tracer tracer) {
+
+        sTracer = (tracer != null) ? tracer : SYSTEM_TRACER;
+    }
+
+    /**
+     * Interface defining an object writing the trace sections.
+     */
+    interface Tracer {
+
+        public void beginSection(String name);
+
+        public void endSection();
+    }
+
+    @TargetApi(VERSION_CODES.JELLY_BEAN_MR2)
+    private static class SystemTracer implements Tracer {
+
+        @Override
+        public void beginSection(final String name) {
+
+            Trace.beginSection(name);
+        }
+
+        @Override
+        public void endSection() {
+
+            Trace.endSection();
+        }
+    }
+}
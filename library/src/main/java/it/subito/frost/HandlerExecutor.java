@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Implementation of an {@link Executor} posting the commands to a {@link Handler}.
+ */
+public class HandlerExecutor implements Executor {
+
+    private static final String IO_THREAD_NAME = "FrostIO";
+
+    private static HandlerExecutor sIoExecutor;
+
+    private static HandlerExecutor sMainExecutor;
+
+    private final Handler mHandler;
+
+    /**
+     * Creates a new executor posting to the specified handler.
+     *
+     * @param handler The handler.
+     */
+    public HandlerExecutor(final Handler handler) {
+
+        if (handler == null) {
+
+            throw new IllegalArgumentException("the handler cannot be null");
+        }
+
+        mHandler = handler;
+    }
+
+    /**
+     * Returns the executor shared by all the views, running the commands one at a time in a
+     * background thread.
+     *
+     * @return The executor instance.
+     */
+    public static synchronized HandlerExecutor getIoExecutor() {
+
+        if (sIoExecutor == null) {
+
+            final HandlerThread thread =
+                    new HandlerThread(IO_THREAD_NAME, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+
+            sIoExecutor = new HandlerExecutor(new Handler(thread.getLooper()));
+        }
+
+        return sIoExecutor;
+    }
+
+    /**
+     * Returns the executor running the commands in the main thread.
+     *
+     * @return The executor instance.
+     */
+    public static synchronized HandlerExecutor getMainExecutor() {
+
+        if (sMainExecutor == null) {
+
+            sMainExecutor = new HandlerExecutor(new Handler(Looper.getMainLooper()));
+        }
+
+        return sMainExecutor;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+
+        if (!mHandler.post(command)) {
+
+            throw new RejectedExecutionException("the handler looper is exiting");
+        }
+    }
+}
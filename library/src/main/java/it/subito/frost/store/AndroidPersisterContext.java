@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import android.content.Context;
+
+import java.io.File;
+
+/**
+ * Persister context wrapping an Android one.
+ */
+public class AndroidPersisterContext implements PersisterContext {
+
+    private final Context mContext;
+
+    /**
+     * Creates a new persister context wrapping the specified Android one.
+     *
+     * @param context The Android context.
+     */
+    public AndroidPersisterContext(final Context context) {
+
+        if (context == null) {
+
+            throw new IllegalArgumentException("the context cannot be null");
+        }
+
+        mContext = context;
+    }
+
+    /**
+     * Returns the wrapped Android context.
+     *
+     * @return The context.
+     */
+    public Context getContext() {
+
+        return mContext;
+    }
+
+    @Override
+    public File getFilesDir() {
+
+        return mContext.getFilesDir();
+    }
+}
@@ -25,54 +25,297 @@ import android.os.Build.VERSION_CODES;
 import android.text.TextUtils;
 
 import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import it.subito.frost.FrostTrace;
+import it.subito.frost.store.EvictionPolicy.Tracker;
 
 /**
  * Class implementing a {@link Persister} storing all the data into the application shared
  * preferences.
+ * <p/>
+ * By default each modification is immediately written to the shared preferences. When the
+ * write-behind mode is enabled through {@link #setWriteBehindDelay(long)}, the modifications are
+ * instead buffered in memory and written all together in a single transaction, on a background
+ * thread, as soon as no further modification is made for the specified delay, or when
+ * {@link #flush()} is called. Loaded entries always reflect the buffered modifications.
+ * <p/>
+ * When a capacity is set, the usage statistics of the entries associated with a key are stored
+ * under a companion key (see {@link #statsKey(String)}). Histories exceeding the capacity are
+ * trimmed the next time an entry is saved.
+ * <p/>
+ * By default all the keys are stored in a single preferences file, which Android rewrites as a
+ * whole on each modification. Through {@link #setSharding(int)} the keys can be instead spread
+ * across several files, either one per key or one per hash bucket, so that each modification
+ * only rewrites the entries sharing the same file. Already stored keys are moved to the right
+ * file each time the sharding is changed.
+ * <p/>
+ * Before Honeycomb, or when the {@link #FORMAT_ENCODED} storage format is selected, the entries
+ * associated with each key are stored as a single string through an {@link EntryCodec}. With the
+ * default {@link FrontCodedEntryCodec} the string is both much shorter than the XML produced by
+ * a string set and searchable by prefix, so loading does not need to decode all the entries.
  */
-public class SharedPreferencesPersister implements Persister, OnSharedPreferenceChangeListener {
+public class SharedPreferencesPersister extends AbstractPersister
+        implements OnSharedPreferenceChangeListener, Persister {
 
     public static final String CHARSET_NAME = "UTF-8";
 
-    public static final String STRING_SEPARATOR = "&";
+    public static final int FORMAT_ENCODED = 1;
+
+    public static final int FORMAT_STRING_SET = 0;
+
+    public static final int NO_SHARDING = 0;
+
+    public static final long NO_WRITE_BEHIND = -1;
+
+    public static final int SHARD_PER_KEY = -1;
+
+    public static final String STRING_SEPARATOR = UrlEntryCodec.STRING_SEPARATOR;
+
+    private static final int CANCELLATION_CHECK_MASK = 0xff;
+
+    private static final UrlEntryCodec LEGACY_CODEC = new UrlEntryCodec();
+
+    private static final String PREFERENCES_SUFFIX = ".frostHistory";
+
+    private static final String SHARDS_KEY = "_frost_shards_";
+
+    private static final char STATS_SEPARATOR = ':';
+
+    private static final String STATS_KEY_SUFFIX = "_stats_";
+
+    private static final String TRACE_COMMIT = "Frost.commit";
+
+    private static ScheduledExecutorService sFlushExecutor;
+
+    private final ResultCache mCache = new ResultCache();
+
+    private final HashMap<String, EncodedStats> mEncodedStats =
+            new HashMap<String, EncodedStats>();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+
+            flush();
+        }
+    };
+
+    private final HashMap<SharedPreferences, HashMap<String, OwnWrite>> mOwnWrites =
+            new HashMap<SharedPreferences, HashMap<String, OwnWrite>>();
+
+    private final HashMap<String, Set<String>> mPending = new HashMap<String, Set<String>>();
+
+    private final HashSet<String> mShardNames = new HashSet<String>();
+
+    private final HashMap<String, SharedPreferences> mShards =
+            new HashMap<String, SharedPreferences>();
+
+    private final HashMap<String, HashMap<String, EntryStats>> mUsage =
+            new HashMap<String, HashMap<String, EntryStats>>();
+
+    private EntryCodec mCodec = new FrontCodedEntryCodec();
+
+    private volatile Context mContext;
+
+    private Evictor mEvictor;
+
+    private int mFormat = FORMAT_STRING_SET;
+
+    private ScheduledFuture<?> mFlushFuture;
+
+    private boolean mPendingClear;
+
+    private volatile SharedPreferences mSharedPref;
 
-    private final ArrayList<String> mCachedList = new ArrayList<String>();
+    private int mSharding = NO_SHARDING;
 
-    private boolean mCacheUpdated;
+    private long mWriteBehindDelay = NO_WRITE_BEHIND;
 
-    private DataObserver mDataObserver;
+    private static synchronized ScheduledExecutorService getFlushExecutor() {
 
-    private String mLastConstraint = "";
+        if (sFlushExecutor == null) {
 
-    private SharedPreferences mSharedPref;
+            sFlushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+
+                    final Thread thread = new Thread(runnable, "Frost-flush");
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+        }
+
+        return sFlushExecutor;
+    }
+
+    /**
+     * Returns the key used to store the usage statistics of the entries associated with the
+     * specified key.
+     *
+     * @param saveKey The save key.
+     * @return The statistics key.
+     */
+    public static String statsKey(final String saveKey) {
+
+        return saveKey + STATS_KEY_SUFFIX;
+    }
+
+    private static String encodeStats(final String entry, final EntryStats stats) {
+
+        return Integer.toString(stats.useCount) + STATS_SEPARATOR + stats.lastUsed
+                + STATS_SEPARATOR + stats.added + STATS_SEPARATOR + entry;
+    }
+
+    /**
+     * Returns the value stored in the specified preferences, whatever its type.
+     *
+     * @param preferences The preferences.
+     * @param key         The preference key.
+     * @return The string or string set value, or null if the key is not stored.
+     */
+    @TargetApi(VERSION_CODES.HONEYCOMB)
+    private static Object getValue(final SharedPreferences preferences, final String key) {
+
+        try {
+
+            return preferences.getString(key, null);
+
+        } catch (final ClassCastException e) {
+
+            if (VERSION.SDK_INT < VERSION_CODES.HONEYCOMB) {
+
+                return null;
+            }
+
+            return preferences.getStringSet(key, null);
+        }
+    }
+
+    private static boolean isEqual(final Object value, final Object other) {
+
+        return (value == null) ? (other == null) : value.equals(other);
+    }
+
+    /**
+     * Returns the entries of the specified sorted list starting with the specified prefix.
+     *
+     * @param sorted The sorted list.
+     * @param prefix The prefix.
+     * @return The new list of matching entries.
+     */
+    private static List<String> narrow(final List<String> sorted, final CharSequence prefix) {
+
+        final int start = TextHelper.prefixStart(sorted, prefix);
+        final int end = TextHelper.prefixEnd(sorted, prefix, start);
+
+        return new ArrayList<String>(sorted.subList(start, end));
+    }
 
     @Override
     public void clear() {
 
-        final Editor editor = mSharedPref.edit();
+        new PreferencesBatch().clear().commit();
+    }
+
+    @Override
+    public Batch edit() {
+
+        return new PreferencesBatch();
+    }
+
+    /**
+     * Immediately writes all the buffered modifications to the shared preferences.
+     * <p/>
+     * Nothing is done if the write-behind mode is disabled or there are no pending modifications.
+     */
+    public void flush() {
+
+        synchronized (mPending) {
+
+            if (mFlushFuture != null) {
+
+                mFlushFuture.cancel(false);
+                mFlushFuture = null;
+            }
+
+            if (!mPendingClear && mPending.isEmpty()) {
+
+                return;
+            }
+
+            // Still holding the lock, so that loads never miss the flushed values
+
+            commit(mPendingClear, mPending);
+
+            mPending.clear();
+            mPendingClear = false;
+        }
+    }
+
+    /**
+     * Returns the number of loads served from the result cache.
+     *
+     * @return The hit count.
+     */
+    public long getCacheHitCount() {
+
+        return mCache.getHitCount();
+    }
 
-        editor.clear();
+    /**
+     * Returns the number of loads which could not be served from the result cache.
+     *
+     * @return The miss count.
+     */
+    public long getCacheMissCount() {
 
-        commit(editor);
+        return mCache.getMissCount();
     }
 
     @Override
     public int getCount(final String savedKey) {
 
-        return load(savedKey, null).size();
+        // Loading would return at most the maximum number of ranked results
+
+        final HashSet<String> values = new HashSet<String>();
+
+        getStringSet(savedKey, values);
+
+        return values.size();
+    }
+
+    @Override
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit) {
+
+        return load(saveKey, constraint, limit, CancellationToken.NONE);
     }
 
     @Override
-    public List<CharSequence> load(final String saveKey, final CharSequence constraint) {
+    public List<CharSequence> load(final String saveKey, final CharSequence constraint,
+            final int limit, final CancellationToken token) {
+
+        token.throwIfCanceled();
 
         final String start;
 
@@ -85,235 +328,1365 @@ public class SharedPreferencesPersister implements Persister, OnSharedPreference
             start = "";
         }
 
-        final ArrayList<String> sorted = mCachedList;
+        final ResultCache cache = mCache;
 
-        if (!mCacheUpdated || !mLastConstraint.equals(start)) {
+        List<String> sorted = cache.get(saveKey, start);
 
-            mCacheUpdated = false;
+        notifyCacheLookup(saveKey, sorted != null);
 
-            mLastConstraint = start;
+        if (sorted == null) {
 
-            final HashSet<String> values = new HashSet<String>();
+            final int generation = cache.getGeneration();
 
-            getStringSet(saveKey, values);
+            final List<String> closest = cache.getClosest(saveKey, start);
 
-            sorted.clear();
+            if (closest != null) {
 
-            if (!TextUtils.isEmpty(start)) {
+                // The constraint extends a cached one, so just copy the matching range of the
+                // cached results
 
-                for (final String s : values) {
+                sorted = narrow(closest, start);
 
-                    if (s.startsWith(start)) {
+            } else {
 
-                        sorted.add(s);
-                    }
+                sorted = filter(saveKey, start, token);
+            }
+
+            cache.put(saveKey, start, sorted, generation);
+        }
+
+        final Ranking ranking = getRanking();
+
+        if (ranking != null) {
+
+            final TopSelector selector =
+                    new TopSelector(ranking, getMaxResults(limit), System.currentTimeMillis(),
+                                    token);
+
+            synchronized (mUsage) {
+
+                HashMap<String, EntryStats> usage = mUsage.get(saveKey);
+
+                if (usage == null) {
+
+                    final HashSet<String> values = new HashSet<String>();
+
+                    getStringSet(saveKey, values);
+
+                    usage = getUsage(saveKey, values);
                 }
 
-            } else {
+                for (final String entry : sorted) {
 
-                sorted.addAll(values);
+                    selector.offer(entry, usage.get(entry));
+                }
             }
 
-            Collections.sort(sorted);
+            return selector.toList();
+        }
+
+        // The cached lists are never modified, so read-only views of them are returned
+
+        if ((limit > 0) && (limit < sorted.size())) {
+
+            // The whole result is still cached, since refined constraints narrow it
+
+            return Collections.<CharSequence>unmodifiableList(sorted.subList(0, limit));
         }
 
-        return new ArrayList<CharSequence>(sorted);
+        return Collections.<CharSequence>unmodifiableList(sorted);
     }
 
     @Override
     public void remove(final String saveKey) {
 
-        final Editor editor = mSharedPref.edit();
+        new PreferencesBatch().remove(saveKey).commit();
+    }
 
-        editor.remove(saveKey);
+    @Override
+    public void remove(final String saveKey, final Collection<CharSequence> data) {
 
-        commit(editor);
+        new PreferencesBatch().remove(saveKey, data).commit();
     }
 
     @Override
-    public void remove(final String saveKey, final CharSequence... data) {
+    public void save(final String saveKey, final CharSequence data) {
 
-        if ((data != null) && (data.length > 0)) {
+        if (TextUtils.isEmpty(data)) {
 
-            remove(saveKey, Arrays.asList(data));
+            return;
         }
+
+        new PreferencesBatch().save(saveKey, data).commit();
     }
 
-    @Override
-    public void remove(final String saveKey, final Collection<CharSequence> data) {
+    /**
+     * Sets the maximum number of loaded lists, identified by save key and constraint, kept in the
+     * result cache.
+     *
+     * @param size The cache size (0 to disable caching).
+     */
+    public void setCacheSize(final int size) {
 
-        final SharedPreferences sharedPref = mSharedPref;
+        mCache.setMaxSize(size);
+    }
 
-        final HashSet<String> values = new HashSet<String>();
+    @Override
+    public void setCapacity(final int maxEntries, final EvictionPolicy policy) {
 
-        getStringSet(saveKey, values);
+        synchronized (mUsage) {
 
-        if (values.isEmpty()) {
+            mEvictor = (maxEntries > 0) ? new Evictor(maxEntries, policy) : null;
 
-            return;
+            mUsage.clear();
+            mEncodedStats.clear();
         }
+    }
 
-        boolean changed = false;
+    @Override
+    public void setRanking(final Ranking ranking, final int maxResults) {
 
-        for (final CharSequence datum : data) {
+        super.setRanking(ranking, maxResults);
 
-            if (TextUtils.isEmpty(datum)) {
+        synchronized (mUsage) {
 
-                continue;
-            }
+            mUsage.clear();
+            mEncodedStats.clear();
+        }
+    }
+
+    @Override
+    public void setContext(final PersisterContext context) {
 
-            if (values.remove(datum.toString())) {
+        if (!(context instanceof AndroidPersisterContext)) {
 
-                changed = true;
-            }
+            throw new IllegalArgumentException("an Android context is required");
         }
 
-        if (changed) {
+        setContext(((AndroidPersisterContext) context).getContext());
+    }
 
-            final Editor editor = sharedPref.edit();
+    /**
+     * Sets the Android context used to access the shared preferences.
+     *
+     * @param context The context.
+     */
+    @Override
+    public void setContext(final Context context) {
 
-            if (values.isEmpty()) {
+        mContext = context;
 
-                editor.remove(saveKey);
+        mSharedPref = context.getSharedPreferences(context.getPackageName() + PREFERENCES_SUFFIX,
+                                                   Context.MODE_PRIVATE);
+        mSharedPref.registerOnSharedPreferenceChangeListener(this);
 
-            } else {
+        synchronized (mShards) {
 
-                putStringSet(editor, saveKey, values);
-            }
+            mShards.clear();
+            mShardNames.clear();
 
-            commit(editor);
+            readStringSet(mSharedPref, SHARDS_KEY, mShardNames);
         }
+
+        migrate();
     }
 
-    @Override
-    public void save(final String saveKey, final CharSequence data) {
+    /**
+     * Sets the codec used to store the entries associated with each key as a single string, on
+     * platforms not supporting string sets (that is, before Honeycomb).
+     * <br/>
+     * Entries stored in the legacy URL-encoded format can always be read.
+     *
+     * @param codec The codec instance.
+     */
+    public void setEntryCodec(final EntryCodec codec) {
+
+        mCodec = codec;
+    }
 
-        if (TextUtils.isEmpty(data)) {
+    /**
+     * Sets the format used to store the entries associated with each key.
+     * <br/>
+     * Entries already stored in a different format can still be read, and are converted the next
+     * time they are modified.
+     *
+     * @param format {@link #FORMAT_STRING_SET} to store a string set, when supported, or
+     *               {@link #FORMAT_ENCODED} to always store a single string encoded with the
+     *               current codec.
+     */
+    public void setStorageFormat(final int format) {
+
+        mFormat = format;
+    }
+
+    /**
+     * Sets how the keys are spread across different preferences files.
+     * <p/>
+     * The keys already stored are moved to the right file, so changing the sharding is an
+     * expensive operation, which should be done only once, before the first use.
+     *
+     * @param sharding {@link #NO_SHARDING} to store all the keys in a single file,
+     *                 {@link #SHARD_PER_KEY} to store each key in its own file, or the number of
+     *                 files among which to distribute the keys based on their hash.
+     */
+    public void setSharding(final int sharding) {
+
+        if (sharding == mSharding) {
 
             return;
         }
 
-        final SharedPreferences sharedPref = mSharedPref;
+        flush();
 
-        final HashSet<String> values = new HashSet<String>();
+        mSharding = sharding;
 
-        getStringSet(saveKey, values);
+        if (mContext != null) {
 
-        if (values.add(data.toString())) {
+            migrate();
+        }
+    }
 
-            final Editor editor = sharedPref.edit();
+    /**
+     * Sets the delay after which the buffered modifications are written to the shared
+     * preferences.
+     * <p/>
+     * Disabling the write-behind mode causes all the pending modifications to be immediately
+     * written.
+     *
+     * @param delayMillis The delay in milliseconds or {@link #NO_WRITE_BEHIND} to disable the
+     *                    write-behind mode.
+     */
+    public void setWriteBehindDelay(final long delayMillis) {
 
-            putStringSet(editor, saveKey, values);
+        mWriteBehindDelay = Math.max(NO_WRITE_BEHIND, delayMillis);
 
-            commit(editor);
+        if (delayMillis < 0) {
+
+            flush();
         }
     }
 
     @Override
-    public void setContext(final Context context) {
+    public void onSharedPreferenceChanged(final SharedPreferences preferences, final String key) {
 
-        mSharedPref = context.getSharedPreferences(context.getPackageName() + ".frostHistory",
-                                                   Context.MODE_PRIVATE);
-        mSharedPref.registerOnSharedPreferenceChangeListener(this);
-    }
+        if (key == null) {
 
-    @Override
-    public void setObserver(final DataObserver observer) {
+            // Sent after Editor.clear() starting from Android 11, so any key might have changed
 
-        mDataObserver = observer;
-    }
+            mCache.clear();
 
-    @Override
-    public void onSharedPreferenceChanged(final SharedPreferences preferences, final String s) {
+            synchronized (mUsage) {
+
+                mUsage.clear();
+                mEncodedStats.clear();
+
+                final Evictor evictor = mEvictor;
+
+                if (evictor != null) {
+
+                    evictor.clear();
+                }
+            }
+
+            notifyDataChanged();
+
+            return;
+        }
 
-        mCacheUpdated = false;
+        if (SHARDS_KEY.equals(key)) {
 
-        mCachedList.clear();
+            return;
+        }
 
-        final DataObserver observer = mDataObserver;
+        mCache.invalidate(key);
 
-        if (observer != null) {
+        if (isOwnWrite(preferences, key)) {
 
-            observer.onDataChanged();
+            return;
         }
+
+        // Modified by someone else, so the statistics must be read again
+
+        final String saveKey = key.endsWith(STATS_KEY_SUFFIX)
+                ? key.substring(0, key.length() - STATS_KEY_SUFFIX.length()) : key;
+
+        forgetUsage(saveKey);
+
+        notifyDataChanged(saveKey, DataChange.UNKNOWN);
     }
 
     @TargetApi(VERSION_CODES.GINGERBREAD)
     private void commit(final Editor editor) {
 
-        if (VERSION.SDK_INT > VERSION_CODES.FROYO) {
+        final boolean traced = FrostTrace.beginSection(TRACE_COMMIT);
 
-            editor.apply();
+        try {
 
-        } else {
+            if (VERSION.SDK_INT > VERSION_CODES.FROYO) {
 
-            editor.commit();
-        }
+                editor.apply();
+
+            } else {
 
-        mCacheUpdated = false;
+                editor.commit();
+            }
+
+        } finally {
 
-        mCachedList.clear();
+            FrostTrace.endSection(traced);
+        }
     }
 
-    @TargetApi(VERSION_CODES.HONEYCOMB)
-    private void getStringSet(final String saveKey, final Set<String> values) {
+    /**
+     * Commits the passed modifications, by using one editor per modified preferences file.
+     *
+     * @param clear   Whether all the data must be cleared before applying the modifications.
+     * @param changes The new entries associated with each modified key (empty to remove).
+     */
+    private void commit(final boolean clear, final Map<String, Set<String>> changes) {
 
-        if (VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB) {
+        final HashMap<SharedPreferences, Editor> editors =
+                new HashMap<SharedPreferences, Editor>();
 
-            values.addAll(mSharedPref.getStringSet(saveKey, values));
+        synchronized (mOwnWrites) {
 
-        } else {
+            if (clear) {
 
-            final String text = mSharedPref.getString(saveKey, null);
+                // Remove the keys one by one, since clearing the editor does not notify the
+                // listeners
 
-            if (text == null) {
+                for (final SharedPreferences preferences : getAllPreferences()) {
 
-                return;
+                    for (final String key : preferences.getAll().keySet()) {
+
+                        if (!SHARDS_KEY.equals(key)) {
+
+                            expectChange(preferences, key, null);
+                            getEditor(editors, preferences).remove(key);
+                        }
+                    }
+                }
             }
 
-            try {
+            for (final Entry<String, Set<String>> entry : changes.entrySet()) {
 
-                for (final String s : text.split(STRING_SEPARATOR)) {
+                final String key = entry.getKey();
+                final Set<String> values = entry.getValue();
 
-                    values.add(URLDecoder.decode(s, CHARSET_NAME));
+                final SharedPreferences preferences = getPreferences(key);
+                final Editor editor = getEditor(editors, preferences);
+
+                if (values.isEmpty()) {
+
+                    expectChange(preferences, key, null);
+                    editor.remove(key);
+
+                } else {
+
+                    expectChange(preferences, key, putStringSet(editor, key, values));
                 }
+            }
 
-            } catch (final UnsupportedEncodingException ignored) {
+            for (final Editor editor : editors.values()) {
 
+                commit(editor);
             }
         }
     }
 
-    @TargetApi(VERSION_CODES.HONEYCOMB)
-    private void putStringSet(final Editor editor, final String saveKey, final Set<String> values) {
+    /**
+     * Records that the specified value is going to be written, so that the listener notified of
+     * the change can tell it from the ones made by someone else.
+     * <br/>
+     * MUST be called while holding the own writes lock, before the change is applied.
+     *
+     * @param preferences The modified preferences.
+     * @param key         The preference key.
+     * @param value       The new value (null for a removal).
+     */
+    private void expectChange(final SharedPreferences preferences, final String key,
+            final Object value) {
 
-        if (VERSION.SDK_INT >= VERSION_CODES.HONEYCOMB) {
+        if (isEqual(getValue(preferences, key), value)) {
 
-            editor.putStringSet(saveKey, values);
+            // The preferences do not notify the listeners of unchanged values
 
-        } else {
+            return;
+        }
 
-            final StringBuilder builder = new StringBuilder();
+        HashMap<String, OwnWrite> writes = mOwnWrites.get(preferences);
 
-            for (final String value : values) {
+        if (writes == null) {
 
-                try {
+            writes = new HashMap<String, OwnWrite>();
 
-                    final String encoded = URLEncoder.encode(value, CHARSET_NAME);
+            mOwnWrites.put(preferences, writes);
+        }
 
-                    if (builder.length() > 0) {
+        OwnWrite write = writes.get(key);
 
-                        builder.append(STRING_SEPARATOR);
-                    }
+        if (write == null) {
 
-                    builder.append(encoded);
+            write = new OwnWrite();
 
-                } catch (final UnsupportedEncodingException ignored) {
+            writes.put(key, write);
+        }
 
-                }
+        write.value = value;
+        ++write.count;
+    }
+
+    /**
+     * Returns all the preferences files which may contain some keys.
+     *
+     * @return The list of preferences.
+     */
+    private List<SharedPreferences> getAllPreferences() {
+
+        final ArrayList<SharedPreferences> list = new ArrayList<SharedPreferences>();
+
+        list.add(mSharedPref);
+
+        final ArrayList<String> names;
+
+        synchronized (mShards) {
+
+            names = new ArrayList<String>(mShardNames);
+        }
+
+        for (final String name : names) {
+
+            list.add(getShard(name));
+        }
+
+        return list;
+    }
+
+    private Editor getEditor(final Map<SharedPreferences, Editor> editors,
+            final SharedPreferences preferences) {
+
+        Editor editor = editors.get(preferences);
+
+        if (editor == null) {
+
+            editor = preferences.edit();
+            editors.put(preferences, editor);
+        }
+
+        return editor;
+    }
+
+    /**
+     * Returns the preferences file storing the specified key, based on the current sharding.
+     *
+     * @param key The preferences key.
+     * @return The preferences instance.
+     */
+    SharedPreferences getPreferences(final String key) {
+
+        final int sharding = mSharding;
+
+        if (sharding == NO_SHARDING) {
+
+            return mSharedPref;
+        }
+
+        // The statistics must be stored together with the entries
+
+        final String saveKey = key.endsWith(STATS_KEY_SUFFIX)
+                ? key.substring(0, key.length() - STATS_KEY_SUFFIX.length()) : key;
+
+        final String shard;
+
+        if (sharding == SHARD_PER_KEY) {
+
+            try {
+
+                shard = URLEncoder.encode(saveKey, CHARSET_NAME);
+
+            } catch (final UnsupportedEncodingException e) {
+
+                throw new IllegalStateException(e);
             }
 
-            editor.putString(saveKey, builder.toString());
+        } else {
+
+            shard = Integer.toString((saveKey.hashCode() & 0x7fffffff) % sharding);
+        }
+
+        return getShard(mContext.getPackageName() + PREFERENCES_SUFFIX + "." + shard);
+    }
+
+    /**
+     * Returns the preferences file with the specified name, opening it if needed.
+     * <br/>
+     * The names of all the opened files are stored in the main one, so that they can be found
+     * again later.
+     *
+     * @param name The preferences name.
+     * @return The preferences instance.
+     */
+    private SharedPreferences getShard(final String name) {
+
+        synchronized (mShards) {
+
+            SharedPreferences shard = mShards.get(name);
+
+            if (shard == null) {
+
+                shard = mContext.getSharedPreferences(name, Context.MODE_PRIVATE);
+                shard.registerOnSharedPreferenceChangeListener(this);
+
+                mShards.put(name, shard);
+
+                if (mShardNames.add(name)) {
+
+                    final Editor editor = mSharedPref.edit();
+
+                    putStringSet(editor, SHARDS_KEY, new HashSet<String>(mShardNames));
+
+                    commit(editor);
+                }
+            }
+
+            return shard;
+        }
+    }
+
+    /**
+     * Moves each stored key to the preferences file it belongs to, based on the current sharding.
+     * <br/>
+     * The keys are first written to the new files and only then removed from the old ones, so
+     * that no data is lost if the process is killed meanwhile.
+     */
+    private void migrate() {
+
+        final HashMap<SharedPreferences, Editor> targets =
+                new HashMap<SharedPreferences, Editor>();
+        final HashMap<SharedPreferences, Editor> sources =
+                new HashMap<SharedPreferences, Editor>();
+
+        for (final SharedPreferences preferences : getAllPreferences()) {
+
+            for (final String key : preferences.getAll().keySet()) {
+
+                if (SHARDS_KEY.equals(key)) {
+
+                    continue;
+                }
+
+                final SharedPreferences target = getPreferences(key);
+
+                if (target == preferences) {
+
+                    continue;
+                }
+
+                final HashSet<String> values = new HashSet<String>();
+
+                try {
+
+                    readStringSet(preferences, key, values);
+
+                } catch (final IllegalStateException ignored) {
+
+                    // Leave the unreadable entries where they are instead of rewriting them
+
+                    continue;
+                }
+
+                synchronized (mOwnWrites) {
+
+                    expectChange(target, key, putStringSet(getEditor(targets, target), key,
+                                                           values));
+                    expectChange(preferences, key, null);
+                }
+
+                getEditor(sources, preferences).remove(key);
+            }
+        }
+
+        for (final Editor editor : targets.values()) {
+
+            commit(editor);
+        }
+
+        for (final Editor editor : sources.values()) {
+
+            commit(editor);
+        }
+    }
+
+    /**
+     * Returns the encoded statistics of the specified key, encoding again only the specified
+     * entries if the ones written last time are still valid.
+     *
+     * @param saveKey The save key.
+     * @param usage   The statistics of all the entries.
+     * @param entries The entries whose statistics have been modified, added or removed.
+     * @return The new set of encoded statistics.
+     */
+    private Set<String> encodeUsage(final String saveKey, final HashMap<String, EntryStats> usage,
+            final Set<String> entries) {
+
+        EncodedStats encoded = mEncodedStats.get(saveKey);
+
+        if ((encoded == null) || (encoded.usage != usage)) {
+
+            // The statistics have been read again since the last write
+
+            encoded = new EncodedStats(usage);
+
+            for (final Entry<String, EntryStats> entry : usage.entrySet()) {
+
+                encoded.strings.put(entry.getKey(), encodeStats(entry.getKey(), entry.getValue()));
+            }
+
+            mEncodedStats.put(saveKey, encoded);
+
+        } else {
+
+            for (final String entry : entries) {
+
+                final EntryStats stats = usage.get(entry);
+
+                if (stats != null) {
+
+                    encoded.strings.put(entry, encodeStats(entry, stats));
+
+                } else {
+
+                    encoded.strings.remove(entry);
+                }
+            }
+        }
+
+        // The written set must not be modified afterwards
+
+        return new HashSet<String>(encoded.strings.values());
+    }
+
+    private void forgetUsage(final String saveKey) {
+
+        synchronized (mUsage) {
+
+            mUsage.remove(saveKey);
+            mEncodedStats.remove(saveKey);
+
+            final Evictor evictor = mEvictor;
+
+            if (evictor != null) {
+
+                evictor.clear(saveKey);
+            }
+        }
+    }
+
+    private List<String> filter(final String saveKey, final String start,
+            final CancellationToken token) {
+
+        final EntryCodec codec = mCodec;
+
+        if (isEncoded() && (codec instanceof SortedEntryCodec)) {
+
+            // Decode just the matching entries, which are already sorted
+
+            final String text = getEncodedString(saveKey);
+
+            if (text != null) {
+
+                final ArrayList<String> sorted = new ArrayList<String>();
+
+                try {
+
+                    final String prefix = (start != null) ? start : "";
+
+                    if (((SortedEntryCodec) codec).decode(text, prefix, sorted, 0)) {
+
+                        return sorted;
+                    }
+
+                } catch (final IllegalArgumentException ignored) {
+
+                }
+            }
+        }
+
+        final HashSet<String> values = new HashSet<String>();
+
+        getStringSet(saveKey, values);
+
+        final ArrayList<String> sorted = new ArrayList<String>();
+
+        if (!TextUtils.isEmpty(start)) {
+
+            int scanned = 0;
+
+            for (final String s : values) {
+
+                if ((scanned++ & CANCELLATION_CHECK_MASK) == 0) {
+
+                    token.throwIfCanceled();
+                }
+
+                if (s.startsWith(start)) {
+
+                    sorted.add(s);
+                }
+            }
+
+        } else {
+
+            sorted.addAll(values);
+        }
+
+        // Sorting is the most expensive step, so give up before starting it if possible
+
+        token.throwIfCanceled();
+
+        Collections.sort(sorted);
+
+        return sorted;
+    }
+
+    /**
+     * Returns the usage statistics of the specified entries associated with the specified key,
+     * reading them from the shared preferences if needed.
+     *
+     * @param saveKey The save key.
+     * @param values  The entries currently associated with the key.
+     * @return The map of the entry statistics.
+     */
+    private HashMap<String, EntryStats> getUsage(final String saveKey, final Set<String> values) {
+
+        HashMap<String, EntryStats> usage = mUsage.get(saveKey);
+
+        if (usage != null) {
+
+            return usage;
+        }
+
+        usage = new HashMap<String, EntryStats>(values.size());
+
+        final HashSet<String> encoded = new HashSet<String>();
+
+        getStringSet(statsKey(saveKey), encoded);
+
+        for (final String string : encoded) {
+
+            final int countEnd = string.indexOf(STATS_SEPARATOR);
+            final int lastUsedEnd = string.indexOf(STATS_SEPARATOR, countEnd + 1);
+            final int addedEnd = string.indexOf(STATS_SEPARATOR, lastUsedEnd + 1);
+
+            if ((countEnd < 0) || (lastUsedEnd < 0) || (addedEnd < 0)) {
+
+                continue;
+            }
+
+            final String entry = string.substring(addedEnd + 1);
+
+            if (!values.contains(entry)) {
+
+                continue;
+            }
+
+            try {
+
+                usage.put(entry, new EntryStats(Long.parseLong(string.substring(lastUsedEnd + 1,
+                                                                                addedEnd)),
+                                                Long.parseLong(string.substring(countEnd + 1,
+                                                                                lastUsedEnd)),
+                                                Integer.parseInt(string.substring(0, countEnd))));
+
+            } catch (final NumberFormatException ignored) {
+
+            }
+        }
+
+        for (final String value : values) {
+
+            if (!usage.containsKey(value)) {
+
+                // Entry saved while no statistics were collected
+
+                usage.put(value, new EntryStats(0, 0, 1));
+            }
+        }
+
+        mUsage.put(saveKey, usage);
+
+        final Evictor evictor = mEvictor;
+
+        if (evictor != null) {
+
+            evictor.track(saveKey, usage);
+        }
+
+        return usage;
+    }
+
+    private void getStringSet(final String saveKey, final Set<String> values) {
+
+        synchronized (mPending) {
+
+            final Set<String> pending = mPending.get(saveKey);
+
+            if (pending != null) {
+
+                values.addAll(pending);
+
+                return;
+            }
+
+            if (mPendingClear) {
+
+                return;
+            }
+        }
+
+        readStringSet(getPreferences(saveKey), saveKey, values);
+    }
+
+    private boolean isEncoded() {
+
+        return (VERSION.SDK_INT < VERSION_CODES.HONEYCOMB) || (mFormat == FORMAT_ENCODED);
+    }
+
+    /**
+     * Checks whether the notified change of the specified key was made by this instance.
+     * <br/>
+     * Since the listeners may be notified later, on the main thread, the current value is
+     * compared with the last one written, and a pending write is consumed for each notification.
+     *
+     * @param preferences The modified preferences.
+     * @param key         The preference key.
+     * @return Whether the change was expected.
+     */
+    private boolean isOwnWrite(final SharedPreferences preferences, final String key) {
+
+        synchronized (mOwnWrites) {
+
+            final HashMap<String, OwnWrite> writes = mOwnWrites.get(preferences);
+            final OwnWrite write = (writes != null) ? writes.get(key) : null;
+
+            if (write == null) {
+
+                return false;
+            }
+
+            if (!isEqual(getValue(preferences, key), write.value)) {
+
+                // Overwritten by someone else meanwhile
+
+                writes.remove(key);
+
+                return false;
+            }
+
+            if (--write.count == 0) {
+
+                writes.remove(key);
+            }
+
+            return true;
+        }
+    }
+
+    private void readStringSet(final SharedPreferences preferences, final String saveKey,
+            final Set<String> values) {
+
+        // Try the current format first, since the other one makes the preferences throw
+
+        if (isEncoded()) {
+
+            if (!readEncoded(preferences, saveKey, values)) {
+
+                readSet(preferences, saveKey, values);
+            }
+
+        } else if (!readSet(preferences, saveKey, values)) {
+
+            readEncoded(preferences, saveKey, values);
+        }
+    }
+
+    /**
+     * Returns the string encoding the entries associated with the specified key, unless they are
+     * stored in a different format or have pending modifications.
+     *
+     * @param saveKey The save key.
+     * @return The encoded string or null.
+     */
+    private String getEncodedString(final String saveKey) {
+
+        synchronized (mPending) {
+
+            if (mPendingClear || mPending.containsKey(saveKey)) {
+
+                return null;
+            }
+        }
+
+        try {
+
+            return getPreferences(saveKey).getString(saveKey, null);
+
+        } catch (final ClassCastException e) {
+
+            return null;
+        }
+    }
+
+    private boolean readEncoded(final SharedPreferences preferences, final String saveKey,
+            final Set<String> values) {
+
+        final String text;
+
+        try {
+
+            text = preferences.getString(saveKey, null);
+
+        } catch (final ClassCastException e) {
+
+            return false;
+        }
+
+        if (text == null) {
+
+            return false;
+        }
+
+        try {
+
+            if (!mCodec.decode(text, values)) {
+
+                LEGACY_CODEC.decode(text, values);
+            }
+
+        } catch (final IllegalArgumentException e) {
+
+            // Returning the entries decoded so far would make the next save overwrite the
+            // whole history with them
+
+            throw new IllegalStateException("cannot decode the entries saved with key " + saveKey,
+                                            e);
+        }
+
+        return true;
+    }
+
+    @TargetApi(VERSION_CODES.HONEYCOMB)
+    private boolean readSet(final SharedPreferences preferences, final String saveKey,
+            final Set<String> values) {
+
+        if (VERSION.SDK_INT < VERSION_CODES.HONEYCOMB) {
+
+            return false;
+        }
+
+        try {
+
+            final Set<String> set = preferences.getStringSet(saveKey, null);
+
+            if (set == null) {
+
+                return false;
+            }
+
+            values.addAll(set);
+
+            return true;
+
+        } catch (final ClassCastException e) {
+
+            return false;
+        }
+    }
+
+    /**
+     * Puts the specified entries into the editor, in the current storage format.
+     *
+     * @param editor  The editor.
+     * @param saveKey The save key.
+     * @param values  The entries.
+     * @return The stored value.
+     */
+    @TargetApi(VERSION_CODES.HONEYCOMB)
+    private Object putStringSet(final Editor editor, final String saveKey,
+            final Set<String> values) {
+
+        if (isEncoded()) {
+
+            final String text = mCodec.encode(values);
+
+            editor.putString(saveKey, text);
+
+            return text;
+        }
+
+        editor.putStringSet(saveKey, values);
+
+        return values;
+    }
+
+    private void scheduleFlush() {
+
+        synchronized (mPending) {
+
+            if (mFlushFuture != null) {
+
+                mFlushFuture.cancel(false);
+            }
+
+            mFlushFuture = getFlushExecutor()
+                    .schedule(mFlushRunnable, mWriteBehindDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replaces the entries associated with the specified keys, either immediately or by buffering
+     * the modifications when the write-behind mode is enabled.
+     *
+     * @param clear   Whether all the data must be cleared before applying the modifications.
+     * @param changes The new entries associated with each modified key (empty to remove). The
+     *                sets MUST not be modified afterwards.
+     */
+    private void write(final boolean clear, final Map<String, Set<String>> changes) {
+
+        final boolean writeBehind = (mWriteBehindDelay >= 0);
+
+        if (writeBehind) {
+
+            synchronized (mPending) {
+
+                if (clear) {
+
+                    mPending.clear();
+                    mPendingClear = true;
+                }
+
+                mPending.putAll(changes);
+
+                scheduleFlush();
+            }
+
+        } else {
+
+            commit(clear, changes);
+        }
+
+        final ResultCache cache = mCache;
+
+        if (clear) {
+
+            cache.clear();
+
+        } else {
+
+            for (final String saveKey : changes.keySet()) {
+
+                cache.invalidate(saveKey);
+            }
+        }
+    }
+
+    /**
+     * Encoded statistics of a key, as last written, so that a new use encodes only one entry.
+     */
+    private static class EncodedStats {
+
+        private final HashMap<String, String> strings;
+
+        private final HashMap<String, EntryStats> usage;
+
+        public EncodedStats(final HashMap<String, EntryStats> usage) {
+
+            this.usage = usage;
+            strings = new HashMap<String, String>(usage.size());
+        }
+    }
+
+    /**
+     * Write made by this instance, whose change notification is still pending.
+     */
+    private static class OwnWrite {
+
+        private int count;
+
+        private Object value;
+    }
+
+    /**
+     * Batch implementation computing the new entries of each modified key and then writing all of
+     * them in a single transaction.
+     */
+    private class PreferencesBatch extends SimpleBatch {
+
+        public PreferencesBatch() {
+
+            super(SharedPreferencesPersister.this);
+        }
+
+        @Override
+        public void commit() {
+
+            final List<Operation> operations = getOperations();
+
+            final HashMap<String, Set<String>> changes = new HashMap<String, Set<String>>();
+            final LinkedHashMap<String, DataChange> notified =
+                    new LinkedHashMap<String, DataChange>();
+
+            boolean clear = false;
+
+            // The statistics are also modified by the listener and the loads, which may run on
+            // other threads
+
+            synchronized (mUsage) {
+
+                final Evictor evictor = mEvictor;
+                final boolean collectStats = (evictor != null) || (getRanking() != null);
+                final long now = System.currentTimeMillis();
+
+                final HashMap<String, Set<String>> values = new HashMap<String, Set<String>>();
+                final HashMap<String, HashSet<String>> usedEntries =
+                        new HashMap<String, HashSet<String>>();
+
+                for (final Operation operation : operations) {
+
+                    if (operation.type == Operation.CLEAR) {
+
+                        clear = true;
+
+                        values.clear();
+                        changes.clear();
+                        usedEntries.clear();
+                        notified.clear();
+
+                        mUsage.clear();
+                        mEncodedStats.clear();
+
+                        if (evictor != null) {
+
+                            evictor.clear();
+                        }
+
+                        continue;
+                    }
+
+                    final String saveKey = operation.saveKey;
+
+                    Set<String> set = values.get(saveKey);
+
+                    if (set == null) {
+
+                        set = new HashSet<String>();
+
+                        if (!clear) {
+
+                            getStringSet(saveKey, set);
+                        }
+
+                        values.put(saveKey, set);
+                    }
+
+                    final HashMap<String, EntryStats> usage =
+                            collectStats ? getUsage(saveKey, set) : null;
+                    final Tracker tracker = (evictor != null) ? evictor.getTracker(saveKey) : null;
+
+                    final ArrayList<String> added = new ArrayList<String>();
+                    final ArrayList<String> removed = new ArrayList<String>();
+                    final ArrayList<String> updated = new ArrayList<String>();
+                    final ArrayList<String> uses = new ArrayList<String>();
+
+                    boolean changed = false;
+                    boolean used = false;
+
+                    switch (operation.type) {
+
+                        case Operation.REMOVE_ALL:
+
+                            changed = !set.isEmpty();
+
+                            removed.addAll(set);
+                            set.clear();
+
+                            forgetUsage(saveKey);
+
+                            // Remove also any statistics collected in the past
+
+                            changes.put(statsKey(saveKey), Collections.<String>emptySet());
+                            usedEntries.remove(saveKey);
+
+                            break;
+
+                        case Operation.REMOVE:
+
+                            for (final CharSequence datum : operation.data) {
+
+                                if (TextUtils.isEmpty(datum)) {
+
+                                    continue;
+                                }
+
+                                final String string = datum.toString();
+
+                                if (set.remove(string)) {
+
+                                    changed = true;
+
+                                    removed.add(string);
+
+                                    if (usage != null) {
+
+                                        usage.remove(string);
+                                    }
+
+                                    if (tracker != null) {
+
+                                        tracker.onRemoved(string);
+                                    }
+                                }
+                            }
+
+                            used = changed && (usage != null);
+
+                            break;
+
+                        case Operation.SAVE:
+
+                            final CharSequence datum = operation.data.get(0);
+
+                            if (TextUtils.isEmpty(datum)) {
+
+                                break;
+                            }
+
+                            final String string = datum.toString();
+
+                            if (set.add(string)) {
+
+                                changed = true;
+
+                                added.add(string);
+
+                                if (usage != null) {
+
+                                    final EntryStats stats = new EntryStats(now);
+
+                                    usage.put(string, stats);
+
+                                    if (tracker != null) {
+
+                                        tracker.onAdded(string, stats);
+
+                                        while (set.size() > evictor.getCapacity()) {
+
+                                            final String evicted = tracker.evict();
+
+                                            if (evicted == null) {
+
+                                                break;
+                                            }
+
+                                            set.remove(evicted);
+                                            usage.remove(evicted);
+
+                                            removed.add(evicted);
+                                        }
+                                    }
+                                }
+
+                            } else if (usage != null) {
+
+                                final EntryStats stats = usage.get(string);
+
+                                stats.use(now);
+
+                                updated.add(string);
+
+                                if (tracker != null) {
+
+                                    tracker.onUsed(string, stats);
+                                }
+
+                                // The new use can only change the order of the ranked entries
+
+                                if (getRanking() != null) {
+
+                                    uses.add(string);
+                                }
+                            }
+
+                            used = (usage != null);
+
+                            break;
+                    }
+
+                    if (changed) {
+
+                        changes.put(saveKey, set);
+                    }
+
+                    if (changed || !uses.isEmpty()) {
+
+                        final DataChange change = new DataChange(added, removed, uses);
+                        final DataChange previous = notified.get(saveKey);
+
+                        notified.put(saveKey, (previous != null) ? previous.merge(change) : change);
+                    }
+
+                    if (used) {
+
+                        HashSet<String> entries = usedEntries.get(saveKey);
+
+                        if (entries == null) {
+
+                            entries = new HashSet<String>();
+                            usedEntries.put(saveKey, entries);
+                        }
+
+                        entries.addAll(added);
+                        entries.addAll(removed);
+                        entries.addAll(updated);
+                    }
+                }
+
+                for (final Entry<String, HashSet<String>> entry : usedEntries.entrySet()) {
+
+                    final String saveKey = entry.getKey();
+
+                    changes.put(statsKey(saveKey),
+                                encodeUsage(saveKey, mUsage.get(saveKey), entry.getValue()));
+                }
+
+                operations.clear();
+
+                if (!clear && changes.isEmpty()) {
+
+                    return;
+                }
+
+                write(clear, changes);
+            }
+
+            beginBatch();
+
+            try {
+
+                if (clear) {
+
+                    notifyDataChanged();
+                }
+
+                for (final Entry<String, DataChange> entry : notified.entrySet()) {
+
+                    notifyDataChanged(entry.getKey(), entry.getValue());
+                }
+
+            } finally {
+
+                endBatch();
+            }
         }
     }
 }
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import it.subito.frost.store.InMemoryPersister;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class FrostTraceTest {
+
+    private RecordingTracer mTracer;
+
+    private FrostTextView mView;
+
+    @Before
+    public void setUp() {
+
+        mTracer = new RecordingTracer();
+
+        FrostTrace.setTracer(mTracer);
+
+        mView = new FrostTextView(Robolectric.application);
+        mView.setPersister(new InMemoryPersister());
+        mView.setSaveKey("test");
+    }
+
+    @After
+    public void tearDown() {
+
+        FrostTrace.setEnabled(false);
+        FrostTrace.setTracer(null);
+    }
+
+    @Test
+    public void testDisabled() {
+
+        mView.setText("aaa");
+        mView.save();
+
+        ((FrostAdapter) mView.getAdapter()).runQueryOnBackgroundThread("a");
+
+        assertThat(FrostTrace.beginSection("Frost.test", "test")).isFalse();
+        assertThat(mTracer.mSections).isEmpty();
+    }
+
+    @Test
+    public void testLongName() {
+
+        FrostTrace.setEnabled(true);
+
+        final StringBuilder key = new StringBuilder();
+
+        for (int i = 0; i < 200; ++i) {
+
+            key.append('k');
+        }
+
+        final boolean traced = FrostTrace.beginSection("Frost.test", key.toString());
+
+        FrostTrace.endSection(traced);
+
+        assertThat(traced).isTrue();
+        assertThat(mTracer.mSections.get(0)).hasSize(127);
+        assertThat(mTracer.mDepth).isEqualTo(0);
+    }
+
+    @Test
+    public void testSections() {
+
+        FrostTrace.setEnabled(true);
+
+        mView.setText("aaa");
+        mView.save();
+
+        assertThat(mTracer.mSections).containsExactly("Frost.save:test", "Frost.refresh:test");
+
+        mTracer.mSections.clear();
+
+        ((FrostAdapter) mView.getAdapter()).runQueryOnBackgroundThread("a");
+
+        assertThat(mTracer.mSections).containsExactly("Frost.runQuery:test", "Frost.load:test");
+        assertThat(mTracer.mDepth).isEqualTo(0);
+    }
+
+    private static class RecordingTracer implements FrostTrace.Tracer {
+
+        private final ArrayList<String> mSections = new ArrayList<String>();
+
+        private int mDepth;
+
+        @Override
+        public void beginSection(final String name) {
+
+            mSections.add(name);
+
+            ++mDepth;
+        }
+
+        @Override
+        public void endSection() {
+
+            --mDepth;
+        }
+    }
+}
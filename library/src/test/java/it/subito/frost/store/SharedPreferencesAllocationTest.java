@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2014 Subito.it S.r.l (www.subito.it)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.subito.frost.store;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import it.subito.frost.store.BasePersister.Batch;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Verifies that a steady state keystroke on the shared preferences allocates memory independently
+ * of the history size, by counting the bytes allocated by the current thread while loading the
+ * same constraint from a small and a large history.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class SharedPreferencesAllocationTest {
+
+    private static final String CONSTRAINT = "00012";
+
+    private static final int LARGE_HISTORY = 50000;
+
+    private static final int LOADS = 2000;
+
+    private static final int MAX_SUGGESTIONS = 10;
+
+    private static final int SMALL_HISTORY = 500;
+
+    private static final int WARMUP_LOADS = 2000;
+
+    private SharedPreferencesPersister mPersister;
+
+    private static String entry(final int index) {
+
+        final String number = Integer.toString(index);
+
+        return "000000".substring(number.length()) + number + "@example.com";
+    }
+
+    @Before
+    public void setUp() {
+
+        mPersister = new SharedPreferencesPersister();
+        mPersister.setContext(Robolectric.application);
+        mPersister.clear();
+
+        fill("small", SMALL_HISTORY);
+        fill("large", LARGE_HISTORY);
+    }
+
+    @Test
+    public void testLoad() {
+
+        // The constraint matches 10 entries of both histories
+
+        assertAllocations("shared preferences");
+    }
+
+    @Test
+    public void testLoadRanked() {
+
+        mPersister.setRanking(new FrecencyRanking(), MAX_SUGGESTIONS);
+
+        assertAllocations("shared preferences ranked");
+    }
+
+    private void assertAllocations(final String name) {
+
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+
+            // Thread allocation counting is not supported by this virtual machine
+
+            return;
+        }
+
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+
+        assertThat(mPersister.load("large", CONSTRAINT))
+                .hasSize(mPersister.load("small", CONSTRAINT).size());
+
+        final long smallBytes = measure(threadBean, "small");
+        final long largeBytes = measure(threadBean, "large");
+
+        // A history 100 times larger must not cost more than a few extra bytes
+
+        assertThat(largeBytes)
+                .as(name + " bytes allocated per load: " + SMALL_HISTORY + " entries " + smallBytes
+                            + ", " + LARGE_HISTORY + " entries " + largeBytes)
+                .isLessThanOrEqualTo(smallBytes + 64);
+    }
+
+    private void fill(final String saveKey, final int size) {
+
+        // A single transaction, so that the string set is not rewritten for each entry
+
+        final Batch batch = mPersister.edit();
+
+        for (int i = 0; i < size; ++i) {
+
+            batch.save(saveKey, entry(i));
+        }
+
+        batch.commit();
+    }
+
+    private long measure(final com.sun.management.ThreadMXBean bean, final String saveKey) {
+
+        // Type the constraint into a mutable sequence, like the text view editable
+
+        final StringBuilder editable = new StringBuilder(CONSTRAINT);
+
+        for (int i = 0; i < WARMUP_LOADS; ++i) {
+
+            mPersister.load(saveKey, editable);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long start = bean.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < LOADS; ++i) {
+
+            mPersister.load(saveKey, editable);
+        }
+
+        return (bean.getThreadAllocatedBytes(threadId) - start) / LOADS;
+    }
+}